@@ -0,0 +1,465 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+// Alternative routes between two nodes at a fixed hour: up to maxRoutes routes, ranked by
+// travel time with the shortest first, where every further route takes at most maxStretch
+// times the shortest travel time and shares at most maxOverlap of its travel time with each
+// route ranked before it. Two methods are offered (Method):
+//
+// K_SHORTEST runs Yen's k shortest loopless paths: each next path branches off a previous
+// one at some spur node, avoiding the edges that earlier paths with the same prefix took
+// there. Candidates come out in order of travel time, so routes that overlap too much are
+// skipped until enough distinct ones are found (at most CANDIDATES_PER_ROUTE per route asked
+// for). Exact for small k but one spur search per node of every path examined.
+//
+// PLATEAU (choice routing) grows one shortest-path tree from the start and one to the end;
+// stretches of road on both trees ("plateaus") are parts of the shortest route from the start
+// to their far end and from their near end to the end, so following the forward tree to a
+// plateau, the plateau and then the backward tree gives a route that is locally optimal for
+// about the plateau's length. Long plateaus make natural alternatives; two searches produce
+// all candidates at once, which makes this the method for serving.
+//
+// Both methods start from the same backward tree, grown from the end only as far as
+// maxStretch times the shortest travel time: nodes beyond it cannot be on any admissible
+// route. Yen's spur searches use its exact distances as the A* heuristic, so a spur search
+// whose tree route is not blocked walks straight to the end, and one that is blocked only
+// explores around the blocked edges.
+public class AlternativeRoutes {
+    public enum Method {
+        K_SHORTEST,
+        PLATEAU
+    }
+
+    // Yen's method gives up after examining this many candidates per route asked for
+    private static final int CANDIDATES_PER_ROUTE = 10;
+    // Plateaus shorter than this share of the shortest travel time give routes that take a
+    // detour only to rejoin the shortest one right away
+    private static final double MIN_PLATEAU_SHARE = 0.2;
+    // Slack on the stretch limit for rounding in sums of edge costs
+    private static final double LIMIT_SLACK = 1e-9;
+
+    // Per-thread scratch: the backward tree, the forward tree or spur search, and node stamps
+    // for the nodes a spur search must avoid
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final int maxRoutes;
+    private final double maxStretch;
+    private final double maxOverlap;
+
+    private static final class Scratch {
+        final SearchState tree = new SearchState();
+        final SearchState search = new SearchState();
+        int[] blocked = new int[0];
+        int blockGeneration;
+        // Nodes settled by all searches of the current query
+        int settledNodes;
+
+        // Starts a new set of blocked nodes (O(1), like SearchState.reset)
+        void clearBlocked(int nodeCount) {
+            if (blocked.length < nodeCount) {
+                blocked = Arrays.copyOf(blocked, nodeCount);
+            }
+            blockGeneration++;
+            if (blockGeneration == 0) {
+                Arrays.fill(blocked, 0);
+                blockGeneration = 1;
+            }
+        }
+
+        void block(int node) {
+            blocked[node] = blockGeneration;
+        }
+
+        boolean isBlocked(int node) {
+            return blocked[node] == blockGeneration;
+        }
+    }
+
+    // A candidate route: its CSR edges and travel time
+    private static final class Route {
+        final int[] edges;
+        final double travelTime;
+
+        Route(int[] edges, double travelTime) {
+            this.edges = edges;
+            this.travelTime = travelTime;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Route && Arrays.equals(edges, ((Route) o).edges);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(edges);
+        }
+    }
+
+    // maxRoutes counts the shortest route; maxStretch is at least 1 and maxOverlap between 0
+    // (routes share no edges) and 1 (any overlap, e.g. plain k shortest paths)
+    public AlternativeRoutes(int maxRoutes, double maxStretch, double maxOverlap) {
+        if (maxRoutes < 1) {
+            throw new IllegalArgumentException("At least one route is required.");
+        }
+        if (!(maxStretch >= 1.0)) {
+            throw new IllegalArgumentException("Maximum stretch must be at least 1.");
+        }
+        if (!(maxOverlap >= 0.0 && maxOverlap <= 1.0)) {
+            throw new IllegalArgumentException("Maximum overlap must be between 0 and 1.");
+        }
+        this.maxRoutes = maxRoutes;
+        this.maxStretch = maxStretch;
+        this.maxOverlap = maxOverlap;
+    }
+
+    public int getMaxRoutes() {
+        return maxRoutes;
+    }
+
+    public double getMaxStretch() {
+        return maxStretch;
+    }
+
+    public double getMaxOverlap() {
+        return maxOverlap;
+    }
+
+    // Routes from start to end at the given hour, shortest first; empty if there is none.
+    // Every result reports the nodes settled by the whole computation.
+    public List<PathResult> find(CompactGraph graph, int start, int end, int hourOfDay, Method method) {
+        if (start < 0 || start >= graph.getNodeCount() || end < 0 || end >= graph.getNodeCount()) {
+            System.err.println("Error: Start or end node does not exist in the graph.");
+            return Collections.emptyList();
+        }
+        if (hourOfDay < 0 || hourOfDay > 23) {
+            System.err.println("Error: Hour of day must be between 0 and 23.");
+            return Collections.emptyList();
+        }
+        Scratch scratch = SCRATCH.get();
+        SearchState tree = scratch.tree;
+        scratch.settledNodes = 0;
+        double shortest = growBackwardTree(graph, start, end, hourOfDay, scratch);
+        if (shortest == Double.POSITIVE_INFINITY) {
+            return Collections.emptyList();
+        }
+        double limit = maxStretch * shortest * (1 + LIMIT_SLACK);
+
+        // The shortest route follows the backward tree from the start
+        int[] edges = new int[0];
+        int count = 0;
+        for (int node = start, edge; (edge = tree.getPredecessor(node)) != -1; node = graph.getTarget(edge)) {
+            edges = grow(edges, count + 1);
+            edges[count++] = edge;
+        }
+        Route first = new Route(Arrays.copyOf(edges, count), shortest);
+
+        List<Route> routes = method == Method.K_SHORTEST
+                ? kShortest(graph, start, end, hourOfDay, first, limit, scratch)
+                : plateaus(graph, start, end, hourOfDay, first, limit, scratch);
+        List<PathResult> results = new ArrayList<>(routes.size());
+        for (Route route : routes) {
+            results.add(new PathResult(graph, start, route.edges, route.edges.length, route.travelTime, scratch.settledNodes));
+        }
+        return results;
+    }
+
+    // Dijkstra from end over incoming edges; a node's predecessor is its edge toward end. Runs
+    // until start is settled and then on to maxStretch times its distance, which it returns
+    // (infinity if start cannot reach end).
+    private double growBackwardTree(CompactGraph graph, int start, int end, int hourOfDay, Scratch scratch) {
+        SearchState tree = scratch.tree;
+        tree.reset(graph.getNodeCount());
+        tree.update(end, 0.0, -1);
+        IndexedMinHeap heap = tree.getHeap();
+        heap.insertOrDecrease(end, 0.0);
+        double limit = Double.POSITIVE_INFINITY;
+        while (!heap.isEmpty() && heap.peekKey() <= limit) {
+            int u = heap.poll();
+            double distance = tree.getDistance(u);
+            tree.markSettled(u);
+            scratch.settledNodes++;
+            if (u == start) {
+                limit = maxStretch * distance * (1 + LIMIT_SLACK);
+            }
+            for (int slot = graph.firstInEdge(u), last = graph.endInEdge(u); slot < last; slot++) {
+                int v = graph.getSource(slot);
+                int edge = graph.getInEdge(slot);
+                double newDistance = distance + graph.getTravelTime(edge, hourOfDay);
+                if (newDistance < tree.getDistance(v)) {
+                    tree.update(v, newDistance, edge);
+                    heap.insertOrDecrease(v, newDistance);
+                }
+            }
+        }
+        return tree.isSettled(start) ? tree.getDistance(start) : Double.POSITIVE_INFINITY;
+    }
+
+    // Yen's algorithm over the paths found so far (found) and the candidates branching off them
+    private List<Route> kShortest(CompactGraph graph, int start, int end, int hourOfDay, Route first, double limit,
+                                  Scratch scratch) {
+        List<Route> accepted = new ArrayList<>();
+        accepted.add(first);
+        List<Route> found = new ArrayList<>();
+        found.add(first);
+        PriorityQueue<Route> candidates = new PriorityQueue<>((a, b) -> Double.compare(a.travelTime, b.travelTime));
+        Set<Route> seen = new HashSet<>();
+        seen.add(first);
+
+        int[] blockedEdges = new int[0];
+        int examined = 1;
+        while (accepted.size() < maxRoutes && examined < maxRoutes * CANDIDATES_PER_ROUTE) {
+            Route previous = found.get(found.size() - 1);
+            double rootCost = 0.0;
+            int spur = start;
+            for (int i = 0; i < previous.edges.length; i++) {
+                // Avoid the root's nodes and every edge that a found path with this root took next
+                scratch.clearBlocked(graph.getNodeCount());
+                for (int node = start, j = 0; j < i; node = graph.getTarget(previous.edges[j++])) {
+                    scratch.block(node);
+                }
+                int blockedCount = 0;
+                for (Route route : found) {
+                    if (route.edges.length > i && Arrays.equals(route.edges, 0, i, previous.edges, 0, i)) {
+                        blockedEdges = grow(blockedEdges, blockedCount + 1);
+                        blockedEdges[blockedCount++] = route.edges[i];
+                    }
+                }
+
+                int[] spurEdges = spurSearch(graph, spur, end, hourOfDay, rootCost, limit, blockedEdges, blockedCount,
+                        scratch);
+                if (spurEdges != null) {
+                    int[] edges = Arrays.copyOf(previous.edges, i + spurEdges.length);
+                    System.arraycopy(spurEdges, 0, edges, i, spurEdges.length);
+                    Route candidate = new Route(edges, rootCost + scratch.search.getDistance(end));
+                    if (seen.add(candidate)) {
+                        candidates.add(candidate);
+                    }
+                }
+                rootCost += graph.getTravelTime(previous.edges[i], hourOfDay);
+                spur = graph.getTarget(previous.edges[i]);
+            }
+
+            Route next = candidates.poll();
+            if (next == null) {
+                break;
+            }
+            found.add(next);
+            examined++;
+            if (isDistinct(graph, hourOfDay, next, accepted)) {
+                accepted.add(next);
+            }
+        }
+        return accepted;
+    }
+
+    // A* from spur to end that skips blocked nodes and edges and anything that would make the
+    // whole route (rootCost plus the spur path) longer than limit. The backward tree's
+    // distances are exact lower bounds on the original graph, so they stay admissible and
+    // consistent with edges removed. Returns the spur path's edges, or null.
+    private static int[] spurSearch(CompactGraph graph, int spur, int end, int hourOfDay, double rootCost, double limit,
+                                    int[] blockedEdges, int blockedCount, Scratch scratch) {
+        SearchState tree = scratch.tree;
+        SearchState search = scratch.search;
+        search.reset(graph.getNodeCount());
+        if (!tree.isSettled(spur)) {
+            return null;
+        }
+        search.update(spur, 0.0, -1);
+        IndexedMinHeap heap = search.getHeap();
+        heap.insertOrDecrease(spur, tree.getDistance(spur));
+        boolean reached = false;
+        while (!heap.isEmpty()) {
+            int u = heap.poll();
+            scratch.settledNodes++;
+            if (u == end) {
+                reached = true;
+                break;
+            }
+            double distance = search.getDistance(u);
+            for (int e = graph.firstEdge(u), last = graph.endEdge(u); e < last; e++) {
+                int v = graph.getTarget(e);
+                if (scratch.isBlocked(v) || !tree.isSettled(v) || contains(blockedEdges, blockedCount, e)) {
+                    continue;
+                }
+                double newDistance = distance + graph.getTravelTime(e, hourOfDay);
+                double bound = newDistance + tree.getDistance(v);
+                if (rootCost + bound <= limit && newDistance < search.getDistance(v)) {
+                    search.update(v, newDistance, e);
+                    heap.insertOrDecrease(v, bound);
+                }
+            }
+        }
+        if (!reached) {
+            return null;
+        }
+        int count = 0;
+        for (int node = end, edge; (edge = search.getPredecessor(node)) != -1; node = graph.tailOf(edge)) {
+            count++;
+        }
+        int[] edges = new int[count];
+        for (int node = end, edge, i = count; (edge = search.getPredecessor(node)) != -1; node = graph.tailOf(edge)) {
+            edges[--i] = edge;
+        }
+        return edges;
+    }
+
+    // Choice routing over the plateaus of the backward tree and a forward tree from start
+    private List<Route> plateaus(CompactGraph graph, int start, int end, int hourOfDay, Route first, double limit,
+                                 Scratch scratch) {
+        SearchState backward = scratch.tree;
+        SearchState forward = scratch.search;
+        int[] reached = growForwardTree(graph, start, hourOfDay, limit, scratch);
+
+        // A plateau starts at a forward tree edge u -> v that is also u's backward tree edge
+        // and whose predecessor in the forward tree is not; it runs on along the backward tree
+        // while the forward tree agrees. Entries: start node, end node, length.
+        double shortest = first.travelTime;
+        List<double[]> plateaus = new ArrayList<>();
+        for (int v : reached) {
+            int edge = forward.getPredecessor(v);
+            if (edge == -1) {
+                continue;
+            }
+            int u = graph.tailOf(edge);
+            if (backward.getPredecessor(u) != edge || isPlateauEdge(graph, forward.getPredecessor(u), backward)) {
+                continue;
+            }
+            double length = graph.getTravelTime(edge, hourOfDay);
+            int last = v;
+            for (int next; (next = backward.getPredecessor(last)) != -1 && forward.isSettled(graph.getTarget(next))
+                    && forward.getPredecessor(graph.getTarget(next)) == next; last = graph.getTarget(next)) {
+                length += graph.getTravelTime(next, hourOfDay);
+            }
+            double travelTime = forward.getDistance(u) + length + backward.getDistance(last);
+            if (length >= MIN_PLATEAU_SHARE * shortest && travelTime <= limit) {
+                plateaus.add(new double[] { u, last, length });
+            }
+        }
+        // Longest plateaus first: those routes are locally optimal over the longest stretch
+        plateaus.sort((a, b) -> Double.compare(b[2], a[2]));
+
+        List<Route> accepted = new ArrayList<>();
+        accepted.add(first);
+        for (double[] plateau : plateaus) {
+            if (accepted.size() >= maxRoutes) {
+                break;
+            }
+            Route route = viaRoute(graph, start, (int) plateau[0], (int) plateau[1], hourOfDay, forward, backward);
+            if (route != null && !accepted.contains(route) && isDistinct(graph, hourOfDay, route, accepted)) {
+                accepted.add(route);
+            }
+        }
+        accepted.sort((a, b) -> Double.compare(a.travelTime, b.travelTime));
+        return accepted;
+    }
+
+    private static boolean isPlateauEdge(CompactGraph graph, int edge, SearchState backward) {
+        return edge != -1 && backward.getPredecessor(graph.tailOf(edge)) == edge;
+    }
+
+    // Dijkstra from start that only expands nodes that can still be on a route within limit
+    // (by the backward tree's distances); returns the nodes it settled
+    private static int[] growForwardTree(CompactGraph graph, int start, int hourOfDay, double limit, Scratch scratch) {
+        SearchState backward = scratch.tree;
+        SearchState forward = scratch.search;
+        forward.reset(graph.getNodeCount());
+        forward.update(start, 0.0, -1);
+        IndexedMinHeap heap = forward.getHeap();
+        heap.insertOrDecrease(start, 0.0);
+        int[] reached = new int[64];
+        int count = 0;
+        while (!heap.isEmpty()) {
+            int u = heap.poll();
+            double distance = forward.getDistance(u);
+            forward.markSettled(u);
+            scratch.settledNodes++;
+            reached = grow(reached, count + 1);
+            reached[count++] = u;
+            for (int e = graph.firstEdge(u), last = graph.endEdge(u); e < last; e++) {
+                int v = graph.getTarget(e);
+                if (!backward.isSettled(v)) {
+                    continue;
+                }
+                double newDistance = distance + graph.getTravelTime(e, hourOfDay);
+                if (newDistance + backward.getDistance(v) <= limit && newDistance < forward.getDistance(v)) {
+                    forward.update(v, newDistance, e);
+                    heap.insertOrDecrease(v, newDistance);
+                }
+            }
+        }
+        return Arrays.copyOf(reached, count);
+    }
+
+    // start -> from on the forward tree, then from -> end on the backward tree (which covers
+    // the plateau); null if the two parts cross, which would make the route loop
+    private static Route viaRoute(CompactGraph graph, int start, int from, int to, int hourOfDay, SearchState forward,
+                                  SearchState backward) {
+        int prefix = 0;
+        for (int node = from, edge; (edge = forward.getPredecessor(node)) != -1; node = graph.tailOf(edge)) {
+            prefix++;
+        }
+        int suffix = 0;
+        for (int node = from, edge; (edge = backward.getPredecessor(node)) != -1; node = graph.getTarget(edge)) {
+            suffix++;
+        }
+        int[] edges = new int[prefix + suffix];
+        for (int node = from, edge, i = prefix; (edge = forward.getPredecessor(node)) != -1; node = graph.tailOf(edge)) {
+            edges[--i] = edge;
+        }
+        for (int node = from, edge, i = prefix; (edge = backward.getPredecessor(node)) != -1; node = graph.getTarget(edge)) {
+            edges[i++] = edge;
+        }
+
+        int[] nodes = new int[edges.length + 1];
+        nodes[0] = start;
+        double travelTime = 0.0;
+        for (int i = 0; i < edges.length; i++) {
+            nodes[i + 1] = graph.getTarget(edges[i]);
+            travelTime += graph.getTravelTime(edges[i], hourOfDay);
+        }
+        Arrays.sort(nodes);
+        for (int i = 1; i < nodes.length; i++) {
+            if (nodes[i] == nodes[i - 1]) {
+                return null;
+            }
+        }
+        return new Route(edges, travelTime);
+    }
+
+    // Whether the route shares at most maxOverlap of its travel time with each accepted route
+    private boolean isDistinct(CompactGraph graph, int hourOfDay, Route route, List<Route> accepted) {
+        for (Route other : accepted) {
+            int[] otherEdges = other.edges.clone();
+            Arrays.sort(otherEdges);
+            double shared = 0.0;
+            for (int edge : route.edges) {
+                if (Arrays.binarySearch(otherEdges, edge) >= 0) {
+                    shared += graph.getTravelTime(edge, hourOfDay);
+                }
+            }
+            if (shared > maxOverlap * route.travelTime) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean contains(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int[] grow(int[] array, int needed) {
+        return needed <= array.length ? array : Arrays.copyOf(array, Math.max(needed, array.length * 2));
+    }
+}
@@ -0,0 +1,180 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+
+// Bidirectional Dijkstra over a CompactGraph: a forward search from the start over outgoing
+// edges and a backward search from the end over incoming edges (the reverse CSR). A meeting
+// is recorded whenever a relaxed edge reaches a node the other side has already reached;
+// on a shortest path of cost d, every node is within d/2 of one end, so both sides only need
+// to cover about half the distance. Static (hour-of-day) costs only: a backward search does not
+// know the arrival time it would have to cost edges at.
+public class BidirectionalDijkstra {
+    // Per-thread scratch space for the backward side (the forward side uses Pathfinder's)
+    private static final ThreadLocal<SearchState> BACKWARD_STATE = ThreadLocal.withInitial(SearchState::new);
+
+    private final CompactGraph graph;
+    private final int hourOfDay;
+    private final SearchState forward;
+    private final SearchState backward;
+    private final boolean parallel;
+
+    // Best meeting found so far: the edge forwardNode -> backwardNode and the route cost through it
+    private volatile double bestCost = Double.POSITIVE_INFINITY;
+    private int meetingEdge = -1;
+    private int settledNodes;
+
+    private BidirectionalDijkstra(CompactGraph graph, int hourOfDay, SearchState forward, boolean parallel) {
+        this.graph = graph;
+        this.hourOfDay = hourOfDay;
+        this.forward = forward;
+        this.backward = BACKWARD_STATE.get();
+        this.parallel = parallel;
+    }
+
+    // The calling thread's backward-side state, holding the work counters of its last search
+    static SearchState backwardState() {
+        return BACKWARD_STATE.get();
+    }
+
+    // Shortest path from start to end at the given hour. With parallel set, the backward side
+    // runs on the common fork-join pool while the calling thread runs the forward side.
+    static PathResult findPath(CompactGraph graph, int start, int end, int hourOfDay, boolean parallel,
+                               SearchState forwardState) {
+        BidirectionalDijkstra search = new BidirectionalDijkstra(graph, hourOfDay, forwardState, parallel);
+        return search.run(start, end);
+    }
+
+    private PathResult run(int start, int end) {
+        // Both states are reset on this thread before the backward side can start reading them
+        forward.reset(graph.getNodeCount());
+        backward.reset(graph.getNodeCount());
+        forward.update(start, 0.0, -1);
+        forward.getHeap().insertOrDecrease(start, 0.0);
+        backward.update(end, 0.0, -1);
+        backward.getHeap().insertOrDecrease(end, 0.0);
+        if (start == end) {
+            offerMeeting(0.0, -1);
+        }
+
+        if (parallel) {
+            // Each side stops once its smallest key reaches half the best meeting cost: then
+            // both frontiers together are past it, as in the sequential criterion below
+            CompletableFuture<Integer> backwardSide = CompletableFuture.supplyAsync(() -> expandHalf(backward, forward, true));
+            int forwardSettled = expandHalf(forward, backward, false);
+            settledNodes = forwardSettled + backwardSide.join();
+        } else {
+            // Expand the side with the smaller key until the keys together reach the best meeting
+            IndexedMinHeap forwardHeap = forward.getHeap();
+            IndexedMinHeap backwardHeap = backward.getHeap();
+            while (!forwardHeap.isEmpty() || !backwardHeap.isEmpty()) {
+                double forwardKey = forwardHeap.isEmpty() ? Double.POSITIVE_INFINITY : forwardHeap.peekKey();
+                double backwardKey = backwardHeap.isEmpty() ? Double.POSITIVE_INFINITY : backwardHeap.peekKey();
+                if (forwardKey + backwardKey >= bestCost) {
+                    break;
+                }
+                if (forwardKey <= backwardKey) {
+                    settle(forward, backward, false);
+                } else {
+                    settle(backward, forward, true);
+                }
+                settledNodes++;
+            }
+        }
+
+        forward.markSearchDone();
+
+        if (bestCost == Double.POSITIVE_INFINITY) {
+            return new PathResult(Collections.emptyList(), 0.0, Collections.emptyList(), settledNodes); // Path not found
+        }
+        return buildResult(start);
+    }
+
+    private int expandHalf(SearchState own, SearchState other, boolean reverse) {
+        IndexedMinHeap heap = own.getHeap();
+        int settled = 0;
+        while (!heap.isEmpty() && heap.peekKey() < bestCost / 2) {
+            settle(own, other, reverse);
+            settled++;
+        }
+        return settled;
+    }
+
+    // Settles the smallest node of one side and relaxes its edges. In parallel mode the other
+    // side's tentative distances are changing under us, so meetings only count nodes it has
+    // settled; the node is published as settled before its edges are checked, so for an edge
+    // whose ends are settled by different threads at least one of them sees the other.
+    private void settle(SearchState own, SearchState other, boolean reverse) {
+        IndexedMinHeap heap = own.getHeap();
+        int u = heap.poll();
+        double distance = own.getDistance(u);
+        if (parallel) {
+            own.markSettled(u);
+        }
+        if (reverse) {
+            own.countRelaxed(graph.endInEdge(u) - graph.firstInEdge(u));
+            for (int slot = graph.firstInEdge(u), last = graph.endInEdge(u); slot < last; slot++) {
+                int v = graph.getSource(slot);
+                int edge = graph.getInEdge(slot);
+                relax(own, other, v, edge, distance + graph.getTravelTime(edge, hourOfDay));
+            }
+        } else {
+            own.countRelaxed(graph.endEdge(u) - graph.firstEdge(u));
+            for (int edge = graph.firstEdge(u), last = graph.endEdge(u); edge < last; edge++) {
+                int v = graph.getTarget(edge);
+                relax(own, other, v, edge, distance + graph.getTravelTime(edge, hourOfDay));
+            }
+        }
+    }
+
+    // Predecessor records are CSR edge positions: the edge into the node on the forward side,
+    // the edge out of it on the backward side. Sequentially, a node reached by both sides is
+    // only checked when one side improves it: whichever side updates it last sees both final
+    // distances, and skipping the check otherwise saves a cache miss per relaxed edge.
+    private void relax(SearchState own, SearchState other, int v, int edge, double newDistance) {
+        boolean improved = newDistance < own.getDistance(v);
+        if (improved) {
+            own.update(v, newDistance, edge);
+            own.getHeap().insertOrDecrease(v, newDistance);
+        }
+        if (parallel ? other.isSettled(v) : improved && other.isReached(v)) {
+            offerMeeting(newDistance + other.getDistance(v), edge);
+        }
+    }
+
+    private synchronized void offerMeeting(double cost, int edge) {
+        if (cost < bestCost) {
+            meetingEdge = edge;
+            bestCost = cost;
+        }
+    }
+
+    private PathResult buildResult(int start) {
+        // Edges of the route in order: forward predecessors up to the meeting edge, then
+        // backward predecessors (each the edge out of its node) down to the end
+        int[] routeEdges = new int[16];
+        int count = 0;
+        if (meetingEdge >= 0) {
+            for (int node = graph.tailOf(meetingEdge), edge; (edge = forward.getPredecessor(node)) != -1; node = graph.tailOf(edge)) {
+                routeEdges = grow(routeEdges, count);
+                routeEdges[count++] = edge;
+            }
+            for (int i = 0, j = count - 1; i < j; i++, j--) {
+                int swap = routeEdges[i];
+                routeEdges[i] = routeEdges[j];
+                routeEdges[j] = swap;
+            }
+            routeEdges = grow(routeEdges, count);
+            routeEdges[count++] = meetingEdge;
+            for (int node = graph.getTarget(meetingEdge), edge; (edge = backward.getPredecessor(node)) != -1; node = graph.getTarget(edge)) {
+                routeEdges = grow(routeEdges, count);
+                routeEdges[count++] = edge;
+            }
+        }
+        forward.markRouteDone();
+        return new PathResult(graph, start, routeEdges, count, bestCost, settledNodes);
+    }
+
+    private static int[] grow(int[] array, int needed) {
+        return needed < array.length ? array : Arrays.copyOf(array, Math.max(needed + 1, array.length * 2));
+    }
+}
@@ -0,0 +1,1026 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+// Frozen, int-indexed compressed-sparse-row (CSR) view of a Graph.
+// Node i's outgoing edges occupy positions firstOut[i] .. firstOut[i + 1] - 1 of the
+// edge arrays, so a search walks plain primitive arrays instead of boxed map entries.
+public class CompactGraph {
+    public static final int HOURS_PER_DAY = 24;
+    public static final int MINUTES_PER_DAY = HOURS_PER_DAY * 60;
+
+    // Per-edge profile IDs are split into pages of this many values (see profilePages)
+    private static final int PAGE_SHIFT = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    // Source of traffic versions, shared by all graphs so that two snapshots with different
+    // factors never carry the same version
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    private static final int FILE_MAGIC = 0x43535231; // "CSR1"
+    private static final int FILE_FORMAT_VERSION = 3;
+
+    private final int nodeCount;
+    private final int edgeCount;
+
+    // Node data, indexed by node index (same indices as Graph.getNodeIndex)
+    private final String[] nodeIds;
+    private final double[] xs;
+    private final double[] ys;
+    private final Map<String, Integer> indexById;
+
+    // A loaded graph (see load) has no nodeIds or indexById: its IDs stay in the file mapping
+    // as UTF-8, node v's bytes at idBytes[idOffsets[v] .. idOffsets[v + 1]), and indexOf
+    // binary-searches nodesById, the node indices sorted by those bytes
+    private final IntBuffer idOffsets;
+    private final IntBuffer nodesById;
+    private final ByteBuffer idBytes;
+
+    // CSR adjacency: offsets (nodeCount + 1) and per-edge targets/weights
+    private final int[] firstOut;
+    private final int[] targets;
+    private final double[] baseWeights;
+
+    // Reverse CSR: node i's incoming edges occupy slots firstIn[i] .. firstIn[i + 1] - 1;
+    // each slot stores the edge's start node and its forward CSR position
+    private final int[] firstIn;
+    private final int[] sources;
+    private final int[] inEdges;
+
+    // Each edge's traffic profile ID (see TrafficProfiles), cut into pages of PAGE_SIZE
+    // values. Snapshots share pages and copy one only when they change it; ownedPages marks
+    // the pages this instance may still write in place.
+    private final int[][] profilePages;
+    private final boolean[] ownedPages;
+
+    // Profile table shared along this graph's line of versions, and its column pages and size
+    // as this version sees them: profile p's factor for hour h is
+    // TrafficProfiles.get(profileColumns, h, p), its smallest factor (the lower-bound weight
+    // is baseWeight times this) is in column MIN_FACTOR. Only the version with profilesOwned
+    // set may change the table; any other builds its own table before its first change.
+    private TrafficProfiles profiles;
+    private boolean profilesOwned;
+    private double[][][] profileColumns;
+    private int profileCount;
+
+    // Edges whose interpolated travel time drops faster than time passes somewhere in the day,
+    // which would let a later departure arrive earlier; their costs include waiting (see getTravelTimeAt)
+    private boolean[] nonFifo;
+    private boolean nonFifoOwned;
+
+    // Road names are interned: each edge stores an index into the name table
+    private final int[] nameIndex;
+    private final String[] names;
+
+    // Mapping between CSR positions and positions in Graph.getAllEdges()
+    private final int[] edgeIds;
+    private final int[] positionOfEdgeId;
+
+    // Lower bound on travel time per unit of straight-line distance over all edges and hours
+    private double minCostPerUnitDistance;
+
+    // Changes on every traffic factor update so derived data can detect staleness
+    private long trafficVersion;
+
+    // Replaced whenever some edge's smallest factor drops, and on both sides of a snapshot
+    // fork. Versions sharing an epoch form a single line along which no lower-bound edge
+    // weight decreases, so lower bounds valid for one version hold for every later one.
+    private Object lowerBoundEpoch = new Object();
+
+    CompactGraph(Graph graph) {
+        List<Node> nodeList = graph.getNodeList();
+        List<Edge> edgeList = graph.getAllEdges();
+        this.nodeCount = nodeList.size();
+        this.edgeCount = edgeList.size();
+
+        this.nodeIds = new String[nodeCount];
+        this.xs = new double[nodeCount];
+        this.ys = new double[nodeCount];
+        this.indexById = new HashMap<>(nodeCount * 2);
+        for (int i = 0; i < nodeCount; i++) {
+            Node node = nodeList.get(i);
+            nodeIds[i] = node.getId();
+            xs[i] = node.getX();
+            ys[i] = node.getY();
+            indexById.put(node.getId(), i);
+        }
+        this.idOffsets = null;
+        this.nodesById = null;
+        this.idBytes = null;
+
+        // Counting sort of edges by their start node
+        this.firstOut = new int[nodeCount + 1];
+        int[] tails = new int[edgeCount];
+        int[] heads = new int[edgeCount];
+        for (int id = 0; id < edgeCount; id++) {
+            Edge edge = edgeList.get(id);
+            tails[id] = indexById.get(edge.getStartNodeId());
+            heads[id] = indexById.get(edge.getEndNodeId());
+            firstOut[tails[id] + 1]++;
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            firstOut[i + 1] += firstOut[i];
+        }
+
+        this.targets = new int[edgeCount];
+        this.baseWeights = new double[edgeCount];
+        this.profilePages = allocatePages(edgeCount);
+        this.ownedPages = new boolean[profilePages.length];
+        Arrays.fill(ownedPages, true);
+        this.profiles = new TrafficProfiles();
+        this.profilesOwned = true;
+        this.nameIndex = new int[edgeCount];
+        this.edgeIds = new int[edgeCount];
+        this.positionOfEdgeId = new int[edgeCount];
+
+        Map<String, Integer> nameTable = new HashMap<>();
+        // Each profile of the graph is interned once, however many edges use it
+        EdgeProfiles edgeProfiles = graph.getEdgeProfiles();
+        int[] internedIds = new int[edgeProfiles.capacity()];
+        Arrays.fill(internedIds, -1);
+        internedIds[EdgeProfiles.FREE_FLOW] = TrafficProfiles.FREE_FLOW;
+        int[] next = Arrays.copyOf(firstOut, nodeCount);
+        for (int id = 0; id < edgeCount; id++) {
+            Edge edge = edgeList.get(id);
+            int pos = next[tails[id]]++;
+            targets[pos] = heads[id];
+            baseWeights[pos] = edge.getBaseWeight();
+            int edgeProfile = edge.getTrafficProfile();
+            int profile = internedIds[edgeProfile];
+            if (profile < 0) {
+                profile = profiles.intern(edgeProfiles.getCodes(), edgeProfile * HOURS_PER_DAY);
+                internedIds[edgeProfile] = profile;
+            }
+            profiles.addUser(profile);
+            write(profilePages, ownedPages, pos, profile);
+            Integer name = nameTable.get(edge.getName());
+            if (name == null) {
+                name = nameTable.size();
+                nameTable.put(edge.getName(), name);
+            }
+            nameIndex[pos] = name;
+            edgeIds[pos] = id;
+            positionOfEdgeId[id] = pos;
+        }
+
+        // Reverse CSR, built by the same counting sort keyed on the end node
+        this.firstIn = new int[nodeCount + 1];
+        this.sources = new int[edgeCount];
+        this.inEdges = new int[edgeCount];
+        for (int e = 0; e < edgeCount; e++) {
+            firstIn[targets[e] + 1]++;
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            firstIn[i + 1] += firstIn[i];
+        }
+        int[] nextIn = Arrays.copyOf(firstIn, nodeCount);
+        for (int u = 0; u < nodeCount; u++) {
+            for (int e = firstOut[u]; e < firstOut[u + 1]; e++) {
+                int slot = nextIn[targets[e]]++;
+                sources[slot] = u;
+                inEdges[slot] = e;
+            }
+        }
+
+        this.names = new String[nameTable.size()];
+        for (Map.Entry<String, Integer> entry : nameTable.entrySet()) {
+            names[entry.getValue()] = entry.getKey();
+        }
+
+        syncProfiles();
+        this.nonFifo = computeNonFifo();
+        this.nonFifoOwned = true;
+        this.minCostPerUnitDistance = computeMinCostPerUnitDistance();
+        this.trafficVersion = VERSIONS.incrementAndGet();
+    }
+
+    // Traffic snapshot of base: shares the road network, every profile page and the profile
+    // table, and owns none of them
+    private CompactGraph(CompactGraph base) {
+        this.nodeCount = base.nodeCount;
+        this.edgeCount = base.edgeCount;
+        this.nodeIds = base.nodeIds;
+        this.xs = base.xs;
+        this.ys = base.ys;
+        this.indexById = base.indexById;
+        this.idOffsets = base.idOffsets;
+        this.nodesById = base.nodesById;
+        this.idBytes = base.idBytes;
+        this.firstOut = base.firstOut;
+        this.targets = base.targets;
+        this.baseWeights = base.baseWeights;
+        this.firstIn = base.firstIn;
+        this.sources = base.sources;
+        this.inEdges = base.inEdges;
+        this.nameIndex = base.nameIndex;
+        this.names = base.names;
+        this.edgeIds = base.edgeIds;
+        this.positionOfEdgeId = base.positionOfEdgeId;
+        this.profilePages = base.profilePages.clone();
+        this.ownedPages = new boolean[profilePages.length];
+        this.profiles = base.profiles;
+        this.profileColumns = base.profileColumns;
+        this.profileCount = base.profileCount;
+        this.nonFifo = base.nonFifo;
+        this.minCostPerUnitDistance = base.minCostPerUnitDistance;
+        this.trafficVersion = base.trafficVersion;
+        this.lowerBoundEpoch = base.lowerBoundEpoch;
+    }
+
+    // Graph read from a file written by save; sections come in the order save writes them
+    private CompactGraph(BinaryReader in) throws IOException {
+        this.nodeCount = in.nodeCount;
+        this.edgeCount = in.edgeCount;
+        this.minCostPerUnitDistance = in.minCostPerUnitDistance;
+        this.nodeIds = null;
+        this.indexById = null;
+        this.xs = in.readDoubles(nodeCount);
+        this.ys = in.readDoubles(nodeCount);
+        this.firstOut = in.readInts(nodeCount + 1);
+        this.targets = in.readInts(edgeCount);
+        this.baseWeights = in.readDoubles(edgeCount);
+        this.firstIn = in.readInts(nodeCount + 1);
+        this.sources = in.readInts(edgeCount);
+        this.inEdges = in.readInts(edgeCount);
+        this.nameIndex = in.readInts(edgeCount);
+        this.edgeIds = in.readInts(edgeCount);
+        this.positionOfEdgeId = in.readInts(edgeCount);
+        char[] codes = in.readChars(in.profileCount * HOURS_PER_DAY);
+        this.profilePages = allocatePages(edgeCount);
+        in.readPages(profilePages);
+        this.ownedPages = new boolean[profilePages.length];
+        Arrays.fill(ownedPages, true);
+        this.profiles = new TrafficProfiles(in.profileCount);
+        this.profilesOwned = true;
+        double[] factors = new double[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            factors[i] = TrafficProfiles.decode(codes[i]);
+        }
+        int[] ids = new int[in.profileCount];
+        for (int p = 0; p < ids.length; p++) {
+            ids[p] = profiles.intern(factors, p * HOURS_PER_DAY);
+        }
+        for (int[] page : profilePages) {
+            for (int i = 0; i < page.length; i++) {
+                if (page[i] < 0 || page[i] >= ids.length) {
+                    throw new IOException("Corrupt graph file: " + in.file);
+                }
+                page[i] = ids[page[i]];
+                profiles.addUser(page[i]);
+            }
+        }
+        syncProfiles();
+        this.nonFifo = computeNonFifo();
+        this.nonFifoOwned = true;
+        this.names = in.readNullableStrings(in.nameCount);
+        this.idOffsets = in.mapInts(nodeCount + 1);
+        this.idBytes = in.map(idOffsets.get(nodeCount));
+        this.nodesById = in.mapInts(nodeCount);
+        in.checkEnd();
+        this.trafficVersion = VERSIONS.incrementAndGet();
+    }
+
+    // Loads a graph written by save. Sections are mapped with FileChannel.map and copied in
+    // bulk into the arrays searches use, with no per-element parsing; node IDs stay in the
+    // mapping and are only decoded when a result needs them. The loaded graph has no Graph
+    // behind it: serve it through new TrafficSnapshots(graph) and update it with publish.
+    public static CompactGraph load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new CompactGraph(new BinaryReader(channel, file));
+        }
+    }
+
+    // Writes the graph as a little-endian binary file: a header (magic, format version, node,
+    // edge, road-name and profile counts, minCostPerUnitDistance), then every array above as
+    // its own 8-byte aligned section in the order the loading constructor reads them, the
+    // profiles as their 16-bit codes, followed by the road names as UTF-8 with a length table
+    // (-1 for an edge without a name), the node IDs as UTF-8 with an offset table and the node
+    // indices in ID order.
+    public void save(Path file) throws IOException {
+        byte[][] roadNames = new byte[names.length][];
+        for (int i = 0; i < names.length; i++) {
+            roadNames[i] = names[i] == null ? null : names[i].getBytes(StandardCharsets.UTF_8);
+        }
+        byte[][] ids = new byte[nodeCount][];
+        for (int v = 0; v < nodeCount; v++) {
+            ids[v] = getNodeId(v).getBytes(StandardCharsets.UTF_8);
+        }
+        char[] codes = new char[profileCount * HOURS_PER_DAY];
+        for (int p = 0; p < profileCount; p++) {
+            for (int hour = 0; hour < HOURS_PER_DAY; hour++) {
+                codes[p * HOURS_PER_DAY + hour] = TrafficProfiles.encode(TrafficProfiles.get(profileColumns, hour, p));
+            }
+        }
+        int[] order = IntStream.range(0, nodeCount).boxed()
+                .sorted((a, b) -> Arrays.compareUnsigned(ids[a], ids[b]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+
+        try (BinaryWriter out = new BinaryWriter(file)) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_FORMAT_VERSION);
+            out.writeInt(nodeCount);
+            out.writeInt(edgeCount);
+            out.writeInt(names.length);
+            out.writeInt(profileCount);
+            out.writeDouble(minCostPerUnitDistance);
+            out.writeDoubles(xs);
+            out.writeDoubles(ys);
+            out.writeInts(firstOut);
+            out.writeInts(targets);
+            out.writeDoubles(baseWeights);
+            out.writeInts(firstIn);
+            out.writeInts(sources);
+            out.writeInts(inEdges);
+            out.writeInts(nameIndex);
+            out.writeInts(edgeIds);
+            out.writeInts(positionOfEdgeId);
+            out.writeChars(codes);
+            out.writePages(profilePages);
+            out.writeNullableStrings(roadNames);
+            out.writeStrings(ids);
+            out.writeInts(order);
+        }
+    }
+
+    // Immutable copy of the current traffic state. After this, both instances copy a profile
+    // page before changing it, so in-place updates to this graph never reach the snapshot.
+    // The snapshot starts a line of its own with a copy of the profile table.
+    CompactGraph snapshot() {
+        Arrays.fill(ownedPages, false);
+        nonFifoOwned = false;
+        lowerBoundEpoch = new Object();
+        CompactGraph snapshot = new CompactGraph(this);
+        snapshot.lowerBoundEpoch = new Object();
+        snapshot.profiles = profiles.copy();
+        snapshot.profilesOwned = true;
+        snapshot.freezeProfiles();
+        return snapshot;
+    }
+
+    // New snapshot with the batch applied in order; this graph is left unchanged. Only the
+    // profile pages the batch touches are copied, so a small batch costs little memory. The
+    // snapshot takes over this graph's profile table, so it is cheapest to call this on the
+    // latest version; an older one first gets a rebuilt table.
+    CompactGraph withTrafficFactors(TrafficUpdate batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            if (batch.getEdgeId(i) >= edgeCount) {
+                throw new IllegalArgumentException("Edge ID " + batch.getEdgeId(i) + " does not exist in the graph.");
+            }
+        }
+        // The snapshot shares this graph's pages; later changes to either copy them first
+        Arrays.fill(ownedPages, false);
+        nonFifoOwned = false;
+        if (profilesOwned) {
+            freezeProfiles(); // The snapshot changes profiles in place; this graph keeps its own
+        }
+        CompactGraph next = new CompactGraph(this);
+        next.profilesOwned = profilesOwned;
+        profilesOwned = false;
+        for (int i = 0; i < batch.size(); i++) {
+            next.applyTrafficFactor(positionOfEdgeId[batch.getEdgeId(i)], batch.getHourOfDay(i), batch.getFactor(i));
+        }
+        next.trafficVersion = VERSIONS.incrementAndGet();
+        // Published snapshots are never written again; make any later change copy first
+        Arrays.fill(next.ownedPages, false);
+        next.nonFifoOwned = false;
+        if (next.profilesOwned) {
+            next.freezeProfiles();
+        }
+        return next;
+    }
+
+    // True if both graphs are versions of the same compiled road network (same nodes, edges
+    // and CSR positions), so per-node and per-edge data carries over between them
+    public boolean hasSameNetwork(CompactGraph other) {
+        return other != null && firstOut == other.firstOut;
+    }
+
+    private int profileOf(int edge) {
+        return profilePages[edge >>> PAGE_SHIFT][edge & PAGE_MASK];
+    }
+
+    private double factor(int hourOfDay, int edge) {
+        return TrafficProfiles.get(profileColumns, hourOfDay, profileOf(edge));
+    }
+
+    private static int[][] allocatePages(int length) {
+        int[][] pages = new int[(length + PAGE_MASK) >>> PAGE_SHIFT][];
+        for (int page = 0; page < pages.length; page++) {
+            pages[page] = new int[Math.min(PAGE_SIZE, length - (page << PAGE_SHIFT))];
+        }
+        return pages;
+    }
+
+    // Writes one value, copying its page first if it is shared with another snapshot
+    private static void write(int[][] pages, boolean[] owned, int index, int value) {
+        int page = index >>> PAGE_SHIFT;
+        if (!owned[page]) {
+            pages[page] = pages[page].clone();
+            owned[page] = true;
+        }
+        pages[page][index & PAGE_MASK] = value;
+    }
+
+    // Interpolated travel time per minute changes by baseWeight * (next - current) / 60;
+    // FIFO holds as long as it never decreases by more than one minute per minute
+    private boolean violatesFifo(int edge) {
+        for (int hour = 0; hour < HOURS_PER_DAY; hour++) {
+            if (violatesFifo(edge, hour)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // True if the travel time drops by more than an hour over the hour starting at the given mark
+    private boolean violatesFifo(int edge, int hour) {
+        double current = factor(hour, edge);
+        double next = factor((hour + 1) % HOURS_PER_DAY, edge);
+        return baseWeights[edge] * (current - next) > 60.0;
+    }
+
+    // Flags of all edges from their profiles' largest drops, while every profile is interned
+    private boolean[] computeNonFifo() {
+        boolean[] flags = new boolean[edgeCount];
+        for (int e = 0; e < edgeCount; e++) {
+            flags[e] = baseWeights[e] * TrafficProfiles.get(profileColumns, TrafficProfiles.MAX_DROP, profileOf(e)) > 60.0;
+        }
+        return flags;
+    }
+
+    // Picks up the table's current pages after this version changed it
+    private void syncProfiles() {
+        profileColumns = profiles.getColumns();
+        profileCount = profiles.size();
+    }
+
+    // Takes pages the table will not write to again, for a version that is handed out
+    private void freezeProfiles() {
+        profileColumns = profiles.freeze();
+        profileCount = profiles.size();
+    }
+
+    // Replaces the profile table with a new one holding only the profiles this version's
+    // edges use, renumbering every page. Interned profiles are distinct already and are
+    // copied as they are; private ones are interned again, which merges equal ones. Older
+    // versions keep the table they read from.
+    private void rebuildProfiles() {
+        int[] newIds = new int[profileCount];
+        int used = 0;
+        for (int[] ids : profilePages) {
+            for (int id : ids) {
+                if (newIds[id] == 0) {
+                    newIds[id] = -1;
+                    used++;
+                }
+            }
+        }
+        TrafficProfiles rebuilt = new TrafficProfiles(used + 1);
+        newIds[TrafficProfiles.FREE_FLOW] = TrafficProfiles.FREE_FLOW;
+        for (boolean interned : new boolean[] {true, false}) {
+            for (int id = 1; id < profileCount; id++) {
+                if (newIds[id] == -1 && TrafficProfiles.isPrivate(profileColumns, id) != interned) {
+                    newIds[id] = interned ? rebuilt.append(profileColumns, id, profiles.getHash(id))
+                            : rebuilt.intern(profileColumns, id);
+                }
+            }
+        }
+        for (int page = 0; page < profilePages.length; page++) {
+            int[] ids = profilePages[page].clone();
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = newIds[ids[i]];
+                rebuilt.addUser(ids[i]);
+            }
+            profilePages[page] = ids;
+            ownedPages[page] = true;
+        }
+        profiles = rebuilt;
+        profilesOwned = true;
+        syncProfiles();
+    }
+
+    // min over edges of (baseWeight * smallest hourly factor) / straight-line length.
+    // Edges between coincident points are skipped: they cannot violate the bound.
+    private double computeMinCostPerUnitDistance() {
+        double min = Double.POSITIVE_INFINITY;
+        for (int u = 0; u < nodeCount; u++) {
+            for (int e = firstOut[u]; e < firstOut[u + 1]; e++) {
+                double length = getStraightLineDistance(u, targets[e]);
+                if (length > 0) {
+                    min = Math.min(min, baseWeights[e] * getMinTrafficFactor(e) / length);
+                }
+            }
+        }
+        return min == Double.POSITIVE_INFINITY ? 0.0 : min;
+    }
+
+    // Smallest of the edge's 24 hourly factors
+    public double getMinTrafficFactor(int edge) {
+        return TrafficProfiles.get(profileColumns, TrafficProfiles.MIN_FACTOR, profileOf(edge));
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    // Returns the index of the node with the given ID, or -1 if it does not exist
+    public int indexOf(String nodeId) {
+        if (indexById != null) {
+            Integer index = indexById.get(nodeId);
+            return index == null ? -1 : index;
+        }
+        byte[] key = nodeId.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = nodeCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int node = nodesById.get(mid);
+            int comparison = compareId(node, key);
+            if (comparison < 0) {
+                low = mid + 1;
+            } else if (comparison > 0) {
+                high = mid - 1;
+            } else {
+                return node;
+            }
+        }
+        return -1;
+    }
+
+    public String getNodeId(int node) {
+        if (nodeIds != null) {
+            return nodeIds[node];
+        }
+        int start = idOffsets.get(node);
+        byte[] bytes = new byte[idOffsets.get(node + 1) - start];
+        idBytes.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Unsigned byte order of a loaded node's ID against key (UTF-8 order is code point order)
+    private int compareId(int node, byte[] key) {
+        int start = idOffsets.get(node);
+        int length = idOffsets.get(node + 1) - start;
+        for (int i = 0, shared = Math.min(length, key.length); i < shared; i++) {
+            int difference = (idBytes.get(start + i) & 0xFF) - (key[i] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - key.length;
+    }
+
+    public double getX(int node) {
+        return xs[node];
+    }
+
+    public double getY(int node) {
+        return ys[node];
+    }
+
+    // First CSR position of the node's outgoing edges
+    public int firstEdge(int node) {
+        return firstOut[node];
+    }
+
+    // One past the last CSR position of the node's outgoing edges
+    public int endEdge(int node) {
+        return firstOut[node + 1];
+    }
+
+    // First reverse-CSR slot of the node's incoming edges
+    public int firstInEdge(int node) {
+        return firstIn[node];
+    }
+
+    // One past the last reverse-CSR slot of the node's incoming edges
+    public int endInEdge(int node) {
+        return firstIn[node + 1];
+    }
+
+    // Start node of the incoming edge stored in the given reverse-CSR slot
+    public int getSource(int slot) {
+        return sources[slot];
+    }
+
+    // Forward CSR position of the incoming edge stored in the given reverse-CSR slot
+    public int getInEdge(int slot) {
+        return inEdges[slot];
+    }
+
+    public int getTarget(int edge) {
+        return targets[edge];
+    }
+
+    public double getBaseWeight(int edge) {
+        return baseWeights[edge];
+    }
+
+    public double getTrafficFactor(int edge, int hourOfDay) {
+        return factor(hourOfDay, edge);
+    }
+
+    public double getTravelTime(int edge, int hourOfDay) {
+        return baseWeights[edge] * factor(hourOfDay, edge);
+    }
+
+    public double getStraightLineDistance(int from, int to) {
+        double dx = xs[from] - xs[to];
+        double dy = ys[from] - ys[to];
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    // Multiplying a straight-line distance by this gives an admissible (and consistent)
+    // lower bound on the travel time at any hour, used as the A* heuristic
+    public double getMinCostPerUnitDistance() {
+        return minCostPerUnitDistance;
+    }
+
+    // Travel time when entering the edge at the given time (minutes since midnight; values
+    // past 1440 wrap to the next day). Factors apply at the start of their hour and are
+    // interpolated linearly in between. For non-FIFO edges the result is the earliest
+    // arrival including waiting at the start, min over s >= t of (s - t + raw(s)), which
+    // restores FIFO; the minimum is attained at t or at one of the next 24 hour marks.
+    public double getTravelTimeAt(int edge, double minuteOfDay) {
+        double time = minuteOfDay % MINUTES_PER_DAY;
+        int profile = profileOf(edge);
+        int hour = (int) (time / 60);
+        double fraction = (time - hour * 60) / 60.0;
+        double current = TrafficProfiles.get(profileColumns, hour, profile);
+        double next = TrafficProfiles.get(profileColumns, (hour + 1) % HOURS_PER_DAY, profile);
+        double travelTime = baseWeights[edge] * (current == next || fraction == 0.0 ? current
+                : Double.isInfinite(current) || Double.isInfinite(next) ? Double.POSITIVE_INFINITY
+                : current + (next - current) * fraction);
+        if (nonFifo[edge]) {
+            for (int k = 1; k <= HOURS_PER_DAY; k++) {
+                double mark = (hour + k) * 60.0;
+                double viaWaiting = mark - time + baseWeights[edge] * TrafficProfiles.get(profileColumns, (hour + k) % HOURS_PER_DAY, profile);
+                travelTime = Math.min(travelTime, viaWaiting);
+            }
+        }
+        return travelTime;
+    }
+
+    public String getRoadName(int edge) {
+        return names[nameIndex[edge]];
+    }
+
+    // Position of this CSR edge in Graph.getAllEdges()
+    public int getEdgeId(int edge) {
+        return edgeIds[edge];
+    }
+
+    // CSR position of the edge at the given position in Graph.getAllEdges()
+    public int positionOf(int edgeId) {
+        return positionOfEdgeId[edgeId];
+    }
+
+    // Called by Graph when an Edge's traffic factor changes after compilation
+    void updateTrafficFactor(int edgeId, int hourOfDay, double factor) {
+        applyTrafficFactor(positionOfEdgeId[edgeId], hourOfDay, factor);
+        trafficVersion = VERSIONS.incrementAndGet();
+    }
+
+    // Factors are quantized first (see TrafficProfiles); the edge's profile is changed in
+    // place once the edge has one of its own, so an update costs no table lookup, and only
+    // the factors next to the changed one are read in the common case
+    private void applyTrafficFactor(int edge, int hourOfDay, double factor) {
+        factor = TrafficProfiles.quantize(factor);
+        if (factor == factor(hourOfDay, edge)) {
+            return;
+        }
+        if (!profilesOwned) {
+            rebuildProfiles();
+        }
+        int previous = profileOf(edge);
+        double previousMin = getMinTrafficFactor(edge);
+        int profile = profiles.update(previous, hourOfDay, factor);
+        if (profile != previous) {
+            write(profilePages, ownedPages, edge, profile);
+        }
+        syncProfiles();
+
+        if (getMinTrafficFactor(edge) < previousMin) {
+            lowerBoundEpoch = new Object();
+            // A lower factor may break the A* bound; a higher one only makes it less tight
+            int tail = tailOf(edge);
+            double length = getStraightLineDistance(tail, targets[edge]);
+            if (length > 0) {
+                minCostPerUnitDistance = Math.min(minCostPerUnitDistance, baseWeights[edge] * factor / length);
+            }
+        }
+
+        // Only the hour transitions into and out of the changed factor can start violating FIFO
+        boolean violates = nonFifo[edge]
+                ? violatesFifo(edge)
+                : violatesFifo(edge, (hourOfDay + HOURS_PER_DAY - 1) % HOURS_PER_DAY) || violatesFifo(edge, hourOfDay);
+        if (violates != nonFifo[edge]) {
+            if (!nonFifoOwned) {
+                nonFifo = nonFifo.clone();
+                nonFifoOwned = true;
+            }
+            nonFifo[edge] = violates;
+        }
+
+        // Live updates leave old profiles behind; drop them once they are the majority and
+        // numerous enough that rebuilding costs little per update
+        if (profiles.unusedCount() > Math.max(profileCount / 2, edgeCount / 16 + 1024)) {
+            rebuildProfiles();
+        }
+    }
+
+    public long getTrafficVersion() {
+        return trafficVersion;
+    }
+
+    Object getLowerBoundEpoch() {
+        return lowerBoundEpoch;
+    }
+
+    // Start node of a CSR edge (binary search over the offset array)
+    public int tailOf(int edge) {
+        int low = 0;
+        int high = nodeCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (firstOut[mid] <= edge) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    // Approximate heap footprint of the primitive arrays in bytes
+    public long getMemoryBytes() {
+        long bytes = 0;
+        bytes += (long) nodeCount * (8 + 8);                    // xs, ys
+        bytes += (long) (nodeCount + 1) * 4 * 2;                // firstOut, firstIn
+        bytes += (long) edgeCount * (4 + 8 + 4 + 4 + 4);        // targets, baseWeights, nameIndex, edgeIds, positionOfEdgeId
+        bytes += (long) edgeCount * (4 + 4 + 4 + 1);            // sources, inEdges, profile IDs, nonFifo
+        bytes += (long) profileCount * TrafficProfiles.COLUMNS * 8; // profile columns
+        return bytes;
+    }
+
+    // Buffered writer for save; every array is written as one section padded to 8 bytes
+    private static final class BinaryWriter implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        private long written;
+
+        BinaryWriter(Path file) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+        }
+
+        void writeInt(int value) throws IOException {
+            reserve(4);
+            buffer.putInt(value);
+        }
+
+        void writeDouble(double value) throws IOException {
+            reserve(8);
+            buffer.putDouble(value);
+        }
+
+        void writeInts(int[] values) throws IOException {
+            for (int value : values) {
+                writeInt(value);
+            }
+            endSection();
+        }
+
+        void writeDoubles(double[] values) throws IOException {
+            for (double value : values) {
+                writeDouble(value);
+            }
+            endSection();
+        }
+
+        void writeChars(char[] values) throws IOException {
+            for (char value : values) {
+                reserve(2);
+                buffer.putChar(value);
+            }
+            endSection();
+        }
+
+        // The values of all pages in order, as one section
+        void writePages(int[][] pages) throws IOException {
+            for (int[] page : pages) {
+                for (int value : page) {
+                    writeInt(value);
+                }
+            }
+            endSection();
+        }
+
+        // Offsets (strings.length + 1) into the concatenated bytes, then the bytes
+        void writeStrings(byte[][] strings) throws IOException {
+            int offset = 0;
+            writeInt(offset);
+            for (byte[] string : strings) {
+                offset = Math.addExact(offset, string.length);
+                writeInt(offset);
+            }
+            endSection();
+            writeBytes(strings);
+        }
+
+        // Lengths (-1 for a null string), then the concatenated bytes
+        void writeNullableStrings(byte[][] strings) throws IOException {
+            for (byte[] string : strings) {
+                writeInt(string == null ? -1 : string.length);
+            }
+            endSection();
+            writeBytes(strings);
+        }
+
+        private void writeBytes(byte[][] strings) throws IOException {
+            for (byte[] string : strings) {
+                for (int from = 0; string != null && from < string.length; ) {
+                    reserve(1);
+                    int length = Math.min(buffer.remaining(), string.length - from);
+                    buffer.put(string, from, length);
+                    from += length;
+                }
+            }
+            endSection();
+        }
+
+        private void endSection() throws IOException {
+            while ((written + buffer.position()) % 8 != 0) {
+                reserve(1);
+                buffer.put((byte) 0);
+            }
+        }
+
+        private void reserve(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                written += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    // Reads the sections of a graph file in order. Each one is mapped and copied in bulk,
+    // at most MAX_MAPPING bytes per mapping, so sections may exceed the 2 GB mapping limit.
+    private static final class BinaryReader {
+        private static final int MAX_MAPPING = 1 << 30;
+
+        private final FileChannel channel;
+        private final long size;
+        private long position;
+
+        final Path file;
+        final int nodeCount;
+        final int edgeCount;
+        final int nameCount;
+        final int profileCount;
+        final double minCostPerUnitDistance;
+
+        BinaryReader(FileChannel channel, Path file) throws IOException {
+            this.channel = channel;
+            this.file = file;
+            this.size = channel.size();
+            if (size < 32) {
+                throw new IOException("Not a graph file: " + file);
+            }
+            ByteBuffer header = map(32);
+            if (header.getInt() != FILE_MAGIC) {
+                throw new IOException("Not a graph file: " + file);
+            }
+            if (header.getInt() != FILE_FORMAT_VERSION) {
+                throw new IOException("Unsupported graph file version: " + file);
+            }
+            this.nodeCount = header.getInt();
+            this.edgeCount = header.getInt();
+            this.nameCount = header.getInt();
+            this.profileCount = header.getInt();
+            this.minCostPerUnitDistance = header.getDouble();
+            if (nodeCount < 0 || edgeCount < 0 || nameCount < 0 || profileCount < 0
+                    || profileCount > Integer.MAX_VALUE / HOURS_PER_DAY) {
+                throw new IOException("Corrupt graph file: " + file);
+            }
+        }
+
+        // Maps the next bytes of the file, then skips to the next 8-byte boundary
+        ByteBuffer map(long bytes) throws IOException {
+            if (bytes < 0 || bytes > Integer.MAX_VALUE || position + bytes > size) {
+                throw new IOException("Truncated graph file: " + file);
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, bytes).order(ByteOrder.LITTLE_ENDIAN);
+            position = (position + bytes + 7) & ~7L;
+            return buffer;
+        }
+
+        // A section kept mapped rather than copied
+        IntBuffer mapInts(int count) throws IOException {
+            return map(count * 4L).asIntBuffer();
+        }
+
+        int[] readInts(int count) throws IOException {
+            int[] values = new int[count];
+            int perMapping = MAX_MAPPING / 4;
+            for (int from = 0; from < count; from += perMapping) {
+                int length = Math.min(count - from, perMapping);
+                map(length * 4L).asIntBuffer().get(values, from, length);
+            }
+            return values;
+        }
+
+        double[] readDoubles(int count) throws IOException {
+            double[] values = new double[count];
+            int perMapping = MAX_MAPPING / 8;
+            for (int from = 0; from < count; from += perMapping) {
+                int length = Math.min(count - from, perMapping);
+                map(length * 8L).asDoubleBuffer().get(values, from, length);
+            }
+            return values;
+        }
+
+        char[] readChars(int count) throws IOException {
+            char[] values = new char[count];
+            map(count * 2L).asCharBuffer().get(values);
+            return values;
+        }
+
+        // Fills the allocated pages, one section for all of them
+        void readPages(int[][] pages) throws IOException {
+            int perMapping = MAX_MAPPING / (PAGE_SIZE * 4);
+            for (int first = 0; first < pages.length; first += perMapping) {
+                int last = Math.min(pages.length, first + perMapping);
+                long values = 0;
+                for (int page = first; page < last; page++) {
+                    values += pages[page].length;
+                }
+                IntBuffer source = map(values * 4).asIntBuffer();
+                for (int page = first; page < last; page++) {
+                    source.get(pages[page]);
+                }
+            }
+        }
+
+        // Strings written by writeNullableStrings
+        String[] readNullableStrings(int count) throws IOException {
+            int[] lengths = readInts(count);
+            long total = 0;
+            for (int length : lengths) {
+                if (length < -1) {
+                    throw new IOException("Corrupt graph file: " + file);
+                }
+                total += Math.max(length, 0);
+            }
+            ByteBuffer bytes = map(total);
+            String[] strings = new String[count];
+            for (int i = 0; i < count; i++) {
+                if (lengths[i] >= 0) {
+                    byte[] string = new byte[lengths[i]];
+                    bytes.get(string);
+                    strings[i] = new String(string, StandardCharsets.UTF_8);
+                }
+            }
+            return strings;
+        }
+
+        void checkEnd() throws IOException {
+            if (position != size) {
+                throw new IOException("Corrupt graph file: " + file);
+            }
+        }
+    }
+}
@@ -0,0 +1,659 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+// Contraction Hierarchies (CH) over a CompactGraph for one hour's travel times.
+// Preprocessing contracts nodes from least to most important, adding shortcut edges that
+// preserve shortest-path distances between the remaining nodes. A query is then a
+// bidirectional search that only climbs to higher-ranked nodes and settles a tiny part of
+// the graph. Shortcuts are unpacked into original edges, so results carry the same node
+// sequence, road names and instructions as Pathfinder's.
+public class ContractionHierarchy {
+    // Witness searches give up after settling this many nodes; a shortcut is then added,
+    // which is always safe (just possibly redundant). Priority estimates use a cheaper limit.
+    private static final int WITNESS_SETTLE_LIMIT = 500;
+    private static final int PRIORITY_SETTLE_LIMIT = 50;
+
+    private static final ThreadLocal<SearchState[]> QUERY_STATE =
+            ThreadLocal.withInitial(() -> new SearchState[] { new SearchState(), new SearchState() });
+
+    private final CompactGraph graph;
+    private final int hourOfDay;
+    private final long trafficVersion;
+    private final long preprocessingMillis;
+    private final int[] rank;
+
+    // Upward graph: node u's edges u -> w with rank[w] > rank[u]
+    private final int[] firstUp;
+    private final int[] upTargets;
+    private final double[] upWeights;
+    private final int[] upEdgeIds;
+
+    // Downward graph, stored at the lower endpoint: node v's edges u -> v with rank[u] > rank[v]
+    private final int[] firstDown;
+    private final int[] downSources;
+    private final double[] downWeights;
+    private final int[] downEdgeIds;
+
+    // Edge IDs below graph.getEdgeCount() are CSR edges; ID edgeCount + i is shortcut i,
+    // which stands for edge shortcutFirst[i] followed by edge shortcutSecond[i]
+    private final int[] shortcutFirst;
+    private final int[] shortcutSecond;
+
+    private ContractionHierarchy(CompactGraph graph, int hourOfDay, long trafficVersion, Contractor contractor,
+                                 long preprocessingMillis) {
+        this.graph = graph;
+        this.hourOfDay = hourOfDay;
+        this.trafficVersion = trafficVersion;
+        this.preprocessingMillis = preprocessingMillis;
+        this.rank = contractor.rank;
+
+        int nodeCount = graph.getNodeCount();
+        EdgeBuffer up = contractor.upEdges;
+        this.firstUp = new int[nodeCount + 1];
+        this.upTargets = new int[up.size];
+        this.upWeights = new double[up.size];
+        this.upEdgeIds = new int[up.size];
+        fill(up, up.tails, firstUp, upTargets, up.heads, upWeights, upEdgeIds);
+
+        EdgeBuffer down = contractor.downEdges;
+        this.firstDown = new int[nodeCount + 1];
+        this.downSources = new int[down.size];
+        this.downWeights = new double[down.size];
+        this.downEdgeIds = new int[down.size];
+        fill(down, down.heads, firstDown, downSources, down.tails, downWeights, downEdgeIds);
+
+        this.shortcutFirst = Arrays.copyOf(contractor.shortcutFirst, contractor.shortcutCount);
+        this.shortcutSecond = Arrays.copyOf(contractor.shortcutSecond, contractor.shortcutCount);
+    }
+
+    // Counting sort of buffered edges into CSR arrays grouped by the given owner endpoint
+    private static void fill(EdgeBuffer buffer, int[] owners, int[] first, int[] others, int[] otherEnds,
+                             double[] weights, int[] edgeIds) {
+        int nodeCount = first.length - 1;
+        for (int i = 0; i < buffer.size; i++) {
+            first[owners[i] + 1]++;
+        }
+        for (int v = 0; v < nodeCount; v++) {
+            first[v + 1] += first[v];
+        }
+        int[] next = Arrays.copyOf(first, nodeCount);
+        for (int i = 0; i < buffer.size; i++) {
+            int slot = next[owners[i]]++;
+            others[slot] = otherEnds[i];
+            weights[slot] = buffer.weights[i];
+            edgeIds[slot] = buffer.first[i];
+        }
+    }
+
+    // Contracts the graph for travel times at the given hour, using all available cores
+    public static ContractionHierarchy build(CompactGraph graph, int hourOfDay) {
+        if (hourOfDay < 0 || hourOfDay > 23) {
+            throw new IllegalArgumentException("Hour of day must be between 0 and 23.");
+        }
+        long startTime = System.nanoTime();
+        long version = graph.getTrafficVersion();
+        Contractor contractor = new Contractor(graph, hourOfDay);
+        contractor.run();
+        long millis = (System.nanoTime() - startTime) / 1_000_000;
+        return new ContractionHierarchy(graph, hourOfDay, version, contractor, millis);
+    }
+
+    public CompactGraph getGraph() {
+        return graph;
+    }
+
+    public int getHourOfDay() {
+        return hourOfDay;
+    }
+
+    public long getPreprocessingMillis() {
+        return preprocessingMillis;
+    }
+
+    public int getShortcutCount() {
+        return shortcutFirst.length;
+    }
+
+    // Position of the node in the contraction order (higher = more important)
+    public int getRank(int node) {
+        return rank[node];
+    }
+
+    // True if traffic factors changed after preprocessing, i.e. answers may be outdated
+    public boolean isStale() {
+        return graph.getTrafficVersion() != trafficVersion;
+    }
+
+    public PathResult findPath(String startNodeId, String endNodeId) {
+        int start = graph.indexOf(startNodeId);
+        int end = graph.indexOf(endNodeId);
+        if (start < 0 || end < 0) {
+            System.err.println("Error: Start or end node does not exist in the graph.");
+            return new PathResult(Collections.emptyList(), 0.0, Collections.emptyList());
+        }
+        return findPath(start, end);
+    }
+
+    // Bidirectional upward search: forward over edges to higher-ranked nodes from start,
+    // backward over edges from higher-ranked nodes into end. Each side stops once its
+    // smallest key can no longer improve the best meeting point.
+    public PathResult findPath(int start, int end) {
+        SearchState[] states = QUERY_STATE.get();
+        SearchState forward = states[0];
+        SearchState backward = states[1];
+        forward.reset(graph.getNodeCount());
+        backward.reset(graph.getNodeCount());
+        IndexedMinHeap forwardHeap = forward.getHeap();
+        IndexedMinHeap backwardHeap = backward.getHeap();
+        // Predecessor records hold the edge slot each node was reached through
+        forward.update(start, 0.0, -1);
+        forwardHeap.insertOrDecrease(start, 0.0);
+        backward.update(end, 0.0, -1);
+        backwardHeap.insertOrDecrease(end, 0.0);
+
+        double best = Double.POSITIVE_INFINITY;
+        int meeting = -1;
+        int settledNodes = 0;
+        boolean forwardTurn = true;
+        while (true) {
+            boolean forwardOpen = !forwardHeap.isEmpty() && forwardHeap.peekKey() < best;
+            boolean backwardOpen = !backwardHeap.isEmpty() && backwardHeap.peekKey() < best;
+            if (!forwardOpen && !backwardOpen) {
+                break;
+            }
+            boolean stepForward = forwardOpen && (forwardTurn || !backwardOpen);
+            forwardTurn = !forwardTurn;
+            settledNodes++;
+
+            if (stepForward) {
+                int u = forwardHeap.poll();
+                double du = forward.getDistance(u);
+                double total = du + backward.getDistance(u);
+                if (total < best) {
+                    best = total;
+                    meeting = u;
+                }
+                for (int slot = firstUp[u], last = firstUp[u + 1]; slot < last; slot++) {
+                    int v = upTargets[slot];
+                    double dv = du + upWeights[slot];
+                    if (dv < forward.getDistance(v)) {
+                        forward.update(v, dv, slot);
+                        forwardHeap.insertOrDecrease(v, dv);
+                    }
+                }
+            } else {
+                int u = backwardHeap.poll();
+                double du = backward.getDistance(u);
+                double total = du + forward.getDistance(u);
+                if (total < best) {
+                    best = total;
+                    meeting = u;
+                }
+                for (int slot = firstDown[u], last = firstDown[u + 1]; slot < last; slot++) {
+                    int v = downSources[slot];
+                    double dv = du + downWeights[slot];
+                    if (dv < backward.getDistance(v)) {
+                        backward.update(v, dv, slot);
+                        backwardHeap.insertOrDecrease(v, dv);
+                    }
+                }
+            }
+        }
+
+        if (meeting < 0) {
+            return new PathResult(Collections.emptyList(), 0.0, Collections.emptyList(), settledNodes); // Path not found
+        }
+
+        // Hierarchy edges start -> meeting (collected backwards, then reversed) and meeting -> end
+        int[] hierarchyEdges = new int[8];
+        int count = 0;
+        for (int node = meeting; node != start; ) {
+            int slot = forward.getPredecessor(node);
+            hierarchyEdges = grow(hierarchyEdges, count);
+            hierarchyEdges[count++] = upEdgeIds[slot];
+            node = tailOfUpSlot(slot);
+        }
+        for (int i = 0, j = count - 1; i < j; i++, j--) {
+            int swap = hierarchyEdges[i];
+            hierarchyEdges[i] = hierarchyEdges[j];
+            hierarchyEdges[j] = swap;
+        }
+        for (int node = meeting; node != end; ) {
+            int slot = backward.getPredecessor(node);
+            hierarchyEdges = grow(hierarchyEdges, count);
+            hierarchyEdges[count++] = downEdgeIds[slot];
+            node = headOfDownSlot(slot);
+        }
+
+        int[] routeEdges = unpack(hierarchyEdges, count);
+        return new PathResult(graph, start, routeEdges, routeEdges.length, best, settledNodes);
+    }
+
+    // The original edges the hierarchy edges stand for, in route order
+    private int[] unpack(int[] hierarchyEdges, int count) {
+        int edgeCount = graph.getEdgeCount();
+        int[] routeEdges = new int[Math.max(count, 16)];
+        int routeLength = 0;
+        int[] stack = new int[16];
+        for (int i = 0; i < count; i++) {
+            int top = 0;
+            stack[top++] = hierarchyEdges[i];
+            while (top > 0) {
+                int id = stack[--top];
+                if (id < edgeCount) {
+                    routeEdges = grow(routeEdges, routeLength);
+                    routeEdges[routeLength++] = id;
+                } else {
+                    stack = grow(stack, top + 1);
+                    stack[top++] = shortcutSecond[id - edgeCount];
+                    stack[top++] = shortcutFirst[id - edgeCount];
+                }
+            }
+        }
+        return Arrays.copyOf(routeEdges, routeLength);
+    }
+
+    // Upward slots are grouped by their start node, so the tail is found in the offsets
+    private int tailOfUpSlot(int slot) {
+        return ownerOf(firstUp, slot);
+    }
+
+    // Downward slots are grouped by their lower (end) node; walking towards end means
+    // stepping to that owner
+    private int headOfDownSlot(int slot) {
+        return ownerOf(firstDown, slot);
+    }
+
+    private static int ownerOf(int[] first, int slot) {
+        int low = 0;
+        int high = first.length - 2;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (first[mid] <= slot) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private static int[] grow(int[] array, int needed) {
+        return needed < array.length ? array : Arrays.copyOf(array, Math.max(needed + 1, array.length * 2));
+    }
+
+    // Growable edge list used during preprocessing. For hierarchy edges "first" holds the
+    // edge ID; for shortcuts "first"/"second" hold the two edges the shortcut replaces.
+    private static final class EdgeBuffer {
+        int[] tails = new int[16];
+        int[] heads = new int[16];
+        double[] weights = new double[16];
+        int[] first = new int[16];
+        int[] second = new int[16];
+        int size;
+
+        void add(int tail, int head, double weight, int firstId, int secondId) {
+            if (size == tails.length) {
+                int capacity = size * 2;
+                tails = Arrays.copyOf(tails, capacity);
+                heads = Arrays.copyOf(heads, capacity);
+                weights = Arrays.copyOf(weights, capacity);
+                first = Arrays.copyOf(first, capacity);
+                second = Arrays.copyOf(second, capacity);
+            }
+            tails[size] = tail;
+            heads[size] = head;
+            weights[size] = weight;
+            first[size] = firstId;
+            second[size] = secondId;
+            size++;
+        }
+    }
+
+    // Per-thread witness search space plus stamps marking the current contraction's targets
+    private static final class WitnessScratch {
+        final SearchState state = new SearchState();
+        int[] targetStamps = new int[0];
+        int stamp;
+
+        int markTargets(int nodeCount) {
+            if (targetStamps.length < nodeCount) {
+                targetStamps = new int[nodeCount];
+                stamp = 0;
+            }
+            return ++stamp;
+        }
+    }
+
+    // Node contraction. Each round picks an independent set of nodes whose priority is a
+    // local minimum among their neighbors, finds their shortcuts in parallel (a node's
+    // witness searches avoid set members ordered before it, so no two contractions rely on
+    // each other's paths), applies them, and re-evaluates the neighbors' priorities in parallel.
+    private static final class Contractor {
+        private static final int[] NO_INTS = new int[0];
+        private static final double[] NO_DOUBLES = new double[0];
+
+        final CompactGraph graph;
+        final int nodeCount;
+        final int edgeCount;
+        final ThreadLocal<WitnessScratch> witnessScratch = ThreadLocal.withInitial(WitnessScratch::new);
+
+        // Adjacency of the not-yet-contracted part of the graph (at most one edge per node pair)
+        final int[][] outTargets;
+        final double[][] outWeights;
+        final int[][] outIds;
+        final int[] outDegree;
+        final int[][] inSources;
+        final double[][] inWeights;
+        final int[][] inIds;
+        final int[] inDegree;
+
+        final double[] priority;
+        final int[] deletedNeighbors;
+        final int[] rank;
+
+        final EdgeBuffer upEdges = new EdgeBuffer();
+        final EdgeBuffer downEdges = new EdgeBuffer();
+        int[] shortcutFirst = new int[16];
+        int[] shortcutSecond = new int[16];
+        int shortcutCount;
+
+        Contractor(CompactGraph graph, int hourOfDay) {
+            this.graph = graph;
+            this.nodeCount = graph.getNodeCount();
+            this.edgeCount = graph.getEdgeCount();
+            this.outTargets = new int[nodeCount][];
+            this.outWeights = new double[nodeCount][];
+            this.outIds = new int[nodeCount][];
+            this.outDegree = new int[nodeCount];
+            this.inSources = new int[nodeCount][];
+            this.inWeights = new double[nodeCount][];
+            this.inIds = new int[nodeCount][];
+            this.inDegree = new int[nodeCount];
+            this.priority = new double[nodeCount];
+            this.deletedNeighbors = new int[nodeCount];
+            this.rank = new int[nodeCount];
+
+            for (int v = 0; v < nodeCount; v++) {
+                outTargets[v] = NO_INTS;
+                outWeights[v] = NO_DOUBLES;
+                outIds[v] = NO_INTS;
+                inSources[v] = NO_INTS;
+                inWeights[v] = NO_DOUBLES;
+                inIds[v] = NO_INTS;
+            }
+            for (int u = 0; u < nodeCount; u++) {
+                for (int e = graph.firstEdge(u), last = graph.endEdge(u); e < last; e++) {
+                    int v = graph.getTarget(e);
+                    if (v != u) {
+                        addArc(u, v, graph.getTravelTime(e, hourOfDay), e);
+                    }
+                }
+            }
+        }
+
+        void run() {
+            int[] remaining = IntStream.range(0, nodeCount).toArray();
+            int remainingCount = nodeCount;
+            int nextRank = 0;
+            boolean[] inSet = new boolean[nodeCount];
+            boolean[] touched = new boolean[nodeCount];
+
+            IntStream.range(0, nodeCount).parallel().forEach(v -> priority[v] = computePriority(v));
+
+            while (remainingCount > 0) {
+                int[] set = Arrays.stream(remaining, 0, remainingCount).parallel()
+                        .filter(this::isLocalMinimum)
+                        .toArray();
+                for (int v : set) {
+                    inSet[v] = true;
+                }
+
+                EdgeBuffer[] shortcuts = new EdgeBuffer[set.length];
+                IntStream.range(0, set.length).parallel().forEach(i -> {
+                    shortcuts[i] = new EdgeBuffer();
+                    findShortcuts(set[i], inSet, shortcuts[i], WITNESS_SETTLE_LIMIT);
+                });
+
+                List<Integer> neighbors = new ArrayList<>();
+                for (int v : set) {
+                    rank[v] = nextRank++;
+                    contract(v, touched, neighbors);
+                }
+                for (EdgeBuffer buffer : shortcuts) {
+                    for (int i = 0; i < buffer.size; i++) {
+                        addShortcut(buffer.tails[i], buffer.heads[i], buffer.weights[i], buffer.first[i], buffer.second[i]);
+                    }
+                }
+                for (int v : set) {
+                    inSet[v] = false;
+                }
+
+                neighbors.parallelStream().forEach(v -> priority[v] = computePriority(v));
+                for (int v : neighbors) {
+                    touched[v] = false;
+                }
+
+                int kept = 0;
+                for (int i = 0; i < remainingCount; i++) {
+                    if (outTargets[remaining[i]] != null) {
+                        remaining[kept++] = remaining[i];
+                    }
+                }
+                remainingCount = kept;
+            }
+        }
+
+        // Orders nodes by (priority, scrambled ID); the ID part keeps the order total
+        private boolean before(int a, int b) {
+            if (priority[a] != priority[b]) {
+                return priority[a] < priority[b];
+            }
+            return a * 0x9E3779B1 < b * 0x9E3779B1;
+        }
+
+        private boolean isLocalMinimum(int v) {
+            for (int i = 0; i < outDegree[v]; i++) {
+                if (before(outTargets[v][i], v)) {
+                    return false;
+                }
+            }
+            for (int i = 0; i < inDegree[v]; i++) {
+                if (before(inSources[v][i], v)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // Edge difference (shortcuts added minus edges removed), weighted, plus the number of
+        // already-contracted neighbors to spread contraction evenly over the graph
+        private double computePriority(int v) {
+            int shortcuts = findShortcuts(v, null, null, PRIORITY_SETTLE_LIMIT);
+            return 2.0 * (shortcuts - outDegree[v] - inDegree[v]) + deletedNeighbors[v];
+        }
+
+        // Counts (and, if collect is non-null, records) the shortcuts needed to contract v
+        private int findShortcuts(int v, boolean[] excluded, EdgeBuffer collect, int settleLimit) {
+            int count = 0;
+            double maxOut = 0.0;
+            WitnessScratch scratch = witnessScratch.get();
+            int stamp = scratch.markTargets(nodeCount);
+            for (int j = 0; j < outDegree[v]; j++) {
+                maxOut = Math.max(maxOut, outWeights[v][j]);
+                scratch.targetStamps[outTargets[v][j]] = stamp;
+            }
+            SearchState state = scratch.state;
+            for (int i = 0; i < inDegree[v]; i++) {
+                int u = inSources[v][i];
+                double viaIn = inWeights[v][i];
+                int targets = scratch.targetStamps[u] == stamp ? outDegree[v] - 1 : outDegree[v];
+                witnessSearch(scratch, u, v, excluded, viaIn + maxOut, targets, settleLimit);
+                for (int j = 0; j < outDegree[v]; j++) {
+                    int w = outTargets[v][j];
+                    if (w == u) {
+                        continue;
+                    }
+                    double viaV = viaIn + outWeights[v][j];
+                    if (state.getDistance(w) > viaV) {
+                        count++;
+                        if (collect != null) {
+                            collect.add(u, w, viaV, inIds[v][i], outIds[v][j]);
+                        }
+                    }
+                }
+            }
+            return count;
+        }
+
+        // Bounded Dijkstra from source that never enters skip, nor excluded nodes ordered
+        // before it. Treating the round as a sequential contraction in that order, every
+        // witness found this way also exists in the sequential graph, so no distance is lost.
+        // Stops early once all marked targets are settled.
+        private void witnessSearch(WitnessScratch scratch, int source, int skip, boolean[] excluded, double maxCost,
+                                   int targets, int settleLimit) {
+            SearchState state = scratch.state;
+            int stamp = scratch.stamp;
+            state.reset(nodeCount);
+            IndexedMinHeap heap = state.getHeap();
+            state.update(source, 0.0, -1);
+            heap.insertOrDecrease(source, 0.0);
+            int settled = 0;
+            while (targets > 0 && !heap.isEmpty() && settled < settleLimit && heap.peekKey() <= maxCost) {
+                int x = heap.poll();
+                double dx = state.getDistance(x);
+                settled++;
+                if (scratch.targetStamps[x] == stamp && x != source) {
+                    targets--;
+                }
+                for (int j = 0; j < outDegree[x]; j++) {
+                    int y = outTargets[x][j];
+                    if (y == skip || (excluded != null && excluded[y] && before(y, skip))) {
+                        continue;
+                    }
+                    double dy = dx + outWeights[x][j];
+                    if (dy < state.getDistance(y)) {
+                        state.update(y, dy, x);
+                        heap.insertOrDecrease(y, dy);
+                    }
+                }
+            }
+        }
+
+        // Moves v's remaining edges into the hierarchy and detaches v from its neighbors
+        private void contract(int v, boolean[] touched, List<Integer> neighbors) {
+            for (int j = 0; j < outDegree[v]; j++) {
+                int w = outTargets[v][j];
+                upEdges.add(v, w, outWeights[v][j], outIds[v][j], -1);
+                removeIn(w, v);
+                markNeighbor(w, touched, neighbors);
+            }
+            for (int i = 0; i < inDegree[v]; i++) {
+                int u = inSources[v][i];
+                downEdges.add(u, v, inWeights[v][i], inIds[v][i], -1);
+                removeOut(u, v);
+                markNeighbor(u, touched, neighbors);
+            }
+            outTargets[v] = null; // Marks v as contracted
+            outWeights[v] = null;
+            outIds[v] = null;
+            inSources[v] = null;
+            inWeights[v] = null;
+            inIds[v] = null;
+            outDegree[v] = 0;
+            inDegree[v] = 0;
+        }
+
+        private void markNeighbor(int node, boolean[] touched, List<Integer> neighbors) {
+            deletedNeighbors[node]++;
+            if (!touched[node]) {
+                touched[node] = true;
+                neighbors.add(node);
+            }
+        }
+
+        private void addShortcut(int tail, int head, double weight, int firstId, int secondId) {
+            if (shortcutCount == shortcutFirst.length) {
+                shortcutFirst = Arrays.copyOf(shortcutFirst, shortcutCount * 2);
+                shortcutSecond = Arrays.copyOf(shortcutSecond, shortcutCount * 2);
+            }
+            shortcutFirst[shortcutCount] = firstId;
+            shortcutSecond[shortcutCount] = secondId;
+            // Two contractions in one round may propose the same shortcut; keep only the cheaper
+            if (addArc(tail, head, weight, edgeCount + shortcutCount)) {
+                shortcutCount++;
+            }
+        }
+
+        // Adds u -> v, or lowers the weight of an existing u -> v edge. Returns false if an
+        // existing edge was at least as cheap and nothing changed.
+        private boolean addArc(int u, int v, double weight, int id) {
+            for (int j = 0; j < outDegree[u]; j++) {
+                if (outTargets[u][j] == v) {
+                    if (weight < outWeights[u][j]) {
+                        outWeights[u][j] = weight;
+                        outIds[u][j] = id;
+                        for (int i = 0; i < inDegree[v]; i++) {
+                            if (inSources[v][i] == u) {
+                                inWeights[v][i] = weight;
+                                inIds[v][i] = id;
+                                break;
+                            }
+                        }
+                        return true;
+                    }
+                    return false;
+                }
+            }
+            if (outDegree[u] == outTargets[u].length) {
+                int capacity = Math.max(4, outDegree[u] * 2);
+                outTargets[u] = Arrays.copyOf(outTargets[u], capacity);
+                outWeights[u] = Arrays.copyOf(outWeights[u], capacity);
+                outIds[u] = Arrays.copyOf(outIds[u], capacity);
+            }
+            outTargets[u][outDegree[u]] = v;
+            outWeights[u][outDegree[u]] = weight;
+            outIds[u][outDegree[u]] = id;
+            outDegree[u]++;
+
+            if (inDegree[v] == inSources[v].length) {
+                int capacity = Math.max(4, inDegree[v] * 2);
+                inSources[v] = Arrays.copyOf(inSources[v], capacity);
+                inWeights[v] = Arrays.copyOf(inWeights[v], capacity);
+                inIds[v] = Arrays.copyOf(inIds[v], capacity);
+            }
+            inSources[v][inDegree[v]] = u;
+            inWeights[v][inDegree[v]] = weight;
+            inIds[v][inDegree[v]] = id;
+            inDegree[v]++;
+            return true;
+        }
+
+        private void removeOut(int u, int v) {
+            int last = --outDegree[u];
+            for (int j = 0; j <= last; j++) {
+                if (outTargets[u][j] == v) {
+                    outTargets[u][j] = outTargets[u][last];
+                    outWeights[u][j] = outWeights[u][last];
+                    outIds[u][j] = outIds[u][last];
+                    return;
+                }
+            }
+        }
+
+        private void removeIn(int v, int u) {
+            int last = --inDegree[v];
+            for (int i = 0; i <= last; i++) {
+                if (inSources[v][i] == u) {
+                    inSources[v][i] = inSources[v][last];
+                    inWeights[v][i] = inWeights[v][last];
+                    inIds[v][i] = inIds[v][last];
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,550 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.IntStream;
+
+// Customizable Contraction Hierarchies (CCH) over a CompactGraph.
+// The expensive part, a node order and the shortcut structure it implies, only depends on
+// the road topology and is computed once. Traffic enters in a separate "customization"
+// pass per hour that just recomputes shortcut weights bottom-up over the precomputed lower
+// triangles, so changing factors never requires re-running the preprocessing.
+public class CustomizableContractionHierarchy {
+    // Cells of at most this many nodes are not split further during nested dissection
+    private static final int LEAF_CELL_SIZE = 16;
+
+    private static final ThreadLocal<SearchState[]> QUERY_STATE =
+            ThreadLocal.withInitial(() -> new SearchState[] { new SearchState(), new SearchState() });
+
+    private final CompactGraph graph;
+    private final long preprocessingMillis;
+    private final int[] rank;
+
+    // Arcs of the chordal supergraph, grouped by their lower-ranked endpoint and sorted by
+    // the upper endpoint's ID within each group. Arc a joins owner(a) and arcHeads[a].
+    private final int[] firstArc;
+    private final int[] arcHeads;
+
+    // Lower triangles (x; u, w) with rank x < rank u < rank w, grouped by x in rank order:
+    // arc (u, w) can be reached through x via arcs (x, u) and (x, w)
+    private final int[] triangleLowerToMiddle;
+    private final int[] triangleLowerToUpper;
+    private final int[] triangleArc;
+    private final int[] triangleMiddle;
+
+    // Per-hour customized metrics, null until that hour is customized. Written under the
+    // instance lock and read without it; queries read an hour's entry once and use that metric
+    // throughout, so a customization running meanwhile cannot mix weights of two versions.
+    private final AtomicReferenceArray<Metric> metrics = new AtomicReferenceArray<>(CompactGraph.HOURS_PER_DAY);
+
+    // Weights of one hour. For arc (v, u) with v lower: upWeights = cost of v -> u,
+    // downWeights = cost of u -> v. The matching "via" entry is either a CSR edge (>= 0)
+    // or -(x + 1) for a shortcut through lower node x.
+    private static final class Metric {
+        final long trafficVersion;
+        final double[] upWeights;
+        final double[] downWeights;
+        final int[] upVia;
+        final int[] downVia;
+
+        Metric(long trafficVersion, int arcCount) {
+            this.trafficVersion = trafficVersion;
+            this.upWeights = new double[arcCount];
+            this.downWeights = new double[arcCount];
+            this.upVia = new int[arcCount];
+            this.downVia = new int[arcCount];
+        }
+    }
+
+    private CustomizableContractionHierarchy(CompactGraph graph) {
+        long startTime = System.nanoTime();
+        this.graph = graph;
+        int nodeCount = graph.getNodeCount();
+
+        int[] order = nestedDissectionOrder(graph);
+        this.rank = new int[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            rank[order[i]] = i;
+        }
+
+        // Contract in order, connecting all upper neighbors of each node (no witness
+        // searches: the structure must be valid for every metric)
+        int[][] neighbors = undirectedNeighbors(graph);
+        int[] degree = new int[nodeCount];
+        for (int v = 0; v < nodeCount; v++) {
+            degree[v] = neighbors[v].length;
+        }
+        int[] marks = new int[nodeCount];
+        int stamp = 0;
+        int[] upper = new int[16];
+        for (int i = 0; i < nodeCount; i++) {
+            int v = order[i];
+            int upperCount = 0;
+            for (int j = 0; j < degree[v]; j++) {
+                int u = neighbors[v][j];
+                if (rank[u] > rank[v]) {
+                    upper = grow(upper, upperCount);
+                    upper[upperCount++] = u;
+                }
+            }
+            for (int a = 0; a < upperCount; a++) {
+                int u = upper[a];
+                stamp++;
+                for (int j = 0; j < degree[u]; j++) {
+                    marks[neighbors[u][j]] = stamp;
+                }
+                for (int b = 0; b < upperCount; b++) {
+                    int w = upper[b];
+                    if (w != u && marks[w] != stamp) {
+                        neighbors[u] = grow(neighbors[u], degree[u]);
+                        neighbors[u][degree[u]++] = w;
+                        marks[w] = stamp;
+                    }
+                }
+            }
+        }
+
+        // Keep each undirected arc once, at its lower endpoint, sorted by upper endpoint ID
+        this.firstArc = new int[nodeCount + 1];
+        for (int v = 0; v < nodeCount; v++) {
+            int count = 0;
+            for (int j = 0; j < degree[v]; j++) {
+                if (rank[neighbors[v][j]] > rank[v]) {
+                    count++;
+                }
+            }
+            firstArc[v + 1] = firstArc[v] + count;
+        }
+        this.arcHeads = new int[firstArc[nodeCount]];
+        for (int v = 0; v < nodeCount; v++) {
+            int slot = firstArc[v];
+            for (int j = 0; j < degree[v]; j++) {
+                if (rank[neighbors[v][j]] > rank[v]) {
+                    arcHeads[slot++] = neighbors[v][j];
+                }
+            }
+            Arrays.sort(arcHeads, firstArc[v], firstArc[v + 1]);
+        }
+
+        // Enumerate lower triangles in the order customization must process them
+        int triangleCount = 0;
+        for (int v = 0; v < nodeCount; v++) {
+            long arcs = firstArc[v + 1] - firstArc[v];
+            triangleCount = Math.addExact(triangleCount, (int) (arcs * (arcs - 1) / 2));
+        }
+        this.triangleLowerToMiddle = new int[triangleCount];
+        this.triangleLowerToUpper = new int[triangleCount];
+        this.triangleArc = new int[triangleCount];
+        this.triangleMiddle = new int[triangleCount];
+        int t = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            int x = order[i];
+            for (int a = firstArc[x]; a < firstArc[x + 1]; a++) {
+                for (int b = a + 1; b < firstArc[x + 1]; b++) {
+                    int u = arcHeads[a];
+                    int w = arcHeads[b];
+                    int toMiddle = a;
+                    int toUpper = b;
+                    if (rank[u] > rank[w]) {
+                        int swap = u;
+                        u = w;
+                        w = swap;
+                        toMiddle = b;
+                        toUpper = a;
+                    }
+                    triangleLowerToMiddle[t] = toMiddle;
+                    triangleLowerToUpper[t] = toUpper;
+                    triangleArc[t] = findArc(u, w);
+                    triangleMiddle[t] = x;
+                    t++;
+                }
+            }
+        }
+        this.preprocessingMillis = (System.nanoTime() - startTime) / 1_000_000;
+    }
+
+    // Runs the metric-independent phase (ordering and shortcut structure)
+    public static CustomizableContractionHierarchy build(CompactGraph graph) {
+        return new CustomizableContractionHierarchy(graph);
+    }
+
+    public CompactGraph getGraph() {
+        return graph;
+    }
+
+    public long getPreprocessingMillis() {
+        return preprocessingMillis;
+    }
+
+    public int getArcCount() {
+        return arcHeads.length;
+    }
+
+    public int getTriangleCount() {
+        return triangleArc.length;
+    }
+
+    // Recomputes all arc weights for one hour from the graph's current traffic factors
+    public synchronized void customize(int hourOfDay) {
+        if (hourOfDay < 0 || hourOfDay > 23) {
+            throw new IllegalArgumentException("Hour of day must be between 0 and 23.");
+        }
+        metrics.set(hourOfDay, computeMetric(hourOfDay));
+    }
+
+    // Customizes all 24 hours, one hour per core
+    public synchronized void customizeAll() {
+        Metric[] computed = new Metric[CompactGraph.HOURS_PER_DAY];
+        IntStream.range(0, CompactGraph.HOURS_PER_DAY).parallel().forEach(hour -> computed[hour] = computeMetric(hour));
+        for (int hour = 0; hour < computed.length; hour++) {
+            metrics.set(hour, computed[hour]);
+        }
+    }
+
+    private Metric computeMetric(int hourOfDay) {
+        Metric metric = new Metric(graph.getTrafficVersion(), arcHeads.length);
+        Arrays.fill(metric.upWeights, Double.POSITIVE_INFINITY);
+        Arrays.fill(metric.downWeights, Double.POSITIVE_INFINITY);
+        Arrays.fill(metric.upVia, -1);
+        Arrays.fill(metric.downVia, -1);
+
+        // Original edges initialize the arc they belong to (cheapest one for parallel edges)
+        for (int u = 0; u < graph.getNodeCount(); u++) {
+            for (int e = graph.firstEdge(u), last = graph.endEdge(u); e < last; e++) {
+                int w = graph.getTarget(e);
+                if (w == u) {
+                    continue;
+                }
+                double weight = graph.getTravelTime(e, hourOfDay);
+                if (rank[u] < rank[w]) {
+                    int arc = findArc(u, w);
+                    if (weight < metric.upWeights[arc]) {
+                        metric.upWeights[arc] = weight;
+                        metric.upVia[arc] = e;
+                    }
+                } else {
+                    int arc = findArc(w, u);
+                    if (weight < metric.downWeights[arc]) {
+                        metric.downWeights[arc] = weight;
+                        metric.downVia[arc] = e;
+                    }
+                }
+            }
+        }
+
+        // Bottom-up triangle relaxation: arcs of lower nodes are final when used
+        double[] up = metric.upWeights;
+        double[] down = metric.downWeights;
+        for (int t = 0; t < triangleArc.length; t++) {
+            int toMiddle = triangleLowerToMiddle[t];
+            int toUpper = triangleLowerToUpper[t];
+            int arc = triangleArc[t];
+            double upward = down[toMiddle] + up[toUpper];   // middle -> x -> upper
+            if (upward < up[arc]) {
+                up[arc] = upward;
+                metric.upVia[arc] = -(triangleMiddle[t] + 1);
+            }
+            double downward = down[toUpper] + up[toMiddle]; // upper -> x -> middle
+            if (downward < down[arc]) {
+                down[arc] = downward;
+                metric.downVia[arc] = -(triangleMiddle[t] + 1);
+            }
+        }
+        return metric;
+    }
+
+    // True if the hour has not been customized since the last traffic factor change
+    public boolean isStale(int hourOfDay) {
+        return isStale(metrics.get(hourOfDay));
+    }
+
+    private boolean isStale(Metric metric) {
+        return metric == null || metric.trafficVersion != graph.getTrafficVersion();
+    }
+
+    // The hour's metric, customized first unless another thread did so while this one waited
+    private synchronized Metric customizeIfStale(int hourOfDay) {
+        Metric metric = metrics.get(hourOfDay);
+        if (isStale(metric)) {
+            metric = computeMetric(hourOfDay);
+            metrics.set(hourOfDay, metric);
+        }
+        return metric;
+    }
+
+    public PathResult findPath(String startNodeId, String endNodeId, int hourOfDay) {
+        int start = graph.indexOf(startNodeId);
+        int end = graph.indexOf(endNodeId);
+        if (start < 0 || end < 0) {
+            System.err.println("Error: Start or end node does not exist in the graph.");
+            return new PathResult(Collections.emptyList(), 0.0, Collections.emptyList());
+        }
+        return findPath(start, end, hourOfDay);
+    }
+
+    // Bidirectional upward search on the hour's metric; the hour is (re)customized first if
+    // it was never customized or traffic factors changed since
+    public PathResult findPath(int start, int end, int hourOfDay) {
+        if (hourOfDay < 0 || hourOfDay > 23) {
+            System.err.println("Error: Hour of day must be between 0 and 23.");
+            return new PathResult(Collections.emptyList(), 0.0, Collections.emptyList());
+        }
+        Metric metric = metrics.get(hourOfDay);
+        if (isStale(metric)) {
+            metric = customizeIfStale(hourOfDay);
+        }
+
+        SearchState[] states = QUERY_STATE.get();
+        SearchState forward = states[0];
+        SearchState backward = states[1];
+        forward.reset(graph.getNodeCount());
+        backward.reset(graph.getNodeCount());
+        IndexedMinHeap forwardHeap = forward.getHeap();
+        IndexedMinHeap backwardHeap = backward.getHeap();
+        // Predecessor records hold the arc each node was reached through
+        forward.update(start, 0.0, -1);
+        forwardHeap.insertOrDecrease(start, 0.0);
+        backward.update(end, 0.0, -1);
+        backwardHeap.insertOrDecrease(end, 0.0);
+
+        double best = Double.POSITIVE_INFINITY;
+        int meeting = -1;
+        int settledNodes = 0;
+        boolean forwardTurn = true;
+        while (true) {
+            boolean forwardOpen = !forwardHeap.isEmpty() && forwardHeap.peekKey() < best;
+            boolean backwardOpen = !backwardHeap.isEmpty() && backwardHeap.peekKey() < best;
+            if (!forwardOpen && !backwardOpen) {
+                break;
+            }
+            boolean stepForward = forwardOpen && (forwardTurn || !backwardOpen);
+            forwardTurn = !forwardTurn;
+            settledNodes++;
+
+            SearchState side = stepForward ? forward : backward;
+            SearchState other = stepForward ? backward : forward;
+            IndexedMinHeap heap = stepForward ? forwardHeap : backwardHeap;
+            double[] weights = stepForward ? metric.upWeights : metric.downWeights;
+
+            int u = heap.poll();
+            double du = side.getDistance(u);
+            double total = du + other.getDistance(u);
+            if (total < best) {
+                best = total;
+                meeting = u;
+            }
+            for (int arc = firstArc[u], last = firstArc[u + 1]; arc < last; arc++) {
+                int v = arcHeads[arc];
+                double dv = du + weights[arc];
+                if (dv < side.getDistance(v)) {
+                    side.update(v, dv, arc);
+                    heap.insertOrDecrease(v, dv);
+                }
+            }
+        }
+
+        if (meeting < 0) {
+            return new PathResult(Collections.emptyList(), 0.0, Collections.emptyList(), settledNodes); // Path not found
+        }
+
+        // Arcs start -> meeting (collected backwards, then reversed) and meeting -> end, as
+        // (arc, direction) pairs: direction 1 = lower -> upper, 0 = upper -> lower
+        int[] steps = new int[16];
+        int count = 0;
+        for (int node = meeting; node != start; ) {
+            int arc = forward.getPredecessor(node);
+            steps = grow(steps, count + 1);
+            steps[count++] = arc;
+            steps[count++] = 1;
+            node = ownerOf(arc);
+        }
+        for (int i = 0, j = count - 2; i < j; i += 2, j -= 2) {
+            int swap = steps[i];
+            steps[i] = steps[j];
+            steps[j] = swap;
+        }
+        for (int node = meeting; node != end; ) {
+            int arc = backward.getPredecessor(node);
+            steps = grow(steps, count + 1);
+            steps[count++] = arc;
+            steps[count++] = 0;
+            node = ownerOf(arc);
+        }
+
+        int[] routeEdges = new int[Math.max(count, 16)];
+        int routeLength = 0;
+        int[] stack = new int[16];
+        for (int i = 0; i < count; i += 2) {
+            int top = 0;
+            stack[top++] = steps[i];
+            stack[top++] = steps[i + 1];
+            while (top > 0) {
+                boolean upward = stack[--top] == 1;
+                int arc = stack[--top];
+                int via = upward ? metric.upVia[arc] : metric.downVia[arc];
+                if (via >= 0) {
+                    routeEdges = grow(routeEdges, routeLength);
+                    routeEdges[routeLength++] = via;
+                    continue;
+                }
+                // Shortcut through lower node x: lower -> x -> upper or upper -> x -> lower
+                int x = -via - 1;
+                int toLower = findArc(x, ownerOf(arc));
+                int toUpper = findArc(x, arcHeads[arc]);
+                stack = grow(stack, top + 3);
+                if (upward) {
+                    stack[top++] = toUpper;
+                    stack[top++] = 1;
+                    stack[top++] = toLower;
+                    stack[top++] = 0;
+                } else {
+                    stack[top++] = toLower;
+                    stack[top++] = 1;
+                    stack[top++] = toUpper;
+                    stack[top++] = 0;
+                }
+            }
+        }
+        return new PathResult(graph, start, routeEdges, routeLength, best, settledNodes);
+    }
+
+    // Arc joining lower node v and upper node u (binary search in v's sorted group)
+    private int findArc(int v, int u) {
+        int index = Arrays.binarySearch(arcHeads, firstArc[v], firstArc[v + 1], u);
+        if (index < 0) {
+            throw new IllegalStateException("Missing arc " + v + " -> " + u + " in chordal supergraph.");
+        }
+        return index;
+    }
+
+    // Lower endpoint of an arc
+    private int ownerOf(int arc) {
+        int low = 0;
+        int high = firstArc.length - 2;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (firstArc[mid] <= arc) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private static int[] grow(int[] array, int needed) {
+        return needed < array.length ? array : Arrays.copyOf(array, Math.max(needed + 1, array.length * 2));
+    }
+
+    // Neighbors ignoring edge direction, without duplicates or self-loops
+    private static int[][] undirectedNeighbors(CompactGraph graph) {
+        int nodeCount = graph.getNodeCount();
+        int[][] neighbors = new int[nodeCount][];
+        int[] marks = new int[nodeCount];
+        Arrays.fill(marks, -1);
+        int[] buffer = new int[16];
+        for (int v = 0; v < nodeCount; v++) {
+            int count = 0;
+            marks[v] = v;
+            for (int e = graph.firstEdge(v), last = graph.endEdge(v); e < last; e++) {
+                int w = graph.getTarget(e);
+                if (marks[w] != v) {
+                    marks[w] = v;
+                    buffer = grow(buffer, count);
+                    buffer[count++] = w;
+                }
+            }
+            for (int slot = graph.firstInEdge(v), last = graph.endInEdge(v); slot < last; slot++) {
+                int w = graph.getSource(slot);
+                if (marks[w] != v) {
+                    marks[w] = v;
+                    buffer = grow(buffer, count);
+                    buffer[count++] = w;
+                }
+            }
+            neighbors[v] = Arrays.copyOf(buffer, count);
+        }
+        return neighbors;
+    }
+
+    // Geometric nested dissection: split each cell at the coordinate median along its wider
+    // axis, take the nodes of one half that touch the other half as separator, order both
+    // remaining halves recursively and put the separator last (most important)
+    private static int[] nestedDissectionOrder(CompactGraph graph) {
+        int nodeCount = graph.getNodeCount();
+        int[][] neighbors = undirectedNeighbors(graph);
+        int[] order = new int[nodeCount];
+        int[] cellOf = new int[nodeCount];
+        int[] nodes = IntStream.range(0, nodeCount).toArray();
+        int[] position = new int[] { 0 };
+        int[] nextCell = new int[] { 1 };
+        dissect(graph, neighbors, nodes, 0, nodeCount, cellOf, nextCell, order, position);
+        return order;
+    }
+
+    private static void dissect(CompactGraph graph, int[][] neighbors, int[] nodes, int from, int to,
+                                int[] cellOf, int[] nextCell, int[] order, int[] position) {
+        int size = to - from;
+        double minX = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int i = from; i < to; i++) {
+            minX = Math.min(minX, graph.getX(nodes[i]));
+            maxX = Math.max(maxX, graph.getX(nodes[i]));
+            minY = Math.min(minY, graph.getY(nodes[i]));
+            maxY = Math.max(maxY, graph.getY(nodes[i]));
+        }
+        if (size <= LEAF_CELL_SIZE || (maxX <= minX && maxY <= minY)) {
+            for (int i = from; i < to; i++) {
+                order[position[0]++] = nodes[i];
+            }
+            return;
+        }
+
+        // Sort the cell by the wider axis and split at the median
+        boolean byX = maxX - minX >= maxY - minY;
+        Integer[] boxed = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            boxed[i] = nodes[from + i];
+        }
+        Arrays.sort(boxed, (a, b) -> byX
+                ? Double.compare(graph.getX(a), graph.getX(b))
+                : Double.compare(graph.getY(a), graph.getY(b)));
+        for (int i = 0; i < size; i++) {
+            nodes[from + i] = boxed[i];
+        }
+        int middle = from + size / 2;
+
+        int low = nextCell[0]++;
+        int high = nextCell[0]++;
+        for (int i = from; i < to; i++) {
+            cellOf[nodes[i]] = i < middle ? low : high;
+        }
+
+        // Separator: nodes of the lower half adjacent to the upper half. Moving them to the
+        // end of the lower range leaves [from, lowEnd) and [middle, to) disconnected.
+        int lowEnd = middle;
+        for (int i = middle - 1; i >= from; i--) {
+            int v = nodes[i];
+            for (int w : neighbors[v]) {
+                if (cellOf[w] == high) {
+                    lowEnd--;
+                    nodes[i] = nodes[lowEnd];
+                    nodes[lowEnd] = v;
+                    break;
+                }
+            }
+        }
+        int separatorCount = middle - lowEnd;
+        int[] separator = Arrays.copyOfRange(nodes, lowEnd, middle);
+        for (int v : separator) {
+            cellOf[v] = 0;
+        }
+
+        dissect(graph, neighbors, nodes, from, lowEnd, cellOf, nextCell, order, position);
+        dissect(graph, neighbors, nodes, middle, to, cellOf, nextCell, order, position);
+        for (int i = 0; i < separatorCount; i++) {
+            order[position[0]++] = separator[i];
+        }
+    }
+}
@@ -0,0 +1,382 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+// Parallel single-source shortest paths (delta-stepping) over a CompactGraph at a fixed
+// hour, for offline analytics such as full shortest-path trees from hubs, where one
+// Dijkstra search would use a single core. Tentative distances are grouped into buckets of
+// width delta; all nodes of the lowest non-empty bucket are relaxed at once by every worker,
+// nodes improved into the same bucket are relaxed again, and the workers only meet at a
+// barrier to move on to the next bucket. A small delta approaches Dijkstra's order (little
+// wasted work, many barriers); a large one approaches Bellman-Ford (few barriers, nodes
+// relaxed more than once). defaultDelta picks the mean edge travel time.
+//
+// Distances are doubles stored as their bits in a long[] and lowered with compare-and-set
+// (non-negative doubles order like their bits). Each worker files the nodes it improves in
+// its own bins, so insertion needs no synchronization; the next frontier is the workers'
+// bins for the next bucket, claimed in chunks. Predecessor edges are derived afterwards from
+// the final distances, also in parallel.
+public class DeltaStepping implements AutoCloseable {
+    private static final VarHandle DISTANCE = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final long UNREACHED = Double.doubleToRawLongBits(Double.POSITIVE_INFINITY);
+    // Frontier entries (or nodes in the final passes) a worker claims at a time
+    private static final int CHUNK = 64;
+    // A worker keeps relaxing its own re-improved nodes of the current bucket, instead of
+    // waiting at the barrier for the others, while it has at most this many of them
+    private static final int LOCAL_LIMIT = 1000;
+
+    private final int parallelism;
+    // Workers 1 .. parallelism - 1; the calling thread is worker 0
+    private final ExecutorService executor;
+
+    // State of the running computation (compute is synchronized)
+    private CompactGraph graph;
+    private int hourOfDay;
+    private double delta;
+    private long[] distances;
+    private Bins[] bins;
+    private CyclicBarrier barrier;
+    private final AtomicInteger cursor = new AtomicInteger();
+    // Set by the barrier action, read by all workers after the barrier
+    private int currentBucket;
+    private boolean done;
+    private int[][] frontier;
+    private int[] frontierEnds;
+
+    // Nodes improved by one worker, by bucket index
+    private static final class Bins {
+        int[][] lists = new int[64][];
+        int[] sizes = new int[64];
+        int[] scratch = new int[LOCAL_LIMIT];
+
+        void add(int bucket, int node) {
+            if (bucket >= lists.length) {
+                int capacity = Math.max(bucket + 1, lists.length * 2);
+                lists = Arrays.copyOf(lists, capacity);
+                sizes = Arrays.copyOf(sizes, capacity);
+            }
+            int[] list = lists[bucket];
+            if (list == null) {
+                list = lists[bucket] = new int[16];
+            } else if (sizes[bucket] == list.length) {
+                list = lists[bucket] = Arrays.copyOf(list, list.length * 2);
+            }
+            list[sizes[bucket]++] = node;
+        }
+
+        int size(int bucket) {
+            return bucket < sizes.length ? sizes[bucket] : 0;
+        }
+
+        // Smallest non-empty bucket from the given one on, or -1
+        int firstFrom(int bucket) {
+            for (int b = bucket; b < sizes.length; b++) {
+                if (sizes[b] > 0) {
+                    return b;
+                }
+            }
+            return -1;
+        }
+
+        // Hands over a bucket's list (its first size(bucket) entries) and starts it afresh
+        int[] take(int bucket) {
+            int[] list = lists[bucket];
+            lists[bucket] = null;
+            sizes[bucket] = 0;
+            return list;
+        }
+    }
+
+    // Runs computations on the given number of threads (the caller's included)
+    public DeltaStepping(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("At least one thread is required.");
+        }
+        this.parallelism = parallelism;
+        this.executor = parallelism == 1 ? null : Executors.newFixedThreadPool(parallelism - 1, task -> {
+            Thread thread = new Thread(task, "delta-stepping");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    // Mean edge travel time at the given hour: a bucket then holds about one edge's worth of
+    // distance, which keeps re-relaxations rare on road networks
+    public static double defaultDelta(CompactGraph graph, int hourOfDay) {
+        checkHour(hourOfDay);
+        double total = 0.0;
+        for (int e = 0; e < graph.getEdgeCount(); e++) {
+            total += graph.getTravelTime(e, hourOfDay);
+        }
+        return graph.getEdgeCount() == 0 || total == 0.0 ? 1.0 : total / graph.getEdgeCount();
+    }
+
+    public ShortestPathTree compute(CompactGraph graph, int source, int hourOfDay) {
+        return compute(graph, source, hourOfDay, defaultDelta(graph, hourOfDay));
+    }
+
+    // Shortest travel times and predecessor edges from source to every node
+    public synchronized ShortestPathTree compute(CompactGraph graph, int source, int hourOfDay, double delta) {
+        checkHour(hourOfDay);
+        if (source < 0 || source >= graph.getNodeCount()) {
+            throw new IllegalArgumentException("Node index " + source + " is out of range.");
+        }
+        if (!(delta > 0) || delta == Double.POSITIVE_INFINITY) {
+            throw new IllegalArgumentException("Bucket width must be positive and finite.");
+        }
+        this.graph = graph;
+        this.hourOfDay = hourOfDay;
+        this.delta = delta;
+        int nodeCount = graph.getNodeCount();
+        distances = new long[nodeCount];
+        bins = new Bins[parallelism];
+        for (int w = 0; w < parallelism; w++) {
+            bins[w] = new Bins();
+        }
+        frontier = new int[parallelism][];
+        frontierEnds = new int[parallelism];
+        runOnWorkers(worker -> {
+            for (int start; (start = cursor.getAndAdd(CHUNK)) < nodeCount; ) {
+                Arrays.fill(distances, start, Math.min(start + CHUNK, nodeCount), UNREACHED);
+            }
+        });
+
+        distances[source] = Double.doubleToRawLongBits(0.0);
+        bins[0].add(0, source);
+        currentBucket = 0;
+        done = false;
+        nextFrontier();
+        barrier = new CyclicBarrier(parallelism, this::nextFrontier);
+        runOnWorkers(this::relaxBuckets);
+
+        double[] result = new double[nodeCount];
+        int[] predecessors = new int[nodeCount];
+        runOnWorkers(worker -> {
+            for (int start; (start = cursor.getAndAdd(CHUNK)) < nodeCount; ) {
+                for (int v = start, end = Math.min(start + CHUNK, nodeCount); v < end; v++) {
+                    result[v] = Double.longBitsToDouble(distances[v]);
+                }
+            }
+        });
+        runOnWorkers(worker -> {
+            for (int start; (start = cursor.getAndAdd(CHUNK)) < nodeCount; ) {
+                for (int v = start, end = Math.min(start + CHUNK, nodeCount); v < end; v++) {
+                    predecessors[v] = strictPredecessor(result, v);
+                }
+            }
+        });
+        attachTiedNodes(result, predecessors, source);
+
+        ShortestPathTree tree = new ShortestPathTree(graph, source, hourOfDay, result, predecessors);
+        this.graph = null;
+        distances = null;
+        bins = null;
+        frontier = null;
+        return tree;
+    }
+
+    // One worker's part of the bucket loop
+    private void relaxBuckets(int worker) {
+        Bins own = bins[worker];
+        try {
+            while (!done) {
+                int bucket = currentBucket;
+                int total = frontierEnds[parallelism - 1];
+                for (int start; (start = cursor.getAndAdd(CHUNK)) < total; ) {
+                    int list = 0;
+                    while (frontierEnds[list] <= start) {
+                        list++;
+                    }
+                    for (int i = start, end = Math.min(start + CHUNK, total); i < end; i++) {
+                        while (frontierEnds[list] <= i) {
+                            list++;
+                        }
+                        int offset = i - (list == 0 ? 0 : frontierEnds[list - 1]);
+                        relax(frontier[list][offset], bucket, own);
+                    }
+                }
+                // Re-improved nodes of this bucket: relax them right away while there are few
+                for (int size; (size = own.size(bucket)) > 0 && size <= LOCAL_LIMIT; ) {
+                    System.arraycopy(own.lists[bucket], 0, own.scratch, 0, size);
+                    own.sizes[bucket] = 0;
+                    for (int i = 0; i < size; i++) {
+                        relax(own.scratch[i], bucket, own);
+                    }
+                }
+                barrier.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            barrier.reset();
+            throw new IllegalStateException("Shortest-path computation was interrupted.", e);
+        } catch (BrokenBarrierException e) {
+            throw new IllegalStateException("Another worker of the shortest-path computation failed.", e);
+        } catch (RuntimeException | Error e) {
+            barrier.reset();
+            throw e;
+        }
+    }
+
+    // Relaxes the node's outgoing edges unless it was filed here before reaching a lower
+    // bucket (then it has been relaxed with its smaller distance already)
+    private void relax(int u, int bucket, Bins own) {
+        double distance = Double.longBitsToDouble((long) DISTANCE.getVolatile(distances, u));
+        if (bucketOf(distance) < bucket) {
+            return;
+        }
+        for (int e = graph.firstEdge(u), last = graph.endEdge(u); e < last; e++) {
+            int v = graph.getTarget(e);
+            double newDistance = distance + graph.getTravelTime(e, hourOfDay);
+            long newBits = Double.doubleToRawLongBits(newDistance);
+            long current = (long) DISTANCE.getVolatile(distances, v);
+            while (newBits < current) {
+                if (DISTANCE.compareAndSet(distances, v, current, newBits)) {
+                    own.add(bucketOf(newDistance), v);
+                    break;
+                }
+                current = (long) DISTANCE.getVolatile(distances, v);
+            }
+        }
+    }
+
+    // Computed the same way for filing and for the stale check, so rounding cannot disagree
+    private int bucketOf(double distance) {
+        return (int) (distance / delta);
+    }
+
+    // Barrier action: the lowest non-empty bucket of any worker becomes the frontier
+    private void nextFrontier() {
+        int next = -1;
+        for (Bins own : bins) {
+            int first = own.firstFrom(currentBucket);
+            if (first != -1 && (next == -1 || first < next)) {
+                next = first;
+            }
+        }
+        if (next == -1) {
+            done = true;
+            return;
+        }
+        int end = 0;
+        for (int w = 0; w < parallelism; w++) {
+            end += bins[w].size(next);
+            frontier[w] = end == (w == 0 ? 0 : frontierEnds[w - 1]) ? null : bins[w].take(next);
+            frontierEnds[w] = end;
+        }
+        currentBucket = next;
+        cursor.set(0);
+    }
+
+    // An edge into v from a node strictly closer to the source that gives v's distance, or -1
+    private int strictPredecessor(double[] result, int v) {
+        double distance = result[v];
+        if (distance == Double.POSITIVE_INFINITY) {
+            return -1;
+        }
+        for (int slot = graph.firstInEdge(v), last = graph.endInEdge(v); slot < last; slot++) {
+            double from = result[graph.getSource(slot)];
+            int edge = graph.getInEdge(slot);
+            if (from < distance && from + graph.getTravelTime(edge, hourOfDay) == distance) {
+                return edge;
+            }
+        }
+        return -1;
+    }
+
+    // Nodes reached only over zero-time edges from nodes at the same distance have no strict
+    // predecessor; attach them breadth-first from nodes already in the tree, so that the
+    // predecessors never form a cycle
+    private void attachTiedNodes(double[] result, int[] predecessors, int source) {
+        int[] queue = new int[16];
+        int tail = 0;
+        for (int v = 0; v < result.length; v++) {
+            if (predecessors[v] == -1 && v != source && result[v] != Double.POSITIVE_INFINITY) {
+                for (int slot = graph.firstInEdge(v), last = graph.endInEdge(v); slot < last; slot++) {
+                    int u = graph.getSource(slot);
+                    int edge = graph.getInEdge(slot);
+                    if ((u == source || predecessors[u] != -1) && result[u] + graph.getTravelTime(edge, hourOfDay) == result[v]) {
+                        predecessors[v] = edge;
+                        break;
+                    }
+                }
+                if (predecessors[v] != -1) {
+                    queue = grow(queue, tail + 1);
+                    queue[tail++] = v;
+                }
+            }
+        }
+        for (int head = 0; head < tail; head++) {
+            int u = queue[head];
+            for (int e = graph.firstEdge(u), last = graph.endEdge(u); e < last; e++) {
+                int v = graph.getTarget(e);
+                if (predecessors[v] == -1 && v != source && result[u] + graph.getTravelTime(e, hourOfDay) == result[v]) {
+                    predecessors[v] = e;
+                    queue = grow(queue, tail + 1);
+                    queue[tail++] = v;
+                }
+            }
+        }
+    }
+
+    // Runs body(worker) on every worker, the calling thread being worker 0, and waits for all
+    private void runOnWorkers(IntConsumer body) {
+        cursor.set(0);
+        Future<?>[] futures = new Future<?>[parallelism - 1];
+        for (int w = 1; w < parallelism; w++) {
+            int worker = w;
+            futures[w - 1] = executor.submit(() -> body.accept(worker));
+        }
+        RuntimeException failure = null;
+        try {
+            body.accept(0);
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = failure != null ? failure : new IllegalStateException("Interrupted while waiting for workers.", e);
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException
+                            ? (RuntimeException) e.getCause() : new IllegalStateException(e.getCause());
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // Stops the worker threads
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void checkHour(int hourOfDay) {
+        if (hourOfDay < 0 || hourOfDay >= CompactGraph.HOURS_PER_DAY) {
+            throw new IllegalArgumentException("Hour of day must be between 0 and 23.");
+        }
+    }
+
+    private static int[] grow(int[] array, int needed) {
+        return needed <= array.length ? array : Arrays.copyOf(array, Math.max(needed, array.length * 2));
+    }
+}
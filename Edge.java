@@ -1,5 +1,3 @@
-import java.util.Arrays;
-
 // Edge class representing a road segment, now supporting time-dependent traffic and a name
 public class Edge { // Made public
     private String startNodeId; // ID of the starting node
@@ -7,18 +5,21 @@ public class Edge { // Made public
     private double baseWeight;  // Base travel time/distance for the edge (e.g., in minutes)
     private String name;        // Name of the road/segment (e.g., "Main Street")
 
-    // Array to store traffic factors for each hour of the day (0-23)
-    // 1.0 means no traffic, >1.0 means congestion
-    private double[] timeDependentTrafficFactors;
+    // Traffic factors for each hour of the day (0-23), as the ID of a profile in the owning
+    // graph's EdgeProfiles (a table of its own for a standalone edge, made on first set).
+    // 1.0 means no traffic, >1.0 means congestion.
+    private EdgeProfiles profiles;
+    private int trafficProfile = EdgeProfiles.FREE_FLOW;
+
+    // Owning graph and position in Graph.getAllEdges(); unset for standalone edges
+    private Graph owner;
+    private int id = -1;
 
     public Edge(String startNodeId, String endNodeId, double baseWeight, String name) {
         this.startNodeId = startNodeId;
         this.endNodeId = endNodeId;
         this.baseWeight = baseWeight;
         this.name = name;
-        this.timeDependentTrafficFactors = new double[24];
-        // Initialize all hours with no traffic (factor 1.0)
-        Arrays.fill(this.timeDependentTrafficFactors, 1.0);
     }
 
     public String getStartNodeId() {
@@ -37,15 +38,33 @@ public class Edge { // Made public
         return name;
     }
 
-   
+    // Position of this edge in its graph's edge list, or -1 if it was created standalone
+    public int getId() {
+        return id;
+    }
+
+    void attach(Graph owner, int id) {
+        this.owner = owner;
+        this.id = id;
+        this.profiles = owner.getEdgeProfiles();
+    }
+
+    // Factors are stored in steps of 0.001 (see TrafficProfiles), so getTrafficFactor returns
+    // the nearest step. Double.POSITIVE_INFINITY closes the road for that hour; finite factors
+    // above 65.534 are stored as 65.534. Negative and NaN factors are rejected.
     public void setTrafficFactor(int hourOfDay, double factor) {
         if (hourOfDay < 0 || hourOfDay > 23) {
             throw new IllegalArgumentException("Hour of day must be between 0 and 23.");
         }
-        if (factor < 0) {
-            throw new IllegalArgumentException("Traffic factor cannot be negative.");
+        TrafficProfiles.checkFactor(factor);
+        double previous = getTrafficFactor(hourOfDay);
+        if (profiles == null) {
+            profiles = new EdgeProfiles();
+        }
+        this.trafficProfile = profiles.set(trafficProfile, hourOfDay, TrafficProfiles.encode(factor));
+        if (owner != null) {
+            owner.onTrafficFactorChanged(this, hourOfDay, previous);
         }
-        this.timeDependentTrafficFactors[hourOfDay] = factor;
     }
 
   
@@ -53,7 +72,12 @@ public class Edge { // Made public
         if (hourOfDay < 0 || hourOfDay > 23) {
             throw new IllegalArgumentException("Hour of day must be between 0 and 23.");
         }
-        return this.timeDependentTrafficFactors[hourOfDay];
+        return profiles == null ? 1.0 : profiles.getFactor(trafficProfile, hourOfDay);
+    }
+
+    // ID of this edge's profile in its graph's EdgeProfiles, for CompactGraph
+    int getTrafficProfile() {
+        return trafficProfile;
     }
 
     
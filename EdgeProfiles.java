@@ -0,0 +1,197 @@
+import java.util.Arrays;
+
+// Interned 24-hour traffic profiles of a Graph's Edges, as the 16-bit codes of
+// TrafficProfiles.encode. Each Edge holds the ID of its profile, so edges with equal factors
+// share one profile and every free-flow edge uses FREE_FLOW. A profile is kept for as long as
+// some edge uses it: setting a factor moves the edge to the profile with the new codes, and a
+// profile left without users is dropped and its ID reused.
+//
+// This is the mutable side's table. CompactGraph interns these profiles into its own
+// TrafficProfiles once per compilation. Not thread-safe, like Graph.
+final class EdgeProfiles {
+    static final int FREE_FLOW = 0;
+    private static final int HOURS = CompactGraph.HOURS_PER_DAY;
+
+    // Profile p's codes are codes[p * HOURS .. (p + 1) * HOURS)
+    private char[] codes;
+    // Content hash of each profile, the sum of hash(code, hour) over its hours, so that a
+    // changed hour updates it without reading the other 23
+    private long[] hashes;
+    // Edges using each profile (FREE_FLOW's count is not kept)
+    private int[] users;
+    private int count;
+    // Dropped IDs, reused before the table grows
+    private int[] freeIds;
+    private int freeCount;
+
+    // Open addressing table of profile IDs + 1 (0 marks a free slot), keyed by content
+    private int[] slots;
+    private final char[] scratch = new char[HOURS];
+
+    EdgeProfiles() {
+        this.codes = new char[16 * HOURS];
+        this.hashes = new long[16];
+        this.users = new int[16];
+        this.freeIds = new int[16];
+        this.slots = new int[32];
+        char free = TrafficProfiles.encode(1.0);
+        Arrays.fill(scratch, free);
+        long hash = 0;
+        for (int hour = 0; hour < HOURS; hour++) {
+            hash += hash(free, hour);
+        }
+        intern(scratch, hash);
+    }
+
+    // Factor of one hour of a profile
+    double getFactor(int profile, int hourOfDay) {
+        return TrafficProfiles.decode(codes[profile * HOURS + hourOfDay]);
+    }
+
+    // The codes of all profiles; profile p's start at p * HOURS_PER_DAY. Must not be modified.
+    char[] getCodes() {
+        return codes;
+    }
+
+    // Number of IDs handed out so far, dropped ones included
+    int capacity() {
+        return count;
+    }
+
+    // Moves one edge, which uses the given profile, to the profile with the given code for one
+    // hour, and returns that profile's ID
+    int set(int profile, int hourOfDay, char code) {
+        int offset = profile * HOURS;
+        char previous = codes[offset + hourOfDay];
+        if (previous == code) {
+            return profile;
+        }
+        long hash = hashes[profile] - hash(previous, hourOfDay) + hash(code, hourOfDay);
+        System.arraycopy(codes, offset, scratch, 0, HOURS);
+        scratch[hourOfDay] = code;
+        if (profile != FREE_FLOW && users[profile] == 1) {
+            // Its only user leaves: change it in place unless the new codes are interned already
+            removeSlot(profile);
+            int existing = find(scratch, hash);
+            if (existing < 0) {
+                codes[offset + hourOfDay] = code;
+                insert(profile, hash);
+                return profile;
+            }
+            users[profile] = 0;
+            release(profile);
+            users[existing]++;
+            return existing;
+        }
+        int next = intern(scratch, hash);
+        users[next]++;
+        removeUser(profile);
+        return next;
+    }
+
+    void removeUser(int profile) {
+        if (profile != FREE_FLOW && --users[profile] == 0) {
+            removeSlot(profile);
+            release(profile);
+        }
+    }
+
+    // ID of the profile with the given codes and hash, added without users if new
+    private int intern(char[] profile, long hash) {
+        int existing = find(profile, hash);
+        if (existing >= 0) {
+            return existing;
+        }
+        int id = allocate();
+        System.arraycopy(profile, 0, codes, id * HOURS, HOURS);
+        insert(id, hash);
+        return id;
+    }
+
+    private int find(char[] profile, long hash) {
+        int mask = slots.length - 1;
+        for (int slot = home(hash, mask); slots[slot] != 0; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (hashes[id] == hash && Arrays.equals(codes, id * HOURS, (id + 1) * HOURS, profile, 0, HOURS)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    private int allocate() {
+        if (freeCount > 0) {
+            return freeIds[--freeCount];
+        }
+        if (count == users.length) {
+            hashes = Arrays.copyOf(hashes, count * 2);
+            users = Arrays.copyOf(users, count * 2);
+            codes = Arrays.copyOf(codes, count * 2 * HOURS);
+        }
+        return count++;
+    }
+
+    private void release(int id) {
+        if (freeCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+        }
+        freeIds[freeCount++] = id;
+    }
+
+    private void insert(int id, long hash) {
+        hashes[id] = hash;
+        int mask = slots.length - 1;
+        int slot = home(hash, mask);
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = id + 1;
+        if ((count - freeCount) * 2 > slots.length) {
+            rehash();
+        }
+    }
+
+    // Takes a profile out of the table, moving later entries of its probe run back so that
+    // each stays reachable from its home slot
+    private void removeSlot(int id) {
+        int mask = slots.length - 1;
+        int slot = home(hashes[id], mask);
+        while (slots[slot] != id + 1) {
+            slot = (slot + 1) & mask;
+        }
+        for (int next = (slot + 1) & mask; slots[next] != 0; next = (next + 1) & mask) {
+            // An entry may fill the gap unless its home slot lies after the gap
+            if (((next - home(hashes[slots[next] - 1], mask)) & mask) >= ((next - slot) & mask)) {
+                slots[slot] = slots[next];
+                slot = next;
+            }
+        }
+        slots[slot] = 0;
+    }
+
+    private void rehash() {
+        int[] old = slots;
+        slots = new int[old.length * 2];
+        int mask = slots.length - 1;
+        for (int entry : old) {
+            if (entry != 0) {
+                int slot = home(hashes[entry - 1], mask);
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = entry;
+            }
+        }
+    }
+
+    private static int home(long hash, int mask) {
+        return (int) (hash >>> 32) & mask;
+    }
+
+    // A profile's hash is the sum of these over its hours
+    private static long hash(char code, int hourOfDay) {
+        long hash = (code + ((long) hourOfDay << 16)) * 0x9E3779B97F4A7C15L;
+        hash = (hash ^ (hash >>> 32)) * 0xFF51AFD7ED558CCDL;
+        return hash ^ (hash >>> 29);
+    }
+}
@@ -1,4 +1,5 @@
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 // Graph class to manage nodes and directed edges using an adjacency list
 public class Graph { // Made public
@@ -7,11 +8,30 @@ public class Graph { // Made public
     // Adjacency list: Map<nodeId, List<Map.Entry<Node, Edge>>>
     // Each entry in the list contains the neighbor Node and the Edge connecting them
     private Map<String, List<Map.Entry<Node, Edge>>> adj;
+    // Reverse adjacency list: for each node, the nodes with an edge into it and that edge
+    private Map<String, List<Map.Entry<Node, Edge>>> reverseAdj;
+    // Nodes in insertion order; a node's position is its index in the compiled graph
+    private List<Node> nodeList;
+    private Map<String, Integer> nodeIndex;
+    // First edge added for each (start, end) node-index pair, keyed by edgeKey
+    private Map<Long, Edge> edgeIndex;
+    // Cached CSR form, discarded whenever nodes or edges are added
+    private CompactGraph compiled;
+    // Notified of traffic factor changes once the graph has been compiled
+    private List<TrafficListener> trafficListeners;
+    // Traffic profiles of the edges, each referenced by ID from its Edge
+    private EdgeProfiles edgeProfiles;
 
     public Graph() {
         this.nodes = new HashMap<>();
         this.edges = new ArrayList<>();
         this.adj = new HashMap<>();
+        this.reverseAdj = new HashMap<>();
+        this.nodeList = new ArrayList<>();
+        this.nodeIndex = new HashMap<>();
+        this.edgeIndex = new HashMap<>();
+        this.trafficListeners = new CopyOnWriteArrayList<>();
+        this.edgeProfiles = new EdgeProfiles();
     }
 
     // Add a node to the graph
@@ -19,6 +39,10 @@ public class Graph { // Made public
         if (!nodes.containsKey(node.getId())) {
             nodes.put(node.getId(), node);
             adj.put(node.getId(), new ArrayList<>()); // Initialize adjacency list for the new node
+            reverseAdj.put(node.getId(), new ArrayList<>());
+            nodeIndex.put(node.getId(), nodeList.size());
+            nodeList.add(node);
+            compiled = null;
         }
     }
 
@@ -30,10 +54,15 @@ public class Graph { // Made public
         }
 
         Edge edge = new Edge(startNodeId, endNodeId, baseWeight, name);
+        edge.attach(this, edges.size());
         edges.add(edge); // Add to the list of all edges
+        edgeIndex.putIfAbsent(edgeKey(nodeIndex.get(startNodeId), nodeIndex.get(endNodeId)), edge);
+        compiled = null;
 
         // Add to adjacency list for the start node only (directed graph)
         adj.get(startNodeId).add(new AbstractMap.SimpleEntry<>(nodes.get(endNodeId), edge));
+        // And to the reverse adjacency list of the end node, for searches that run backwards
+        reverseAdj.get(endNodeId).add(new AbstractMap.SimpleEntry<>(nodes.get(startNodeId), edge));
     }
 
     // Get neighbors of a given node ID
@@ -41,6 +70,11 @@ public class Graph { // Made public
         return adj.getOrDefault(nodeId, Collections.emptyList());
     }
 
+    // Get the nodes with an edge into the given node ID, with that edge
+    public List<Map.Entry<Node, Edge>> getIncomingNeighbors(String nodeId) {
+        return reverseAdj.getOrDefault(nodeId, Collections.emptyList());
+    }
+
     // Get a node by its ID
     public Node getNode(String nodeId) {
         return nodes.get(nodeId);
@@ -51,16 +85,29 @@ public class Graph { // Made public
         return nodes.keySet();
     }
 
+    // Returns the edge from startNodeId to endNodeId in O(1), or null if there is none.
+    // With parallel edges this is the first one added; see getDirectedEdges for all of them.
     public Edge getDirectedEdge(String startNodeId, String endNodeId) {
-        for (Edge edge : edges) {
-            if (edge.getStartNodeId().equals(startNodeId) && edge.getEndNodeId().equals(endNodeId)) {
-                return edge;
+        Integer start = nodeIndex.get(startNodeId);
+        Integer end = nodeIndex.get(endNodeId);
+        if (start == null || end == null) {
+            return null;
+        }
+        return edgeIndex.get(edgeKey(start, end));
+    }
+
+    // Returns every edge from startNodeId to endNodeId, in the order they were added
+    public List<Edge> getDirectedEdges(String startNodeId, String endNodeId) {
+        if (getDirectedEdge(startNodeId, endNodeId) == null) {
+            return Collections.emptyList();
+        }
+        List<Edge> result = new ArrayList<>();
+        for (Map.Entry<Node, Edge> entry : getNeighbors(startNodeId)) {
+            if (entry.getKey().getId().equals(endNodeId)) {
+                result.add(entry.getValue());
             }
         }
-        return null;
-        // For very large graphs, iterating through all edges might be slow.
-        // A more optimized approach for getting a specific edge would be to
-        // store edges in a Map<String, Map<String, Edge>> where keys are startNodeId and endNodeId.
+        return result;
     }
 
     public List<Edge> getAllEdges() {
@@ -71,4 +118,58 @@ public class Graph { // Made public
     public Map<String, Node> getNodes() {
         return nodes;
     }
+
+    // Nodes in insertion order (index i is the node with getNodeIndex == i)
+    public List<Node> getNodeList() {
+        return nodeList;
+    }
+
+    // Returns the dense index of a node, or -1 if it does not exist
+    public int getNodeIndex(String nodeId) {
+        Integer index = nodeIndex.get(nodeId);
+        return index == null ? -1 : index;
+    }
+
+    // Compiles the graph into its CSR form. The result is cached until the topology
+    // changes; traffic factor updates are written through to the cached copy.
+    public CompactGraph compile() {
+        if (compiled == null) {
+            compiled = new CompactGraph(this);
+        }
+        return compiled;
+    }
+
+    EdgeProfiles getEdgeProfiles() {
+        return edgeProfiles;
+    }
+
+    // Packs a pair of node indices into one primitive key. Multiplying by an odd constant keeps
+    // keys distinct and spreads them: Long.hashCode alone folds the pair to start ^ end, which
+    // puts most edges of a large road network into a few overfull buckets.
+    private static long edgeKey(int startIndex, int endIndex) {
+        return (((long) startIndex << 32) | (endIndex & 0xFFFFFFFFL)) * 0x9E3779B97F4A7C15L;
+    }
+
+    // Registers a listener for Edge.setTrafficFactor changes to the compiled graph. Changes
+    // made before the graph is (re)compiled are not reported: the new CompactGraph has them.
+    public void addTrafficListener(TrafficListener listener) {
+        trafficListeners.add(listener);
+    }
+
+    public void removeTrafficListener(TrafficListener listener) {
+        trafficListeners.remove(listener);
+    }
+
+    // Called by Edge.setTrafficFactor for edges owned by this graph
+    void onTrafficFactorChanged(Edge edge, int hourOfDay, double previousFactor) {
+        if (compiled != null) {
+            compiled.updateTrafficFactor(edge.getId(), hourOfDay, edge.getTrafficFactor(hourOfDay));
+            if (!trafficListeners.isEmpty()) {
+                TrafficUpdate previous = new TrafficUpdate(1).set(edge.getId(), hourOfDay, previousFactor);
+                for (TrafficListener listener : trafficListeners) {
+                    listener.trafficChanged(compiled, previous);
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,138 @@
+import java.util.Arrays;
+
+// Indexed 4-ary min-heap over int node IDs with double keys and decrease-key.
+// Each node is stored at most once, and the arrays are reused between searches,
+// so a steady-state search does not allocate.
+public class IndexedMinHeap {
+    private static final int ARITY = 4;
+
+    private int[] nodes = new int[0];      // Heap slots -> node ID
+    private double[] keys = new double[0]; // Heap slots -> key (kept next to the slot for locality)
+    private int[] positions = new int[0];  // Node ID -> heap slot, or -1 when not in the heap
+    private int size;
+    // Operations since the last clear(), reported by QueryMetrics
+    private long insertions;
+    private long decreases;
+    private long polls;
+
+    // Makes room for node IDs in [0, nodeCount)
+    public void ensureCapacity(int nodeCount) {
+        if (positions.length < nodeCount) {
+            int oldLength = positions.length;
+            positions = Arrays.copyOf(positions, nodeCount);
+            Arrays.fill(positions, oldLength, nodeCount, -1);
+            nodes = Arrays.copyOf(nodes, nodeCount);
+            keys = Arrays.copyOf(keys, nodeCount);
+        }
+    }
+
+    // Empties the heap in O(size) rather than O(capacity)
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[nodes[i]] = -1;
+        }
+        size = 0;
+        insertions = 0;
+        decreases = 0;
+        polls = 0;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int node) {
+        return positions[node] >= 0;
+    }
+
+    public int peekNode() {
+        return nodes[0];
+    }
+
+    public double peekKey() {
+        return keys[0];
+    }
+
+    public long getInsertions() {
+        return insertions;
+    }
+
+    // Keys actually lowered by insertOrDecrease
+    public long getDecreases() {
+        return decreases;
+    }
+
+    public long getPolls() {
+        return polls;
+    }
+
+    // Inserts the node, or lowers its key if it is already queued with a larger one
+    public void insertOrDecrease(int node, double key) {
+        int slot = positions[node];
+        if (slot < 0) {
+            slot = size++;
+            insertions++;
+        } else if (key >= keys[slot]) {
+            return;
+        } else {
+            decreases++;
+        }
+        siftUp(slot, node, key);
+    }
+
+    // Removes and returns the node with the smallest key
+    public int poll() {
+        int min = nodes[0];
+        positions[min] = -1;
+        size--;
+        polls++;
+        if (size > 0) {
+            siftDown(0, nodes[size], keys[size]);
+        }
+        return min;
+    }
+
+    private void siftUp(int slot, int node, double key) {
+        while (slot > 0) {
+            int parent = (slot - 1) / ARITY;
+            if (keys[parent] <= key) {
+                break;
+            }
+            place(slot, nodes[parent], keys[parent]);
+            slot = parent;
+        }
+        place(slot, node, key);
+    }
+
+    private void siftDown(int slot, int node, double key) {
+        while (true) {
+            int firstChild = slot * ARITY + 1;
+            if (firstChild >= size) {
+                break;
+            }
+            int best = firstChild;
+            int lastChild = Math.min(firstChild + ARITY, size);
+            for (int child = firstChild + 1; child < lastChild; child++) {
+                if (keys[child] < keys[best]) {
+                    best = child;
+                }
+            }
+            if (keys[best] >= key) {
+                break;
+            }
+            place(slot, nodes[best], keys[best]);
+            slot = best;
+        }
+        place(slot, node, key);
+    }
+
+    private void place(int slot, int node, double key) {
+        nodes[slot] = node;
+        keys[slot] = key;
+        positions[node] = slot;
+    }
+}
@@ -0,0 +1,162 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+// Everything reachable from an origin within a travel-time budget at a given hour: one
+// Dijkstra search without a target that never queues a node beyond the budget, so it ends
+// as soon as the budget is used up. Reached nodes come out in order of travel time
+// as parallel primitive arrays (node indices and minutes). Batches of origins run in
+// parallel on the common fork-join pool, each worker reusing its own search state.
+public class Isochrone {
+    private static final ThreadLocal<SearchState> SEARCH_STATE = ThreadLocal.withInitial(SearchState::new);
+    // Settled nodes and their times, per worker, before they are copied out at their final size
+    private static final ThreadLocal<Buffer> BUFFER = ThreadLocal.withInitial(Buffer::new);
+
+    private final int origin;
+    private final double maxMinutes;
+    private final int hourOfDay;
+    private final int[] nodes;
+    private final double[] minutes;
+
+    private static final class Buffer {
+        int[] nodes = new int[1024];
+        double[] minutes = new double[1024];
+    }
+
+    private Isochrone(int origin, double maxMinutes, int hourOfDay, int[] nodes, double[] minutes) {
+        this.origin = origin;
+        this.maxMinutes = maxMinutes;
+        this.hourOfDay = hourOfDay;
+        this.nodes = nodes;
+        this.minutes = minutes;
+    }
+
+    // Nodes reachable from originId within maxMinutes at the given hour
+    public static Isochrone compute(Graph graph, String originId, double maxMinutes, int hourOfDay) {
+        int origin = graph.getNodeIndex(originId);
+        if (origin < 0) {
+            throw new IllegalArgumentException("Node " + originId + " does not exist in the graph.");
+        }
+        return compute(graph.compile(), origin, maxMinutes, hourOfDay);
+    }
+
+    // Same as compute(Graph, String, double, int) with the origin given by its dense index
+    public static Isochrone compute(CompactGraph graph, int origin, double maxMinutes, int hourOfDay) {
+        checkArguments(maxMinutes, hourOfDay);
+        checkNode(origin, graph.getNodeCount());
+        return search(graph, origin, maxMinutes, hourOfDay);
+    }
+
+    // One isochrone per origin, in the order given, computed in parallel
+    public static Isochrone[] computeAll(Graph graph, List<String> originIds, double maxMinutes, int hourOfDay) {
+        int[] origins = new int[originIds.size()];
+        for (int i = 0; i < origins.length; i++) {
+            origins[i] = graph.getNodeIndex(originIds.get(i));
+            if (origins[i] < 0) {
+                throw new IllegalArgumentException("Node " + originIds.get(i) + " does not exist in the graph.");
+            }
+        }
+        return computeAll(graph.compile(), origins, maxMinutes, hourOfDay);
+    }
+
+    public static Isochrone[] computeAll(CompactGraph graph, int[] origins, double maxMinutes, int hourOfDay) {
+        checkArguments(maxMinutes, hourOfDay);
+        for (int origin : origins) {
+            checkNode(origin, graph.getNodeCount());
+        }
+        Isochrone[] isochrones = new Isochrone[origins.length];
+        IntStream.range(0, origins.length).parallel().forEach(i ->
+                isochrones[i] = search(graph, origins[i], maxMinutes, hourOfDay));
+        return isochrones;
+    }
+
+    private static Isochrone search(CompactGraph graph, int origin, double maxMinutes, int hourOfDay) {
+        SearchState state = SEARCH_STATE.get();
+        state.reset(graph.getNodeCount());
+        IndexedMinHeap heap = state.getHeap();
+        state.update(origin, 0.0, -1);
+        heap.insertOrDecrease(origin, 0.0);
+        Buffer buffer = BUFFER.get();
+        int count = 0;
+
+        // Every queued node is within the budget, so every settled one is reached
+        while (!heap.isEmpty()) {
+            int u = heap.poll();
+            double distance = state.getDistance(u);
+            if (count == buffer.nodes.length) {
+                buffer.nodes = Arrays.copyOf(buffer.nodes, count * 2);
+                buffer.minutes = Arrays.copyOf(buffer.minutes, count * 2);
+            }
+            buffer.nodes[count] = u;
+            buffer.minutes[count++] = distance;
+            for (int e = graph.firstEdge(u), last = graph.endEdge(u); e < last; e++) {
+                int v = graph.getTarget(e);
+                double newDistance = distance + graph.getTravelTime(e, hourOfDay);
+                if (newDistance <= maxMinutes && newDistance < state.getDistance(v)) {
+                    state.update(v, newDistance, -1); // No predecessors: paths are never built
+                    heap.insertOrDecrease(v, newDistance);
+                }
+            }
+        }
+        return new Isochrone(origin, maxMinutes, hourOfDay, Arrays.copyOf(buffer.nodes, count),
+                Arrays.copyOf(buffer.minutes, count));
+    }
+
+    public int getOrigin() {
+        return origin;
+    }
+
+    public double getMaxMinutes() {
+        return maxMinutes;
+    }
+
+    public int getHourOfDay() {
+        return hourOfDay;
+    }
+
+    // Number of reached nodes, the origin included
+    public int size() {
+        return nodes.length;
+    }
+
+    // The i-th nearest reached node and its travel time from the origin, for reading the
+    // isochrone without copying it
+    public int getNode(int i) {
+        return nodes[i];
+    }
+
+    public double getMinutes(int i) {
+        return minutes[i];
+    }
+
+    // Reached node indices in order of travel time
+    public int[] getNodes() {
+        return nodes.clone();
+    }
+
+    // Travel times in minutes, parallel to getNodes()
+    public double[] getMinutes() {
+        return minutes.clone();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Isochrone{origin=%d, %.1f minutes at hour %d, %d nodes}", origin, maxMinutes, hourOfDay,
+                nodes.length);
+    }
+
+    private static void checkArguments(double maxMinutes, int hourOfDay) {
+        if (hourOfDay < 0 || hourOfDay >= CompactGraph.HOURS_PER_DAY) {
+            throw new IllegalArgumentException("Hour of day must be between 0 and 23.");
+        }
+        if (!(maxMinutes >= 0)) {
+            throw new IllegalArgumentException("Travel-time budget must not be negative.");
+        }
+    }
+
+    private static void checkNode(int node, int nodeCount) {
+        if (node < 0 || node >= nodeCount) {
+            throw new IllegalArgumentException("Node index " + node + " is out of range.");
+        }
+    }
+}
@@ -0,0 +1,323 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+// ALT preprocessing (A*, Landmarks, Triangle inequality) over a CompactGraph.
+// Distances to and from a few landmark nodes give, via the triangle inequality, a lower
+// bound on the remaining travel time that works even where coordinates are misleading.
+// Distances use lower-bound edge weights (baseWeight * smallest hourly factor), so one
+// table is admissible for every hour of the day.
+public class LandmarkIndex {
+    private static final int FILE_MAGIC = 0x414C5431; // "ALT1"
+
+    private final CompactGraph graph;
+    private final int[] landmarks;
+    private final int landmarkCount;
+
+    // Node-major tables: fromLandmark[v * landmarkCount + l] = d(landmark l, v) and
+    // toLandmark[v * landmarkCount + l] = d(v, landmark l), so one node's bounds share a cache line
+    private final double[] fromLandmark;
+    private final double[] toLandmark;
+
+    // Edge weights the tables were computed with
+    private double[] lowerBoundWeights;
+    private long trafficVersion;
+    private long preprocessingMillis;
+
+    // Latest known range of graph versions the tables are valid for (see isValidFor)
+    private volatile Validity validity;
+
+    // Versions of one lower-bound epoch (CompactGraph.getLowerBoundEpoch) from fromVersion on
+    private static final class Validity {
+        final Object epoch;
+        final long fromVersion;
+
+        Validity(CompactGraph graph) {
+            this.epoch = graph.getLowerBoundEpoch();
+            this.fromVersion = graph.getTrafficVersion();
+        }
+    }
+
+    private LandmarkIndex(CompactGraph graph, int[] landmarks, double[] lowerBoundWeights) {
+        this.graph = graph;
+        this.landmarks = landmarks;
+        this.landmarkCount = landmarks.length;
+        this.fromLandmark = new double[graph.getNodeCount() * landmarkCount];
+        this.toLandmark = new double[graph.getNodeCount() * landmarkCount];
+        this.lowerBoundWeights = lowerBoundWeights;
+    }
+
+    // Selects landmarkCount landmarks by farthest selection and computes their distance tables
+    public static LandmarkIndex build(CompactGraph graph, int landmarkCount) {
+        if (landmarkCount < 1) {
+            throw new IllegalArgumentException("At least one landmark is required.");
+        }
+        long startTime = System.nanoTime();
+        long version = graph.getTrafficVersion();
+        double[] weights = computeLowerBoundWeights(graph);
+        int[] landmarks = selectFarthest(graph, weights, Math.min(landmarkCount, graph.getNodeCount()));
+
+        LandmarkIndex index = new LandmarkIndex(graph, landmarks, weights);
+        index.computeDistances();
+        index.trafficVersion = version;
+        index.validity = new Validity(graph);
+        index.preprocessingMillis = (System.nanoTime() - startTime) / 1_000_000;
+        return index;
+    }
+
+    public CompactGraph getGraph() {
+        return graph;
+    }
+
+    public int[] getLandmarks() {
+        return landmarks.clone();
+    }
+
+    // Wall-clock time of the last build or distance recomputation
+    public long getPreprocessingMillis() {
+        return preprocessingMillis;
+    }
+
+    // Approximate heap footprint of the distance tables and weights in bytes
+    public long getMemoryBytes() {
+        return (long) fromLandmark.length * 8 * 2 + (long) lowerBoundWeights.length * 8 + (long) landmarkCount * 4;
+    }
+
+    // Lower bound on the travel time from node to target at any hour:
+    // max over landmarks L of d(node, L) - d(target, L) and d(L, target) - d(L, node)
+    public double lowerBound(int node, int target) {
+        int nodeBase = node * landmarkCount;
+        int targetBase = target * landmarkCount;
+        double bound = 0.0;
+        for (int l = 0; l < landmarkCount; l++) {
+            // Comparisons are false for NaN (both distances infinite), which skips the landmark
+            double viaTo = toLandmark[nodeBase + l] - toLandmark[targetBase + l];
+            if (viaTo > bound) {
+                bound = viaTo;
+            }
+            double viaFrom = fromLandmark[targetBase + l] - fromLandmark[nodeBase + l];
+            if (viaFrom > bound) {
+                bound = viaFrom;
+            }
+        }
+        return bound;
+    }
+
+    // Brings the tables up to date with traffic factor changes. Factor increases keep every
+    // bound valid, so distances are only recomputed (for the same landmarks) when some edge
+    // became cheaper than the weight it was preprocessed with. Returns true if they were.
+    public boolean refresh() {
+        long version = graph.getTrafficVersion();
+        if (version == trafficVersion) {
+            return false;
+        }
+        double[] weights = computeLowerBoundWeights(graph);
+        trafficVersion = version;
+        if (!anyBelow(weights)) {
+            validity = new Validity(graph);
+            return false;
+        }
+        long startTime = System.nanoTime();
+        lowerBoundWeights = weights;
+        computeDistances();
+        validity = new Validity(graph);
+        preprocessingMillis = (System.nanoTime() - startTime) / 1_000_000;
+        return true;
+    }
+
+    // True if every bound holds on the given version of the same network, i.e. no edge is
+    // cheaper there than the weight it was preprocessed with. Later versions of a known
+    // valid one are accepted without a check unless some lower bound dropped in between.
+    public boolean isValidFor(CompactGraph version) {
+        if (!graph.hasSameNetwork(version)) {
+            return false;
+        }
+        Validity known = validity;
+        if (known != null && known.epoch == version.getLowerBoundEpoch()
+                && version.getTrafficVersion() >= known.fromVersion) {
+            return true;
+        }
+        if (anyBelow(computeLowerBoundWeights(version))) {
+            return false;
+        }
+        validity = new Validity(version);
+        return true;
+    }
+
+    // Landmarks valid for another traffic version of the same network (see
+    // CompactGraph.hasSameNetwork): this index if isValidFor(version), else a new index with
+    // the same landmarks and recomputed distances. Unlike refresh() the tables are never
+    // modified, so concurrent queries on different snapshots can share them.
+    public LandmarkIndex forGraph(CompactGraph version) {
+        if (!graph.hasSameNetwork(version)) {
+            throw new IllegalArgumentException("Landmark index was built for a different graph.");
+        }
+        if (isValidFor(version)) {
+            return this;
+        }
+        long startTime = System.nanoTime();
+        LandmarkIndex index = new LandmarkIndex(version, landmarks, computeLowerBoundWeights(version));
+        index.computeDistances();
+        index.trafficVersion = version.getTrafficVersion();
+        index.validity = new Validity(version);
+        index.preprocessingMillis = (System.nanoTime() - startTime) / 1_000_000;
+        return index;
+    }
+
+    private boolean anyBelow(double[] weights) {
+        for (int e = 0; e < weights.length; e++) {
+            if (weights[e] < lowerBoundWeights[e]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void save(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(graph.getNodeCount());
+            out.writeInt(graph.getEdgeCount());
+            out.writeInt(landmarkCount);
+            for (int landmark : landmarks) {
+                out.writeInt(landmark);
+            }
+            for (double weight : lowerBoundWeights) {
+                out.writeDouble(weight);
+            }
+            for (int i = 0; i < fromLandmark.length; i++) {
+                out.writeDouble(fromLandmark[i]);
+                out.writeDouble(toLandmark[i]);
+            }
+        }
+    }
+
+    // Loads tables written by save() for the same graph. The next refresh() re-checks every
+    // edge against the stored weights, since factors may have changed since saving.
+    public static LandmarkIndex load(Path file, CompactGraph graph) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC) {
+                throw new IOException("Not a landmark index file: " + file);
+            }
+            if (in.readInt() != graph.getNodeCount() || in.readInt() != graph.getEdgeCount()) {
+                throw new IOException("Landmark index " + file + " was built for a different graph.");
+            }
+            int[] landmarks = new int[in.readInt()];
+            for (int l = 0; l < landmarks.length; l++) {
+                landmarks[l] = in.readInt();
+            }
+            double[] weights = new double[graph.getEdgeCount()];
+            for (int e = 0; e < weights.length; e++) {
+                weights[e] = in.readDouble();
+            }
+            LandmarkIndex index = new LandmarkIndex(graph, landmarks, weights);
+            for (int i = 0; i < index.fromLandmark.length; i++) {
+                index.fromLandmark[i] = in.readDouble();
+                index.toLandmark[i] = in.readDouble();
+            }
+            index.trafficVersion = -1;
+            return index;
+        }
+    }
+
+    private void computeDistances() {
+        int nodeCount = graph.getNodeCount();
+        // One forward and one backward search per landmark, spread across cores
+        IntStream.range(0, landmarkCount * 2).parallel().forEach(task -> {
+            int l = task >> 1;
+            boolean reverse = (task & 1) == 1;
+            double[] distances = new double[nodeCount];
+            shortestDistances(graph, lowerBoundWeights, landmarks[l], reverse, distances);
+            double[] table = reverse ? toLandmark : fromLandmark;
+            for (int v = 0; v < nodeCount; v++) {
+                table[v * landmarkCount + l] = distances[v];
+            }
+        });
+    }
+
+    private static double[] computeLowerBoundWeights(CompactGraph graph) {
+        double[] weights = new double[graph.getEdgeCount()];
+        for (int e = 0; e < weights.length; e++) {
+            weights[e] = graph.getBaseWeight(e) * graph.getMinTrafficFactor(e);
+        }
+        return weights;
+    }
+
+    // Farthest selection: start from the node farthest from node 0, then repeatedly add the
+    // node whose distance to the nearest chosen landmark is largest (unreachable nodes first)
+    private static int[] selectFarthest(CompactGraph graph, double[] weights, int count) {
+        int nodeCount = graph.getNodeCount();
+        int[] landmarks = new int[count];
+        if (count == 0) {
+            return landmarks;
+        }
+        boolean[] chosen = new boolean[nodeCount];
+        double[] distances = new double[nodeCount];
+        double[] nearest = new double[nodeCount];
+        Arrays.fill(nearest, Double.POSITIVE_INFINITY);
+
+        shortestDistances(graph, weights, 0, false, distances);
+        int next = farthest(distances, chosen);
+        for (int i = 0; i < count; i++) {
+            landmarks[i] = next;
+            chosen[next] = true;
+            if (i + 1 < count) {
+                shortestDistances(graph, weights, next, false, distances);
+                for (int v = 0; v < nodeCount; v++) {
+                    nearest[v] = Math.min(nearest[v], distances[v]);
+                }
+                next = farthest(nearest, chosen);
+            }
+        }
+        return landmarks;
+    }
+
+    private static int farthest(double[] distances, boolean[] chosen) {
+        int best = -1;
+        for (int v = 0; v < distances.length; v++) {
+            if (!chosen[v] && (best < 0 || distances[v] > distances[best])) {
+                best = v;
+            }
+        }
+        return best;
+    }
+
+    // One-to-all Dijkstra on the given edge weights, over incoming edges when reverse is set
+    private static void shortestDistances(CompactGraph graph, double[] weights, int source, boolean reverse,
+                                          double[] distances) {
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+        IndexedMinHeap heap = new IndexedMinHeap();
+        heap.ensureCapacity(graph.getNodeCount());
+        distances[source] = 0.0;
+        heap.insertOrDecrease(source, 0.0);
+        while (!heap.isEmpty()) {
+            int u = heap.poll();
+            double du = distances[u];
+            if (reverse) {
+                for (int slot = graph.firstInEdge(u), last = graph.endInEdge(u); slot < last; slot++) {
+                    int v = graph.getSource(slot);
+                    double dv = du + weights[graph.getInEdge(slot)];
+                    if (dv < distances[v]) {
+                        distances[v] = dv;
+                        heap.insertOrDecrease(v, dv);
+                    }
+                }
+            } else {
+                for (int e = graph.firstEdge(u), last = graph.endEdge(u); e < last; e++) {
+                    int v = graph.getTarget(e);
+                    double dv = du + weights[e];
+                    if (dv < distances[v]) {
+                        distances[v] = dv;
+                        heap.insertOrDecrease(v, dv);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Concurrent histogram of durations in nanoseconds with log-linear buckets, as in
+// HdrHistogram: every power-of-two range is split into 128 equal buckets, so a recorded value
+// is known to within 1% at any magnitude (values below 256 exactly) in a fixed 58 KB of
+// counters. Recording is one atomic increment; percentiles are read by scanning the buckets.
+final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 8;
+    private static final int HALF_SUB_BUCKETS = 1 << (SUB_BUCKET_BITS - 1);
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS + 1) * HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.getAndIncrement(indexOf(value));
+        totalCount.increment();
+        max.accumulate(value);
+    }
+
+    long getCount() {
+        return totalCount.sum();
+    }
+
+    long getMax() {
+        return max.get();
+    }
+
+    // Smallest recorded value that the given percentage (0-100) of recordings do not exceed,
+    // rounded up to the end of its bucket; 0 if nothing was recorded
+    long getValueAtPercentile(double percentile) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestValueIn(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    // Not atomic: recordings made meanwhile may be partly kept
+    void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.reset();
+        max.reset();
+    }
+
+    // Bucket of a value: its top SUB_BUCKET_BITS bits and how far they are shifted
+    private static int indexOf(long value) {
+        int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+        return (shift << (SUB_BUCKET_BITS - 1)) + (int) (value >>> shift);
+    }
+
+    private static long highestValueIn(int index) {
+        if (index < 2 * HALF_SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index >> (SUB_BUCKET_BITS - 1)) - 1;
+        long mantissa = index - ((long) shift << (SUB_BUCKET_BITS - 1));
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,456 @@
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+// Builds a Graph from an OpenStreetMap extract: .osm.pbf, or .osm XML (optionally .gz).
+// Two streaming passes keep memory bounded by the road network rather than the whole map:
+// the first reads only ways and keeps the routable ones (highway=* roads open to cars) with
+// their node references, the second reads only nodes and keeps the coordinates of nodes
+// those ways use. Ways are then split into edges at junctions (nodes used more than once by
+// routable ways) and at their ends, so graph nodes are junctions and dead ends, named by
+// their OSM node ID. PBF blocks are decoded in parallel on all cores.
+//
+// Edge weights are minutes at the way's maxspeed, or at a default speed for its highway
+// class, over the great-circle length of its segments. One-way roads (oneway=yes/-1, and
+// implicitly motorways and roundabouts) get one edge, others one per direction. Node x/y
+// are meters east and south of the extract's north-west corner (equirectangular).
+public class OsmImporter {
+    private static final double EARTH_RADIUS_METERS = 6_371_000.0;
+    private static final String UNNAMED_ROAD = "Unnamed road";
+
+    // Travel directions of a routable way relative to its node order
+    private static final byte BOTH_WAYS = 0;
+    private static final byte FORWARD_ONLY = 1;
+    private static final byte BACKWARD_ONLY = 2;
+
+    // Highway classes open to cars, with default speeds in km/h where maxspeed is missing
+    private static final Map<String, Double> DEFAULT_SPEEDS = new HashMap<>();
+
+    static {
+        DEFAULT_SPEEDS.put("motorway", 110.0);
+        DEFAULT_SPEEDS.put("motorway_link", 60.0);
+        DEFAULT_SPEEDS.put("trunk", 90.0);
+        DEFAULT_SPEEDS.put("trunk_link", 50.0);
+        DEFAULT_SPEEDS.put("primary", 70.0);
+        DEFAULT_SPEEDS.put("primary_link", 50.0);
+        DEFAULT_SPEEDS.put("secondary", 60.0);
+        DEFAULT_SPEEDS.put("secondary_link", 40.0);
+        DEFAULT_SPEEDS.put("tertiary", 50.0);
+        DEFAULT_SPEEDS.put("tertiary_link", 40.0);
+        DEFAULT_SPEEDS.put("unclassified", 40.0);
+        DEFAULT_SPEEDS.put("road", 40.0);
+        DEFAULT_SPEEDS.put("residential", 30.0);
+        DEFAULT_SPEEDS.put("service", 20.0);
+        DEFAULT_SPEEDS.put("living_street", 10.0);
+    }
+
+    private OsmImporter() {
+    }
+
+    public static Graph load(Path file) throws IOException {
+        return load(file, Runtime.getRuntime().availableProcessors());
+    }
+
+    // Imports the extract, decoding PBF blocks on the given number of threads
+    public static Graph load(Path file, int threads) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is required.");
+        }
+        boolean pbf = file.getFileName().toString().endsWith(".pbf");
+
+        // Pass 1: routable ways
+        RoutableWays ways = new RoutableWays();
+        if (pbf) {
+            OsmPbfReader.read(file, threads, block -> {
+                RoutableWays blockWays = new RoutableWays();
+                block.forEachWay(blockWays::add);
+                return blockWays;
+            }, ways::addAll);
+        } else {
+            readXml(file, ways, null);
+        }
+
+        // Pass 2: coordinates of the nodes they use
+        WayNodes nodes = new WayNodes(ways);
+        if (pbf) {
+            OsmPbfReader.read(file, threads, block -> {
+                block.forEachNode(nodes::setCoordinates);
+                return null;
+            }, ignored -> { });
+        } else {
+            readXml(file, null, nodes);
+        }
+        return buildGraph(ways, nodes);
+    }
+
+    // One way as read from the file; readers reuse the same object for every way
+    static final class Way {
+        long id;
+        private long[] refs = new long[64];
+        private int refCount;
+        private String[] keys = new String[16];
+        private String[] values = new String[16];
+        private int tagCount;
+
+        void clear() {
+            refCount = 0;
+            tagCount = 0;
+        }
+
+        void addRef(long ref) {
+            if (refCount == refs.length) {
+                refs = Arrays.copyOf(refs, refCount * 2);
+            }
+            refs[refCount++] = ref;
+        }
+
+        void addTag(String key, String value) {
+            if (tagCount == keys.length) {
+                keys = Arrays.copyOf(keys, tagCount * 2);
+                values = Arrays.copyOf(values, tagCount * 2);
+            }
+            keys[tagCount] = key;
+            values[tagCount++] = value;
+        }
+
+        // Value of the tag, or null if the way does not have it
+        String tag(String key) {
+            for (int i = 0; i < tagCount; i++) {
+                if (keys[i].equals(key)) {
+                    return values[i];
+                }
+            }
+            return null;
+        }
+    }
+
+    // Routable ways in file order: way w's node references are refs[firstRef[w] .. firstRef[w + 1])
+    private static final class RoutableWays {
+        private long[] refs = new long[1024];
+        private int refCount;
+        private int[] firstRef = new int[65];
+        private byte[] directions = new byte[64];
+        private float[] speeds = new float[64];
+        private String[] names = new String[64];
+        private int wayCount;
+
+        // Keeps the way if cars may use it
+        void add(Way way) {
+            String highway = way.tag("highway");
+            Double defaultSpeed = highway == null ? null : DEFAULT_SPEEDS.get(highway);
+            if (defaultSpeed == null || way.refCount < 2 || "yes".equals(way.tag("area")) || !carsAllowed(way)) {
+                return;
+            }
+            int direction = direction(way, highway);
+            if (direction < 0) {
+                return;
+            }
+            String name = way.tag("name");
+            if (name == null) {
+                name = way.tag("ref");
+            }
+            append(way.refs, 0, way.refCount, (byte) direction, (float) speed(way.tag("maxspeed"), defaultSpeed),
+                    name == null ? UNNAMED_ROAD : name);
+        }
+
+        void addAll(RoutableWays other) {
+            for (int w = 0; w < other.wayCount; w++) {
+                append(other.refs, other.firstRef[w], other.firstRef[w + 1] - other.firstRef[w],
+                        other.directions[w], other.speeds[w], other.names[w]);
+            }
+        }
+
+        private void append(long[] wayRefs, int from, int count, byte direction, float speed, String name) {
+            if (refCount + count > refs.length) {
+                refs = Arrays.copyOf(refs, Math.max(refs.length * 2, refCount + count));
+            }
+            System.arraycopy(wayRefs, from, refs, refCount, count);
+            refCount += count;
+            if (wayCount + 1 == directions.length) {
+                firstRef = Arrays.copyOf(firstRef, directions.length * 2 + 1);
+                directions = Arrays.copyOf(directions, directions.length * 2);
+                speeds = Arrays.copyOf(speeds, speeds.length * 2);
+                names = Arrays.copyOf(names, names.length * 2);
+            }
+            directions[wayCount] = direction;
+            speeds[wayCount] = speed;
+            names[wayCount] = name;
+            firstRef[++wayCount] = refCount;
+        }
+    }
+
+    // The most specific of motorcar, motor_vehicle, vehicle and access decides
+    private static boolean carsAllowed(Way way) {
+        for (String key : new String[] { "motorcar", "motor_vehicle", "vehicle", "access" }) {
+            String value = way.tag(key);
+            if (value != null) {
+                return !value.equals("no");
+            }
+        }
+        return true;
+    }
+
+    // Travel direction of a way, or -1 if it changes over time (reversible/alternating)
+    private static int direction(Way way, String highway) {
+        String oneway = way.tag("oneway");
+        if (oneway == null) {
+            String junction = way.tag("junction");
+            boolean implied = highway.equals("motorway") || highway.equals("motorway_link")
+                    || "roundabout".equals(junction) || "circular".equals(junction);
+            return implied ? FORWARD_ONLY : BOTH_WAYS;
+        }
+        switch (oneway) {
+            case "yes":
+            case "true":
+            case "1":
+                return FORWARD_ONLY;
+            case "-1":
+            case "reverse":
+                return BACKWARD_ONLY;
+            case "reversible":
+            case "alternating":
+                return -1;
+            default:
+                return BOTH_WAYS;
+        }
+    }
+
+    // Speed in km/h from a maxspeed value ("50", "30 mph", "walk"); the default for anything
+    // else, such as "none" or zone codes like "DE:urban"
+    static double speed(String maxspeed, double defaultSpeed) {
+        if (maxspeed == null) {
+            return defaultSpeed;
+        }
+        String value = maxspeed.trim();
+        if (value.equals("walk")) {
+            return 5.0;
+        }
+        int end = 0;
+        while (end < value.length() && (Character.isDigit(value.charAt(end)) || value.charAt(end) == '.')) {
+            end++;
+        }
+        if (end == 0) {
+            return defaultSpeed;
+        }
+        double speed;
+        try {
+            speed = Double.parseDouble(value.substring(0, end));
+        } catch (NumberFormatException e) {
+            return defaultSpeed;
+        }
+        if (value.substring(end).trim().equals("mph")) {
+            speed *= 1.609344;
+        }
+        return speed > 0 ? speed : defaultSpeed;
+    }
+
+    // Distinct node IDs referenced by routable ways (sorted), how often each is referenced,
+    // and their coordinates once the second pass has found them (NaN until then)
+    private static final class WayNodes {
+        private final long[] ids;
+        private final int[] uses;
+        private final double[] lats;
+        private final double[] lons;
+        // Graph node IDs of the nodes added so far (null for the others)
+        private final String[] graphIds;
+
+        // Projection to meters from the north-west corner (see project)
+        private double minLon;
+        private double maxLat;
+        private double metersPerDegree;
+        private double metersPerDegreeLon;
+
+        WayNodes(RoutableWays ways) {
+            long[] sorted = Arrays.copyOf(ways.refs, ways.refCount);
+            Arrays.parallelSort(sorted);
+            int distinct = 0;
+            int[] counts = new int[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                if (distinct == 0 || sorted[i] != sorted[distinct - 1]) {
+                    sorted[distinct++] = sorted[i];
+                }
+                counts[distinct - 1]++;
+            }
+            this.ids = Arrays.copyOf(sorted, distinct);
+            this.uses = Arrays.copyOf(counts, distinct);
+            this.lats = new double[distinct];
+            this.lons = new double[distinct];
+            Arrays.fill(lats, Double.NaN);
+            Arrays.fill(lons, Double.NaN);
+            this.graphIds = new String[distinct];
+        }
+
+        int indexOf(long id) {
+            return Arrays.binarySearch(ids, id);
+        }
+
+        // Called from decoding threads; each node index is written by one block only
+        void setCoordinates(long id, double lat, double lon) {
+            int index = indexOf(id);
+            if (index >= 0) {
+                lats[index] = lat;
+                lons[index] = lon;
+            }
+        }
+
+        boolean isLocated(int index) {
+            return !Double.isNaN(lats[index]);
+        }
+
+        // Sets up the projection for the bounding box of the located nodes
+        void project() {
+            double minLat = Double.POSITIVE_INFINITY;
+            minLon = Double.POSITIVE_INFINITY;
+            maxLat = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < ids.length; i++) {
+                if (isLocated(i)) {
+                    minLon = Math.min(minLon, lons[i]);
+                    minLat = Math.min(minLat, lats[i]);
+                    maxLat = Math.max(maxLat, lats[i]);
+                }
+            }
+            metersPerDegree = Math.toRadians(EARTH_RADIUS_METERS);
+            metersPerDegreeLon = metersPerDegree * Math.cos(Math.toRadians((minLat + maxLat) / 2));
+        }
+
+        // Adds the node to the graph on first use and returns its ID
+        String addTo(Graph graph, int index) {
+            String id = graphIds[index];
+            if (id == null) {
+                id = Long.toString(ids[index]);
+                graph.addNode(new Node(id, (lons[index] - minLon) * metersPerDegreeLon, (maxLat - lats[index]) * metersPerDegree));
+                graphIds[index] = id;
+            }
+            return id;
+        }
+
+        // Great-circle (haversine) distance between two located nodes
+        double distanceMeters(int a, int b) {
+            double lat1 = Math.toRadians(lats[a]);
+            double lat2 = Math.toRadians(lats[b]);
+            double sinLat = Math.sin((lat2 - lat1) / 2);
+            double sinLon = Math.sin(Math.toRadians(lons[b] - lons[a]) / 2);
+            double h = sinLat * sinLat + Math.cos(lat1) * Math.cos(lat2) * sinLon * sinLon;
+            return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1.0, Math.sqrt(h)));
+        }
+    }
+
+    // Splits the ways into edges. A node missing from the extract (ways cut at its border)
+    // ends the edge before it; the way continues from the next node that is present.
+    private static Graph buildGraph(RoutableWays ways, WayNodes nodes) {
+        nodes.project();
+        Graph graph = new Graph();
+        Map<String, String> names = new HashMap<>();
+        for (int w = 0; w < ways.wayCount; w++) {
+            String name = names.computeIfAbsent(ways.names[w], n -> n);
+            double metersPerMinute = ways.speeds[w] / 0.06;
+            int from = -1;
+            int previous = -1;
+            double length = 0.0;
+            for (int r = ways.firstRef[w], end = ways.firstRef[w + 1]; r < end; r++) {
+                int node = nodes.indexOf(ways.refs[r]);
+                if (!nodes.isLocated(node)) {
+                    if (from >= 0 && previous != from) {
+                        addRoad(graph, nodes, from, previous, length / metersPerMinute, ways.directions[w], name);
+                    }
+                    from = -1;
+                    previous = -1;
+                    continue;
+                }
+                if (node == previous) {
+                    continue;
+                }
+                if (from < 0) {
+                    from = node;
+                    previous = node;
+                    length = 0.0;
+                    continue;
+                }
+                length += nodes.distanceMeters(previous, node);
+                previous = node;
+                if (nodes.uses[node] > 1 || r == end - 1) {
+                    if (node != from) {
+                        addRoad(graph, nodes, from, node, length / metersPerMinute, ways.directions[w], name);
+                    }
+                    from = node;
+                    length = 0.0;
+                }
+            }
+        }
+        return graph;
+    }
+
+    private static void addRoad(Graph graph, WayNodes nodes, int from, int to, double minutes, byte direction,
+                                String name) {
+        String fromId = nodes.addTo(graph, from);
+        String toId = nodes.addTo(graph, to);
+        if (direction != BACKWARD_ONLY) {
+            graph.addEdge(fromId, toId, minutes, name);
+        }
+        if (direction != FORWARD_ONLY) {
+            graph.addEdge(toId, fromId, minutes, name);
+        }
+    }
+
+    // One streaming pass over an XML extract: ways into ways, or node coordinates into nodes
+    private static void readXml(Path file, RoutableWays ways, WayNodes nodes) throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        try (InputStream in = open(file)) {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            try {
+                Way way = new Way();
+                boolean inWay = false;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        String element = reader.getLocalName();
+                        if (nodes != null && element.equals("node")) {
+                            nodes.setCoordinates(Long.parseLong(attribute(reader, "id")),
+                                    Double.parseDouble(attribute(reader, "lat")), Double.parseDouble(attribute(reader, "lon")));
+                        } else if (ways != null && element.equals("way")) {
+                            way.clear();
+                            way.id = Long.parseLong(attribute(reader, "id"));
+                            inWay = true;
+                        } else if (inWay && element.equals("nd")) {
+                            way.addRef(Long.parseLong(attribute(reader, "ref")));
+                        } else if (inWay && element.equals("tag")) {
+                            way.addTag(attribute(reader, "k"), attribute(reader, "v"));
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT && inWay && reader.getLocalName().equals("way")) {
+                        ways.add(way);
+                        inWay = false;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException | NumberFormatException e) {
+            throw new IOException("Could not parse OSM file " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static String attribute(XMLStreamReader reader, String name) throws IOException {
+        String value = reader.getAttributeValue(null, name);
+        if (value == null) {
+            throw new IOException("OSM element <" + reader.getLocalName() + "> without a " + name + " attribute.");
+        }
+        return value;
+    }
+
+    private static InputStream open(Path file) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(file), 1 << 16);
+        return file.getFileName().toString().endsWith(".gz") ? new GZIPInputStream(in, 1 << 16) : in;
+    }
+}
@@ -0,0 +1,497 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+// Streaming reader for OpenStreetMap PBF files (fileformat.proto and osmformat.proto).
+// A file is a sequence of blobs, each a length-prefixed BlobHeader followed by a raw or
+// zlib-compressed block. The calling thread reads blobs ahead while a pool decompresses and
+// decodes OSMData blocks; at most two blocks per thread are in flight, so memory does not
+// grow with the file. Only what routing needs is decoded: node IDs and coordinates (plain
+// and dense nodes) and way IDs, tags and node references.
+final class OsmPbfReader {
+    // Limits from the file format; larger sizes mean a corrupt file
+    private static final int MAX_HEADER_SIZE = 64 * 1024;
+    private static final int MAX_BLOB_SIZE = 32 * 1024 * 1024;
+
+    // Header features this reader understands; files requiring others are rejected
+    private static final String[] SUPPORTED_FEATURES = { "OsmSchema-V0.6", "DenseNodes" };
+
+    private OsmPbfReader() {
+    }
+
+    // Decodes one data block on a pool thread
+    interface BlockDecoder<T> {
+        T decode(Block block) throws IOException;
+    }
+
+    interface NodeVisitor {
+        void node(long id, double lat, double lon);
+    }
+
+    // Runs decoder on every OSMData block of the file, on the given number of threads, and
+    // passes the results to merge on the calling thread in file order
+    static <T> void read(Path file, int threads, BlockDecoder<T> decoder, Consumer<T> merge) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayDeque<Future<T>> inFlight = new ArrayDeque<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            while (true) {
+                int headerSize;
+                try {
+                    headerSize = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (headerSize < 0 || headerSize > MAX_HEADER_SIZE) {
+                    throw new IOException("Corrupt PBF file " + file + ": blob header of " + headerSize + " bytes.");
+                }
+                Cursor header = new Cursor(readFully(in, headerSize));
+                String type = null;
+                int dataSize = -1;
+                while (header.hasMore()) {
+                    int tag = header.readTag();
+                    if (tag == (1 << 3 | 2)) {
+                        type = header.readString();
+                    } else if (tag == (3 << 3)) {
+                        dataSize = (int) header.readVarint();
+                    } else {
+                        header.skip(tag);
+                    }
+                }
+                if (type == null || dataSize < 0 || dataSize > MAX_BLOB_SIZE) {
+                    throw new IOException("Corrupt PBF file " + file + ": invalid blob header.");
+                }
+                byte[] blob = readFully(in, dataSize);
+
+                if (type.equals("OSMHeader")) {
+                    checkFeatures(new Cursor(decompress(blob)), file);
+                } else if (type.equals("OSMData")) {
+                    if (inFlight.size() >= 2 * threads) {
+                        merge.accept(await(inFlight.poll()));
+                    }
+                    inFlight.add(pool.submit(() -> decoder.decode(new Block(decompress(blob)))));
+                }
+                // Other blob types are skipped, as the format requires
+            }
+            while (!inFlight.isEmpty()) {
+                merge.accept(await(inFlight.poll()));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static byte[] readFully(DataInputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decoding PBF blocks.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    // Blob: raw (1) or zlib_data (3) with raw_size (2); other compressions are not supported
+    private static byte[] decompress(byte[] blob) throws IOException {
+        Cursor cursor = new Cursor(blob);
+        byte[] raw = null;
+        int rawSize = -1;
+        int zlibStart = -1;
+        int zlibEnd = -1;
+        while (cursor.hasMore()) {
+            int tag = cursor.readTag();
+            switch (tag) {
+                case 1 << 3 | 2:
+                    raw = cursor.readBytes();
+                    break;
+                case 2 << 3:
+                    rawSize = (int) cursor.readVarint();
+                    break;
+                case 3 << 3 | 2:
+                    zlibEnd = cursor.readLength();
+                    zlibStart = cursor.position;
+                    cursor.position = zlibEnd;
+                    break;
+                default:
+                    if (tag >>> 3 >= 4 && tag >>> 3 <= 7) {
+                        throw new IOException("Unsupported PBF compression (blob field " + (tag >>> 3) + ").");
+                    }
+                    cursor.skip(tag);
+            }
+        }
+        if (raw != null) {
+            return raw;
+        }
+        if (zlibStart < 0 || rawSize < 0 || rawSize > MAX_BLOB_SIZE) {
+            throw new IOException("Corrupt PBF blob.");
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(blob, zlibStart, zlibEnd - zlibStart);
+            byte[] data = new byte[rawSize];
+            int length = 0;
+            while (length < rawSize && !inflater.finished()) {
+                int inflated = inflater.inflate(data, length, rawSize - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != rawSize) {
+                throw new IOException("Corrupt PBF blob: inflated " + length + " of " + rawSize + " bytes.");
+            }
+            return data;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt PBF blob: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    // HeaderBlock: required_features (4)
+    private static void checkFeatures(Cursor header, Path file) throws IOException {
+        while (header.hasMore()) {
+            int tag = header.readTag();
+            if (tag == (4 << 3 | 2)) {
+                String feature = header.readString();
+                if (!Arrays.asList(SUPPORTED_FEATURES).contains(feature)) {
+                    throw new IOException("PBF file " + file + " requires unsupported feature " + feature + ".");
+                }
+            } else {
+                header.skip(tag);
+            }
+        }
+    }
+
+    // One decompressed PrimitiveBlock: string table (1), primitive groups (2), granularity
+    // (17) and coordinate offsets (19, 20). Groups are decoded on demand by the visitors.
+    static final class Block {
+        private final byte[] data;
+        private int stringTableEnd = -1;
+        private int stringTableStart;
+        private int[] groupEnds = new int[4];
+        private int[] groupStarts = new int[4];
+        private int groupCount;
+        private long granularity = 100;
+        private long latOffset;
+        private long lonOffset;
+        private String[] strings;
+
+        Block(byte[] data) throws IOException {
+            this.data = data;
+            Cursor cursor = new Cursor(data);
+            while (cursor.hasMore()) {
+                int tag = cursor.readTag();
+                switch (tag) {
+                    case 1 << 3 | 2:
+                        stringTableEnd = cursor.readLength();
+                        stringTableStart = cursor.position;
+                        cursor.position = stringTableEnd;
+                        break;
+                    case 2 << 3 | 2:
+                        if (groupCount == groupEnds.length) {
+                            groupStarts = Arrays.copyOf(groupStarts, groupCount * 2);
+                            groupEnds = Arrays.copyOf(groupEnds, groupCount * 2);
+                        }
+                        groupEnds[groupCount] = cursor.readLength();
+                        groupStarts[groupCount] = cursor.position;
+                        cursor.position = groupEnds[groupCount++];
+                        break;
+                    case 17 << 3:
+                        granularity = cursor.readVarint();
+                        break;
+                    case 19 << 3:
+                        latOffset = cursor.readVarint();
+                        break;
+                    case 20 << 3:
+                        lonOffset = cursor.readVarint();
+                        break;
+                    default:
+                        cursor.skip(tag);
+                }
+            }
+        }
+
+        // Plain nodes (group field 1: id 1, lat 8, lon 9) and dense nodes (group field 2:
+        // delta-coded packed id 1, lat 8, lon 9)
+        void forEachNode(NodeVisitor visitor) throws IOException {
+            for (int g = 0; g < groupCount; g++) {
+                Cursor group = new Cursor(data, groupStarts[g], groupEnds[g]);
+                while (group.hasMore()) {
+                    int tag = group.readTag();
+                    if (tag == (1 << 3 | 2)) {
+                        Cursor node = group.readMessage();
+                        long id = 0;
+                        long lat = 0;
+                        long lon = 0;
+                        while (node.hasMore()) {
+                            int field = node.readTag();
+                            if (field == (1 << 3)) {
+                                id = node.readSignedVarint();
+                            } else if (field == (8 << 3)) {
+                                lat = node.readSignedVarint();
+                            } else if (field == (9 << 3)) {
+                                lon = node.readSignedVarint();
+                            } else {
+                                node.skip(field);
+                            }
+                        }
+                        visitor.node(id, latitude(lat), longitude(lon));
+                    } else if (tag == (2 << 3 | 2)) {
+                        readDenseNodes(group.readMessage(), visitor);
+                    } else {
+                        group.skip(tag);
+                    }
+                }
+            }
+        }
+
+        private void readDenseNodes(Cursor dense, NodeVisitor visitor) throws IOException {
+            Cursor ids = null;
+            Cursor lats = null;
+            Cursor lons = null;
+            while (dense.hasMore()) {
+                int tag = dense.readTag();
+                if (tag == (1 << 3 | 2)) {
+                    ids = dense.readMessage();
+                } else if (tag == (8 << 3 | 2)) {
+                    lats = dense.readMessage();
+                } else if (tag == (9 << 3 | 2)) {
+                    lons = dense.readMessage();
+                } else {
+                    dense.skip(tag);
+                }
+            }
+            if (ids == null) {
+                return;
+            }
+            if (lats == null || lons == null) {
+                throw new IOException("Corrupt PBF block: dense nodes without coordinates.");
+            }
+            long id = 0;
+            long lat = 0;
+            long lon = 0;
+            while (ids.hasMore()) {
+                id += ids.readSignedVarint();
+                lat += lats.readSignedVarint();
+                lon += lons.readSignedVarint();
+                visitor.node(id, latitude(lat), longitude(lon));
+            }
+        }
+
+        // Ways (group field 3): id 1, packed key (2) and value (3) string indices, and
+        // delta-coded packed node references (8). The same Way object is passed for each.
+        void forEachWay(Consumer<OsmImporter.Way> visitor) throws IOException {
+            OsmImporter.Way way = new OsmImporter.Way();
+            for (int g = 0; g < groupCount; g++) {
+                Cursor group = new Cursor(data, groupStarts[g], groupEnds[g]);
+                while (group.hasMore()) {
+                    int tag = group.readTag();
+                    if (tag != (3 << 3 | 2)) {
+                        group.skip(tag);
+                        continue;
+                    }
+                    Cursor message = group.readMessage();
+                    way.clear();
+                    Cursor keys = null;
+                    Cursor values = null;
+                    while (message.hasMore()) {
+                        int field = message.readTag();
+                        if (field == (1 << 3)) {
+                            way.id = message.readVarint();
+                        } else if (field == (2 << 3 | 2)) {
+                            keys = message.readMessage();
+                        } else if (field == (3 << 3 | 2)) {
+                            values = message.readMessage();
+                        } else if (field == (8 << 3 | 2)) {
+                            Cursor refs = message.readMessage();
+                            long ref = 0;
+                            while (refs.hasMore()) {
+                                ref += refs.readSignedVarint();
+                                way.addRef(ref);
+                            }
+                        } else {
+                            message.skip(field);
+                        }
+                    }
+                    if (keys != null && values != null) {
+                        String[] table = strings();
+                        while (keys.hasMore() && values.hasMore()) {
+                            way.addTag(string(table, keys.readVarint()), string(table, values.readVarint()));
+                        }
+                    }
+                    visitor.accept(way);
+                }
+            }
+        }
+
+        private static String string(String[] table, long index) throws IOException {
+            if (index < 0 || index >= table.length) {
+                throw new IOException("Corrupt PBF block: string index " + index + " out of range.");
+            }
+            return table[(int) index];
+        }
+
+        // StringTable: repeated bytes s (1), decoded on first use
+        private String[] strings() throws IOException {
+            if (strings == null) {
+                String[] table = new String[64];
+                int count = 0;
+                if (stringTableEnd >= 0) {
+                    Cursor cursor = new Cursor(data, stringTableStart, stringTableEnd);
+                    while (cursor.hasMore()) {
+                        int tag = cursor.readTag();
+                        if (tag == (1 << 3 | 2)) {
+                            if (count == table.length) {
+                                table = Arrays.copyOf(table, count * 2);
+                            }
+                            table[count++] = cursor.readString();
+                        } else {
+                            cursor.skip(tag);
+                        }
+                    }
+                }
+                strings = Arrays.copyOf(table, count);
+            }
+            return strings;
+        }
+
+        private double latitude(long lat) {
+            return 1e-9 * (latOffset + granularity * lat);
+        }
+
+        private double longitude(long lon) {
+            return 1e-9 * (lonOffset + granularity * lon);
+        }
+    }
+
+    // Protocol buffer wire-format reader over data[position .. limit)
+    private static final class Cursor {
+        private final byte[] data;
+        private final int limit;
+        private int position;
+
+        Cursor(byte[] data) {
+            this(data, 0, data.length);
+        }
+
+        Cursor(byte[] data, int position, int limit) {
+            this.data = data;
+            this.position = position;
+            this.limit = limit;
+        }
+
+        boolean hasMore() {
+            return position < limit;
+        }
+
+        // Field number << 3 | wire type
+        int readTag() throws IOException {
+            return (int) readVarint();
+        }
+
+        long readVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position >= limit) {
+                    throw new IOException("Corrupt PBF data: truncated varint.");
+                }
+                byte b = data[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Corrupt PBF data: varint too long.");
+        }
+
+        // Zigzag-encoded sint64
+        long readSignedVarint() throws IOException {
+            long value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        // Reads a length prefix and returns the end of the value that follows
+        int readLength() throws IOException {
+            long length = readVarint();
+            if (length < 0 || length > limit - position) {
+                throw new IOException("Corrupt PBF data: field length " + length + " out of range.");
+            }
+            return position + (int) length;
+        }
+
+        Cursor readMessage() throws IOException {
+            int end = readLength();
+            Cursor message = new Cursor(data, position, end);
+            position = end;
+            return message;
+        }
+
+        byte[] readBytes() throws IOException {
+            int end = readLength();
+            byte[] bytes = Arrays.copyOfRange(data, position, end);
+            position = end;
+            return bytes;
+        }
+
+        String readString() throws IOException {
+            int end = readLength();
+            String string = new String(data, position, end - position, StandardCharsets.UTF_8);
+            position = end;
+            return string;
+        }
+
+        void skip(int tag) throws IOException {
+            switch (tag & 7) {
+                case 0:
+                    readVarint();
+                    break;
+                case 1:
+                    advance(8);
+                    break;
+                case 2:
+                    position = readLength();
+                    break;
+                case 5:
+                    advance(4);
+                    break;
+                default:
+                    throw new IOException("Corrupt PBF data: wire type " + (tag & 7) + ".");
+            }
+        }
+
+        private void advance(int bytes) throws IOException {
+            if (bytes > limit - position) {
+                throw new IOException("Corrupt PBF data: truncated field.");
+            }
+            position += bytes;
+        }
+    }
+}
@@ -1,40 +1,219 @@
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
 public class PathResult {
-    private List<String> path;
+    private volatile List<String> path;
     private double totalTime;
-    private List<String> instructions; // New field for turn instructions
-  
+    private volatile List<String> instructions; // New field for turn instructions
+    private int settledNodes; // Number of nodes the search settled to produce this result
+
+    // Route as CSR edges of graph leaving node start, for results of the query engines; the
+    // path and instructions are only built from it when first asked for (null otherwise)
+    private final CompactGraph graph;
+    private final int start;
+    private final int[] edges;
+
+    // Kinds of turn instruction passed to an InstructionVisitor
+    public enum Maneuver {
+        START,        // node: where the route starts
+        HEAD_ONTO,    // road: the first road taken
+        TURN_ONTO,    // road: the new road, node: where the turn is
+        CONTINUE_ON,  // road: the road taken again after a segment without a road name
+        UNNAMED_ROAD, // node, nextNode: a segment on a road without a name
+        MISSING_EDGE, // node, nextNode: consecutive path nodes with no edge between them
+        OTHER,        // road: a stored instruction in none of these forms, without its number
+        ARRIVE        // node: the destination
+    }
+
+    // Receives a route's instructions one at a time (visitInstructions), so callers that
+    // render or serialize them themselves need no instruction strings at all. Arguments a
+    // maneuver does not use are null.
+    public interface InstructionVisitor {
+        void visit(int step, Maneuver maneuver, String road, String node, String nextNode);
+    }
+
     public PathResult(List<String> path, double totalTime, List<String> instructions) {
+        this(path, totalTime, instructions, 0);
+    }
+
+    public PathResult(List<String> path, double totalTime, List<String> instructions, int settledNodes) {
         this.path = path;
         this.totalTime = totalTime;
         this.instructions = instructions; // Initialize the new field
+        this.settledNodes = settledNodes;
+        this.graph = null;
+        this.start = -1;
+        this.edges = null;
     }
 
+    // A route found on graph: edges[0 .. edgeCount) leading from start (none if start is the
+    // destination). Keeps graph (one traffic version) reachable while the result is.
+    PathResult(CompactGraph graph, int start, int[] edges, int edgeCount, double totalTime, int settledNodes) {
+        this.totalTime = totalTime;
+        this.settledNodes = settledNodes;
+        this.graph = graph;
+        this.start = start;
+        this.edges = edges.length == edgeCount ? edges : Arrays.copyOf(edges, edgeCount);
+    }
+
+    // Node IDs from start to end; built on first use for engine results, then unmodifiable
     public List<String> getPath() {
-        return path;
+        List<String> result = path;
+        if (result == null) {
+            List<String> nodes = new ArrayList<>(edges.length + 1);
+            for (int i = 0; i <= edges.length; i++) {
+                nodes.add(nodeAt(i));
+            }
+            // Concurrent first calls may each build it; they build equal lists
+            result = Collections.unmodifiableList(nodes);
+            path = result;
+        }
+        return result;
     }
 
     public double getTotalTime() {
         return totalTime;
     }
 
+    // Numbered turn-by-turn instructions; built on first use for engine results
     public List<String> getInstructions() { // New getter for instructions
-        return instructions;
+        List<String> result = instructions;
+        if (result == null) {
+            List<String> lines = new ArrayList<>();
+            visitInstructions((step, maneuver, road, node, nextNode) ->
+                    lines.add(formatInstruction(step, maneuver, road, node, nextNode)));
+            result = Collections.unmodifiableList(lines);
+            instructions = result;
+        }
+        return result;
+    }
+
+    // Streams the instructions that getInstructions() lists, in order. Results of the query
+    // engines are visited from their edges without building any strings; results built from
+    // lists replay their stored instructions.
+    public void visitInstructions(InstructionVisitor visitor) {
+        if (edges == null) {
+            List<String> lines = instructions;
+            for (int i = 0; lines != null && i < lines.size(); i++) {
+                replayInstruction(i + 1, lines.get(i), visitor);
+            }
+            return;
+        }
+        visitor.visit(1, Maneuver.START, null, nodeAt(0), null);
+        String currentRoadName = null;
+        boolean afterUnnamedRoad = false;
+        for (int i = 0; i < edges.length; i++) {
+            String nextRoadName = graph.getRoadName(edges[i]);
+            if (nextRoadName == null) {
+                visitor.visit(i + 2, Maneuver.UNNAMED_ROAD, null, nodeAt(i), nodeAt(i + 1));
+                afterUnnamedRoad = true;
+                continue;
+            }
+            if (currentRoadName == null) {
+                // First segment of the journey
+                visitor.visit(i + 2, Maneuver.HEAD_ONTO, nextRoadName, null, null);
+            } else if (!nextRoadName.equals(currentRoadName)) {
+                // Road name changed, implies a turn
+                visitor.visit(i + 2, Maneuver.TURN_ONTO, nextRoadName, nodeAt(i), null);
+            } else if (afterUnnamedRoad) {
+                // Back on the same road after a gap; otherwise staying on a road needs no instruction
+                visitor.visit(i + 2, Maneuver.CONTINUE_ON, nextRoadName, null, null);
+            }
+            afterUnnamedRoad = false;
+            currentRoadName = nextRoadName;
+        }
+        visitor.visit(edges.length + 2, Maneuver.ARRIVE, null, nodeAt(edges.length), null);
+    }
+
+    // The text getInstructions() uses for one visited instruction
+    public static String formatInstruction(int step, Maneuver maneuver, String road, String node, String nextNode) {
+        switch (maneuver) {
+            case START:
+                return step + ". Start at " + node + ".";
+            case HEAD_ONTO:
+                return step + ". Head onto " + road + ".";
+            case TURN_ONTO:
+                return step + ". Turn onto " + road + " at " + node + ".";
+            case CONTINUE_ON:
+                return step + ". Continue on " + road + ".";
+            case UNNAMED_ROAD:
+                return step + ". Continue to " + nextNode + ".";
+            case MISSING_EDGE:
+                return step + ". Error: Could not find edge between " + node + " and " + nextNode + ".";
+            case OTHER:
+                return step + ". " + road;
+            default:
+                return step + ". Arrive at " + node + ".";
+        }
+    }
+
+    public int getSettledNodes() {
+        return settledNodes;
+    }
+
+    // Whether a route was found, without building the path
+    boolean hasRoute() {
+        return edges != null || !path.isEmpty();
+    }
+
+    // CSR edges of the route on the graph it was found on, or null for results built from lists
+    int[] getEdges() {
+        return edges;
+    }
+
+    // Visits a stored instruction line as the maneuver formatInstruction writes it as; the
+    // number it starts with is its step (position is the step for lines without one)
+    private void replayInstruction(int position, String line, InstructionVisitor visitor) {
+        int step = position;
+        String text = line;
+        int dot = line.indexOf(". ");
+        if (dot > 0 && dot < 10 && line.chars().limit(dot).allMatch(Character::isDigit)) {
+            step = Integer.parseInt(line.substring(0, dot));
+            text = line.substring(dot + 2);
+        }
+        String body = text.endsWith(".") ? text.substring(0, text.length() - 1) : null;
+        if (body != null && body.startsWith("Start at ")) {
+            visitor.visit(step, Maneuver.START, null, body.substring(9), null);
+        } else if (body != null && body.startsWith("Head onto ")) {
+            visitor.visit(step, Maneuver.HEAD_ONTO, body.substring(10), null, null);
+        } else if (body != null && body.startsWith("Turn onto ") && body.lastIndexOf(" at ") > 9) {
+            int at = body.lastIndexOf(" at ");
+            visitor.visit(step, Maneuver.TURN_ONTO, body.substring(10, at), body.substring(at + 4), null);
+        } else if (body != null && body.startsWith("Continue on ")) {
+            visitor.visit(step, Maneuver.CONTINUE_ON, body.substring(12), null, null);
+        } else if (body != null && body.startsWith("Continue to ")) {
+            // Step n covers the segment from the (n-1)-th path node
+            String node = step >= 2 && step - 2 < path.size() ? path.get(step - 2) : null;
+            visitor.visit(step, Maneuver.UNNAMED_ROAD, null, node, body.substring(12));
+        } else if (body != null && body.startsWith("Error: Could not find edge between ")
+                && body.indexOf(" and ", 35) > 0) {
+            int and = body.indexOf(" and ", 35);
+            visitor.visit(step, Maneuver.MISSING_EDGE, null, body.substring(35, and), body.substring(and + 5));
+        } else if (body != null && body.startsWith("Arrive at ")) {
+            visitor.visit(step, Maneuver.ARRIVE, null, body.substring(10), null);
+        } else {
+            visitor.visit(step, Maneuver.OTHER, text, null, null);
+        }
+    }
+
+    // Node ID of the route's i-th node (0 = start)
+    private String nodeAt(int i) {
+        return graph.getNodeId(i == 0 ? start : graph.getTarget(edges[i - 1]));
     }
 
     @Override
     public String toString() {
-        if (path.isEmpty()) {
+        if (getPath().isEmpty()) {
             return "No path found.";
         }
         StringBuilder sb = new StringBuilder();
-        sb.append("Path: ").append(String.join(" -> ", path)).append("\n");
+        sb.append("Path: ").append(String.join(" -> ", getPath())).append("\n");
         sb.append("Total Travel Time: ").append(String.format("%.2f", totalTime)).append(" minutes\n");
         sb.append("Instructions:\n");
         // Print each instruction with a bullet point
-        for (String instruction : instructions) {
+        for (String instruction : getInstructions()) {
             sb.append(instruction).append("\n");
         }
         return sb.toString();
@@ -1,147 +1,387 @@
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-class PathNode implements Comparable<PathNode> {
-    String nodeId;
-    double cost;
+public class Pathfinder {
+    // Search scratch space is reused per thread so queries do not allocate per node
+    private static final ThreadLocal<SearchState> SEARCH_STATE = ThreadLocal.withInitial(SearchState::new);
 
-    public PathNode(String nodeId, double cost) {
-        this.nodeId = nodeId;
-        this.cost = cost;
-    }
+    // Landmarks built on first ALT query if none were supplied
+    private static final int DEFAULT_LANDMARK_COUNT = 16;
 
-    @Override
-    public int compareTo(PathNode other) {
-        return Double.compare(this.cost, other.cost);
-    }
-}
+    // Up to three routes, each at most 30% slower than the shortest and sharing at most 70%
+    // of its travel time with each faster one
+    private static final AlternativeRoutes DEFAULT_ALTERNATIVES = new AlternativeRoutes(3, 1.3, 0.7);
 
-public class Pathfinder {
     private Graph graph;
+    // Set when serving concurrent queries: each query then runs on the latest published snapshot
+    private TrafficSnapshots snapshots;
+    private volatile LandmarkIndex landmarkIndex;
+    // Set while one query brings the landmarks up to date for a new graph version
+    private final AtomicBoolean landmarkUpdate = new AtomicBoolean();
+    // Serves repeated fixed-hour queries if set
+    private volatile RouteCache routeCache;
+    // Records every fixed-hour and departure-time query if set
+    private volatile QueryMetrics metrics;
+    // Snaps coordinates to nodes; built on the first coordinate query if none was supplied
+    private volatile SpatialIndex spatialIndex;
 
     public Pathfinder(Graph graph) {
         this.graph = graph;
     }
 
+    // Pathfinder for concurrent use: any number of threads may query while a writer publishes
+    // traffic updates to the snapshots. Each query sees one snapshot from start to finish.
+    public Pathfinder(TrafficSnapshots snapshots) {
+        this.graph = snapshots.getGraph();
+        this.snapshots = snapshots;
+    }
+
+    // Supplies precomputed (e.g. loaded) landmarks for SearchMode.ALT
+    public void setLandmarkIndex(LandmarkIndex landmarkIndex) {
+        this.landmarkIndex = landmarkIndex;
+    }
+
+    // Answers findPath queries from the cache when possible and caches new results; null turns
+    // caching off. The cache is registered for the traffic changes of the snapshots (or the
+    // Graph) this Pathfinder serves, so it must not be shared with another road network.
+    public synchronized void setRouteCache(RouteCache cache) {
+        if (routeCache != null) {
+            if (snapshots != null) {
+                snapshots.removeTrafficListener(routeCache);
+            } else {
+                graph.removeTrafficListener(routeCache);
+            }
+        }
+        if (cache != null) {
+            if (snapshots != null) {
+                snapshots.addTrafficListener(cache);
+            } else {
+                graph.addTrafficListener(cache);
+            }
+        }
+        routeCache = cache;
+    }
+
+    public RouteCache getRouteCache() {
+        return routeCache;
+    }
+
+    // Starts (or, with null, stops) recording query metrics; one QueryMetrics may be shared
+    // by several Pathfinders
+    public void setMetrics(QueryMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public QueryMetrics getMetrics() {
+        return metrics;
+    }
+
+    // Supplies a prebuilt spatial index for coordinate queries
+    public void setSpatialIndex(SpatialIndex spatialIndex) {
+        this.spatialIndex = spatialIndex;
+    }
+
+    // Returns the spatial index for the current road network, building it if needed
+    public SpatialIndex getSpatialIndex() {
+        return getSpatialIndex(currentGraph());
+    }
+
+    // Geometry does not change with traffic, so one index serves every version of a network
+    private SpatialIndex getSpatialIndex(CompactGraph csr) {
+        SpatialIndex index = spatialIndex;
+        if (index != null && index.getGraph().hasSameNetwork(csr)) {
+            return index;
+        }
+        synchronized (this) {
+            index = spatialIndex;
+            if (index == null || !index.getGraph().hasSameNetwork(csr)) {
+                index = SpatialIndex.build(csr);
+                spatialIndex = index;
+            }
+            return index;
+        }
+    }
+
+    // Returns the landmarks for the current graph version, building them if needed
+    public LandmarkIndex getLandmarkIndex() {
+        return getLandmarkIndex(currentGraph());
+    }
+
+    // Landmarks are built once per road network and carried over to later traffic versions,
+    // recomputed only if some edge became cheaper (see LandmarkIndex.forGraph)
+    private synchronized LandmarkIndex getLandmarkIndex(CompactGraph csr) {
+        LandmarkIndex index = landmarkIndex;
+        if (index == null || !index.getGraph().hasSameNetwork(csr)) {
+            index = LandmarkIndex.build(csr, DEFAULT_LANDMARK_COUNT);
+        } else {
+            index = index.forGraph(csr);
+        }
+        landmarkIndex = index;
+        return index;
+    }
+
+    // Landmarks for an ALT query on csr, or null to run it without them. Only one query at a
+    // time updates the landmarks; concurrent ones fall back to plain Dijkstra meanwhile
+    // instead of waiting, so queries never block on preprocessing.
+    private LandmarkIndex landmarksForQuery(CompactGraph csr) {
+        LandmarkIndex index = landmarkIndex;
+        if (index != null && index.isValidFor(csr)) {
+            return index;
+        }
+        if (!landmarkUpdate.compareAndSet(false, true)) {
+            return null;
+        }
+        try {
+            return getLandmarkIndex(csr);
+        } finally {
+            landmarkUpdate.set(false);
+        }
+    }
+
+    // The graph version a query runs on; read once per query
+    private CompactGraph currentGraph() {
+        return snapshots != null ? snapshots.current() : graph.compile();
+    }
+
   
      // Finds the shortest path using Dijkstra's algorithm, considering time-dependent traffic, and generates human-readable turn instructions.
     
     public PathResult findPath(String startNodeId, String endNodeId, int hourOfDay) {
+        return findPath(startNodeId, endNodeId, hourOfDay, SearchMode.DIJKSTRA);
+    }
+
+    // Same as findPath(String, String, int) with an explicit search strategy
+    public PathResult findPath(String startNodeId, String endNodeId, int hourOfDay, SearchMode mode) {
+        CompactGraph csr = currentGraph();
+        return findPath(csr, csr.indexOf(startNodeId), csr.indexOf(endNodeId), hourOfDay, mode);
+    }
+
+    // Same as findPath(String, String, int) but addresses nodes by their dense index (Graph.getNodeIndex)
+    public PathResult findPath(int start, int end, int hourOfDay) {
+        return findPath(start, end, hourOfDay, SearchMode.DIJKSTRA);
+    }
+
+    public PathResult findPath(int start, int end, int hourOfDay, SearchMode mode) {
+        return findPath(currentGraph(), start, end, hourOfDay, mode);
+    }
+
+    // Same as findPath(String, String, int) from and to coordinates in the graph's x/y plane,
+    // each snapped to the road network with SpatialIndex.snap. The route and its travel time
+    // run between the snapped nodes.
+    public PathResult findPath(double startX, double startY, double endX, double endY, int hourOfDay) {
+        return findPath(startX, startY, endX, endY, hourOfDay, SearchMode.DIJKSTRA);
+    }
+
+    public PathResult findPath(double startX, double startY, double endX, double endY, int hourOfDay, SearchMode mode) {
+        CompactGraph csr = currentGraph();
+        SpatialIndex index = getSpatialIndex(csr);
+        return findPath(csr, index.snap(startX, startY), index.snap(endX, endY), hourOfDay, mode);
+    }
+
+    private PathResult findPath(CompactGraph csr, int start, int end, int hourOfDay, SearchMode mode) {
+        QueryMetrics metrics = this.metrics;
+        long started = metrics != null ? System.nanoTime() : 0L;
         // Validate start and end nodes
-        if (graph.getNode(startNodeId) == null || graph.getNode(endNodeId) == null) {
+        if (start < 0 || start >= csr.getNodeCount() || end < 0 || end >= csr.getNodeCount()) {
             System.err.println("Error: Start or end node does not exist in the graph.");
-            return new PathResult(Collections.emptyList(), 0.0, Collections.emptyList());
+            return rejected(metrics);
         }
 
         // Validate hourOfDay
         if (hourOfDay < 0 || hourOfDay > 23) {
             System.err.println("Error: Hour of day must be between 0 and 23.");
-            return new PathResult(Collections.emptyList(), 0.0, Collections.emptyList());
+            return rejected(metrics);
+        }
+        // Every mode finds a shortest route, so cached results serve all of them
+        RouteCache cache = routeCache;
+        if (cache != null) {
+            PathResult cached = cache.get(csr, start, end, hourOfDay);
+            if (cached != null) {
+                if (metrics != null) {
+                    metrics.recordCacheHit(started, System.nanoTime());
+                }
+                return cached;
+            }
         }
+        PathResult result = search(csr, start, end, hourOfDay, -1, mode);
+        if (cache != null) {
+            result = cache.put(csr, start, end, hourOfDay, result);
+        }
+        if (metrics != null) {
+            recordSearch(metrics, started, result, mode, false);
+        }
+        return result;
+    }
+
+    private static PathResult rejected(QueryMetrics metrics) {
+        if (metrics != null) {
+            metrics.recordRejected();
+        }
+        return new PathResult(Collections.emptyList(), 0.0, Collections.emptyList());
+    }
 
-        // Dijkstra's Algorithm Initialization
-        Map<String, Double> distances = new HashMap<>(); // Stores the shortest distance from startNode to each node
-        Map<String, String> previousNodes = new HashMap<>(); // Stores the previous node in the shortest path
-        PriorityQueue<PathNode> pq = new PriorityQueue<>(); // Priority queue for nodes to visit
+    // The search has just run on this thread, so the thread's states still hold its counters
+    private static void recordSearch(QueryMetrics metrics, long started, PathResult result, SearchMode mode,
+                                     boolean timeDependent) {
+        boolean bidirectional = !timeDependent
+                && (mode == SearchMode.BIDIRECTIONAL || mode == SearchMode.BIDIRECTIONAL_PARALLEL);
+        metrics.recordSearch(started, System.nanoTime(), result, SEARCH_STATE.get(),
+                bidirectional ? BidirectionalDijkstra.backwardState() : null);
+    }
+
+    // Alternative routes at a fixed hour, ranked by travel time with the shortest first (empty
+    // if there is no route), by the plateau method with the default limits
+    public List<PathResult> findAlternatives(String startNodeId, String endNodeId, int hourOfDay) {
+        return findAlternatives(startNodeId, endNodeId, hourOfDay, DEFAULT_ALTERNATIVES, AlternativeRoutes.Method.PLATEAU);
+    }
+
+    public List<PathResult> findAlternatives(String startNodeId, String endNodeId, int hourOfDay,
+                                             AlternativeRoutes alternatives, AlternativeRoutes.Method method) {
+        CompactGraph csr = currentGraph();
+        return alternatives.find(csr, csr.indexOf(startNodeId), csr.indexOf(endNodeId), hourOfDay, method);
+    }
+
+    public List<PathResult> findAlternatives(int start, int end, int hourOfDay, AlternativeRoutes alternatives,
+                                             AlternativeRoutes.Method method) {
+        return alternatives.find(currentGraph(), start, end, hourOfDay, method);
+    }
+
+    // Time-dependent query: leaves at the given minute of the day (0-1439) and costs every edge
+    // at the time it is entered, interpolating linearly between the hourly traffic factors.
+    // Edge costs are FIFO (leaving later never means arriving earlier), so Dijkstra stays exact.
+    public PathResult findPathDepartingAt(String startNodeId, String endNodeId, int departureMinuteOfDay) {
+        return findPathDepartingAt(startNodeId, endNodeId, departureMinuteOfDay, SearchMode.DIJKSTRA);
+    }
+
+    public PathResult findPathDepartingAt(String startNodeId, String endNodeId, int departureMinuteOfDay, SearchMode mode) {
+        CompactGraph csr = currentGraph();
+        return findPathDepartingAt(csr, csr.indexOf(startNodeId), csr.indexOf(endNodeId), departureMinuteOfDay, mode);
+    }
+
+    public PathResult findPathDepartingAt(int start, int end, int departureMinuteOfDay, SearchMode mode) {
+        return findPathDepartingAt(currentGraph(), start, end, departureMinuteOfDay, mode);
+    }
 
-        // Initialize distances: infinity for all nodes, 0 for the start node
-        for (String nodeId : graph.getNodeIds()) {
-            distances.put(nodeId, Double.POSITIVE_INFINITY);
-            previousNodes.put(nodeId, null);
+    private PathResult findPathDepartingAt(CompactGraph csr, int start, int end, int departureMinuteOfDay, SearchMode mode) {
+        QueryMetrics metrics = this.metrics;
+        long started = metrics != null ? System.nanoTime() : 0L;
+        if (start < 0 || start >= csr.getNodeCount() || end < 0 || end >= csr.getNodeCount()) {
+            System.err.println("Error: Start or end node does not exist in the graph.");
+            return rejected(metrics);
+        }
+        if (departureMinuteOfDay < 0 || departureMinuteOfDay >= CompactGraph.MINUTES_PER_DAY) {
+            System.err.println("Error: Departure minute must be between 0 and 1439.");
+            return rejected(metrics);
+        }
+        PathResult result = search(csr, start, end, departureMinuteOfDay / 60, departureMinuteOfDay, mode);
+        if (metrics != null) {
+            recordSearch(metrics, started, result, mode, true);
+        }
+        return result;
+    }
+
+    // Profile query: travel time for every departure time of the day in a single search,
+    // plus the departure window with the shortest trip. Returns null if there is no route.
+    // The route itself is findPathDepartingAt(start, end, (int) profile.getWindowStart()).
+    public ProfileSearch.DepartureProfile findDepartureProfile(String startNodeId, String endNodeId) {
+        CompactGraph csr = currentGraph();
+        int start = csr.indexOf(startNodeId);
+        int end = csr.indexOf(endNodeId);
+        if (start < 0 || end < 0) {
+            System.err.println("Error: Start or end node does not exist in the graph.");
+            return null;
+        }
+        return new ProfileSearch(csr).profile(start, end);
+    }
+
+    // Shared search loop. With departureMinute < 0 every edge costs its travel time at
+    // hourOfDay; otherwise edges are costed at the time the search reaches their start.
+    private PathResult search(CompactGraph csr, int start, int end, int hourOfDay, int departureMinute, SearchMode mode) {
+        boolean timeDependent = departureMinute >= 0;
+        if (!timeDependent && (mode == SearchMode.BIDIRECTIONAL || mode == SearchMode.BIDIRECTIONAL_PARALLEL)) {
+            return BidirectionalDijkstra.findPath(csr, start, end, hourOfDay,
+                    mode == SearchMode.BIDIRECTIONAL_PARALLEL, SEARCH_STATE.get());
+        }
+
+        // Dijkstra's Algorithm Initialization (O(1): the state is generation-stamped)
+        SearchState state = SEARCH_STATE.get();
+        state.reset(csr.getNodeCount());
+        IndexedMinHeap heap = state.getHeap();
+        state.update(start, 0.0, -1);
+        heap.insertOrDecrease(start, 0.0);
+
+        // A* orders the queue by distance + straight-line lower bound to the end node;
+        // the bound is consistent, so every node is still settled at most once
+        double heuristicScale = mode == SearchMode.ASTAR ? csr.getMinCostPerUnitDistance() : 0.0;
+        LandmarkIndex landmarks = null;
+        if (mode == SearchMode.ALT) {
+            landmarks = landmarksForQuery(csr);
         }
-        distances.put(startNodeId, 0.0);
-        pq.add(new PathNode(startNodeId, 0.0));
+        int settledNodes = 0;
 
         // Dijkstra's Algorithm Core Loop
-        while (!pq.isEmpty()) {
-            PathNode current = pq.poll();
-            String currentNodeId = current.nodeId;
-            double currentCost = current.cost;
-
-            // If we've already found a shorter path to this node, skip
-            if (currentCost > distances.get(currentNodeId)) {
-                continue;
-            }
+        while (!heap.isEmpty()) {
+            int u = heap.poll();
+            double currentCost = state.getDistance(u);
+            settledNodes++;
 
             // If we reached the end node, we can stop
-            if (currentNodeId.equals(endNodeId)) {
+            if (u == end) {
                 break;
             }
 
-            // Explore neighbors
-            for (Map.Entry<Node, Edge> neighborEntry : graph.getNeighbors(currentNodeId)) {
-                Node neighborNode = neighborEntry.getKey();
-                Edge edge = neighborEntry.getValue();
+            // Explore neighbors (CSR range of u's outgoing edges)
+            int first = csr.firstEdge(u);
+            int last = csr.endEdge(u);
+            state.countRelaxed(last - first);
+            for (int e = first; e < last; e++) {
+                int v = csr.getTarget(e);
 
-                // Get travel time based on the specified hour of day
-                double travelTime = edge.getCurrentTravelTime(hourOfDay);
+                // Get travel time based on the specified hour of day, or on the arrival time at u
+                double travelTime = timeDependent
+                        ? csr.getTravelTimeAt(e, departureMinute + currentCost)
+                        : csr.getTravelTime(e, hourOfDay);
                 double newDistance = currentCost + travelTime;
 
-                // If a shorter path to the neighbor is found
-                if (newDistance < distances.get(neighborNode.getId())) {
-                    distances.put(neighborNode.getId(), newDistance);
-                    previousNodes.put(neighborNode.getId(), currentNodeId);
-                    pq.add(new PathNode(neighborNode.getId(), newDistance));
-                }
-            }
-        }
-
-        // --- Path Reconstruction ---
-        List<String> shortestPath = new ArrayList<>();
-        String currentNode = endNodeId;
-        while (currentNode != null && previousNodes.containsKey(currentNode)) {
-            shortestPath.add(0, currentNode); // Add to the beginning of the list to build path in correct order
-            currentNode = previousNodes.get(currentNode);
-            if (currentNode == null) break; // Break if we reached the start node
-        }
-
-        // Check if path was found and starts with the start node
-        if (shortestPath.isEmpty() || !shortestPath.get(0).equals(startNodeId) || distances.get(endNodeId) == Double.POSITIVE_INFINITY) {
-            return new PathResult(Collections.emptyList(), 0.0, Collections.emptyList()); // Path not found
-        }
-
-        // --- Generate Turn Instructions ---
-        List<String> instructions = new ArrayList<>();
-        instructions.add("1. Start at " + startNodeId + ".");
-
-        String currentRoadName = null;
-        String previousNodeInPath = null; // Keep track of the node before the current segment
-
-        for (int i = 0; i < shortestPath.size() - 1; i++) {
-            String u = shortestPath.get(i); // Current node in path
-            String v = shortestPath.get(i + 1); // Next node in path
-
-            // Get the specific directed edge from u to v
-            Edge edge = graph.getDirectedEdge(u, v);
-
-            if (edge != null) {
-                String nextRoadName = edge.getName();
-
-                if (currentRoadName == null) {
-                    // First segment of the journey
-                    instructions.add((i + 2) + ". Head onto " + nextRoadName + ".");
-                } else if (!nextRoadName.equals(currentRoadName)) {
-                    // Road name changed, implies a turn
-                    instructions.add((i + 2) + ". Turn onto " + nextRoadName + " at " + u + ".");
-                } else {
-                    // Continue on the same road
-                    if (instructions.size() > 0 && !instructions.get(instructions.size() - 1).contains("Head onto") &&
-                        !instructions.get(instructions.size() - 1).contains("Turn onto")) {
-                        // Avoid consecutive "Continue" if the road is very long and has intermediate nodes
-                        if (!instructions.get(instructions.size() - 1).contains("Continue on " + nextRoadName)) {
-                             instructions.add((i + 2) + ". Continue on " + nextRoadName + ".");
+                // If a shorter path to the neighbor is found, queue it or lower its key;
+                // the predecessor record is the relaxing edge, so the route needs no edge lookups
+                if (newDistance < state.getDistance(v)) {
+                    state.update(v, newDistance, e);
+                    double priority = newDistance;
+                    if (heuristicScale > 0) {
+                        priority += heuristicScale * csr.getStraightLineDistance(v, end);
+                    } else if (landmarks != null) {
+                        double bound = landmarks.lowerBound(v, end);
+                        if (bound == Double.POSITIVE_INFINITY) {
+                            // v cannot reach the end at all; queueing it with an infinite key would
+                            // let unreachable queries re-settle nodes in arbitrary order
+                            continue;
                         }
+                        priority += bound;
                     }
+                    heap.insertOrDecrease(v, priority);
                 }
-                currentRoadName = nextRoadName;
-            } else {
-                // This case should ideally not happen if the path is valid and graph is consistent,
-                // but included for robustness.
-                instructions.add((i + 2) + ". Error: Could not find edge between " + u + " and " + v + ".");
             }
         }
-        instructions.add((shortestPath.size() + 1) + ". Arrive at " + endNodeId + ".");
+        state.markSearchDone();
+
+        if (!state.isReached(end)) {
+            return new PathResult(Collections.emptyList(), 0.0, Collections.emptyList(), settledNodes); // Path not found
+        }
 
+        // --- Path Reconstruction ---
+        // Walk the predecessor edges back from the end; the result builds the node list and
+        // instructions from them only if asked for
+        int edgeCount = 0;
+        for (int node = end, edge; (edge = state.getPredecessor(node)) != -1; node = csr.tailOf(edge)) {
+            edgeCount++;
+        }
+        int[] routeEdges = new int[edgeCount];
+        for (int node = end, edge, i = edgeCount; (edge = state.getPredecessor(node)) != -1; node = csr.tailOf(edge)) {
+            routeEdges[--i] = edge;
+        }
+        state.markRouteDone();
 
-        return new PathResult(shortestPath, distances.get(endNodeId), instructions);
+        return new PathResult(csr, start, routeEdges, edgeCount, state.getDistance(end), settledNodes);
     }
 }
@@ -0,0 +1,313 @@
+import java.util.Arrays;
+
+// Travel time as a piecewise-linear function of the departure time (minutes since
+// midnight) over one day, [0, 1440]. Immutable; operations return new functions.
+// Used by profile queries, which propagate whole functions instead of single values.
+public final class PiecewiseLinearFunction {
+    private static final double DAY = CompactGraph.MINUTES_PER_DAY;
+    private static final double EPSILON = 1e-9;
+
+    // Breakpoints, strictly increasing from 0 to 1440, and the travel time at each
+    private final double[] times;
+    private final double[] values;
+
+    private PiecewiseLinearFunction(double[] times, double[] values) {
+        this.times = times;
+        this.values = values;
+    }
+
+    public static PiecewiseLinearFunction constant(double value) {
+        return new PiecewiseLinearFunction(new double[] { 0.0, DAY }, new double[] { value, value });
+    }
+
+    // Travel time function of one edge, matching CompactGraph.getTravelTimeAt: hourly factors
+    // interpolated between hour marks, with waiting folded in for non-FIFO edges. Within an
+    // hour the waiting option is linear with slope -1, so each hour adds at most one crossing.
+    public static PiecewiseLinearFunction forEdge(CompactGraph graph, int edge) {
+        double base = graph.getBaseWeight(edge);
+        Builder builder = new Builder(CompactGraph.HOURS_PER_DAY * 2 + 1);
+        for (int hour = 0; hour < CompactGraph.HOURS_PER_DAY; hour++) {
+            double start = hour * 60.0;
+            double end = start + 60.0;
+            double atStart = base * graph.getTrafficFactor(edge, hour);
+            double atEnd = base * graph.getTrafficFactor(edge, (hour + 1) % CompactGraph.HOURS_PER_DAY);
+            // Earliest arrival when waiting for a later hour mark: min over marks of (mark + cost)
+            double arrivalByWaiting = Double.POSITIVE_INFINITY;
+            for (int k = 1; k <= CompactGraph.HOURS_PER_DAY; k++) {
+                double mark = (hour + k) * 60.0;
+                arrivalByWaiting = Math.min(arrivalByWaiting,
+                        mark + base * graph.getTrafficFactor(edge, (hour + k) % CompactGraph.HOURS_PER_DAY));
+            }
+            double waitStart = arrivalByWaiting - start;
+            double waitEnd = arrivalByWaiting - end;
+            builder.add(start, Math.min(atStart, waitStart));
+            double differenceStart = atStart - waitStart;
+            double differenceEnd = atEnd - waitEnd;
+            if (differenceStart * differenceEnd < 0) {
+                double fraction = differenceStart / (differenceStart - differenceEnd);
+                builder.add(start + fraction * 60.0, atStart + (atEnd - atStart) * fraction);
+            }
+        }
+        builder.add(DAY, builder.values[0]);
+        return builder.build();
+    }
+
+    // Travel time when departing at the given minute (clamped to the day)
+    public double evaluate(double time) {
+        if (time <= 0) {
+            return values[0];
+        }
+        if (time >= DAY) {
+            return values[values.length - 1];
+        }
+        int index = Arrays.binarySearch(times, time);
+        if (index >= 0) {
+            return values[index];
+        }
+        int right = -index - 1;
+        int left = right - 1;
+        double fraction = (time - times[left]) / (times[right] - times[left]);
+        return values[left] + (values[right] - values[left]) * fraction;
+    }
+
+    // Evaluates a function that repeats every day, for times past midnight
+    public double evaluatePeriodic(double time) {
+        return evaluate(time % DAY);
+    }
+
+    public double getMinimum() {
+        double min = Double.POSITIVE_INFINITY;
+        for (double value : values) {
+            min = Math.min(min, value);
+        }
+        return min;
+    }
+
+    public double getMaximum() {
+        double max = Double.NEGATIVE_INFINITY;
+        for (double value : values) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+
+    public int getBreakpointCount() {
+        return times.length;
+    }
+
+    public double getBreakpointTime(int index) {
+        return times[index];
+    }
+
+    public double getBreakpointValue(int index) {
+        return values[index];
+    }
+
+    // Travel time of this route followed by an edge entered on arrival:
+    // h(t) = f(t) + g(t + f(t)), where g repeats daily. Since t + f(t) is nondecreasing
+    // (FIFO), every breakpoint of g is hit by at most one departure interval of f.
+    public PiecewiseLinearFunction link(PiecewiseLinearFunction edge) {
+        Builder builder = new Builder(times.length + edge.times.length);
+        Cursor edgeCursor = new Cursor(edge);
+        for (int i = 0; i + 1 < times.length; i++) {
+            double t0 = times[i];
+            double t1 = times[i + 1];
+            double v0 = values[i];
+            double v1 = values[i + 1];
+            double arrival0 = t0 + v0;
+            double arrival1 = t1 + v1;
+            builder.add(t0, v0 + edgeCursor.evaluatePeriodic(arrival0));
+            if (arrival1 <= arrival0) {
+                continue;
+            }
+            // Breakpoints of the edge function (shifted by whole days) strictly inside the arrival range
+            double dayOffset = Math.floor(arrival0 / DAY) * DAY;
+            int j = 0;
+            while (true) {
+                if (j == edge.times.length) {
+                    j = 0;
+                    dayOffset += DAY;
+                }
+                double breakpoint = dayOffset + edge.times[j];
+                if (breakpoint >= arrival1) {
+                    break;
+                }
+                if (breakpoint > arrival0) {
+                    double fraction = (breakpoint - arrival0) / (arrival1 - arrival0);
+                    double departure = t0 + (t1 - t0) * fraction;
+                    builder.add(departure, v0 + (v1 - v0) * fraction + edge.values[j]);
+                }
+                j++;
+            }
+        }
+        int last = times.length - 1;
+        builder.add(times[last], values[last] + edgeCursor.evaluatePeriodic(times[last] + values[last]));
+        return builder.build();
+    }
+
+    // Pointwise minimum of two functions, with breakpoints where they cross
+    public PiecewiseLinearFunction min(PiecewiseLinearFunction other) {
+        double[] union = unionOfTimes(other);
+        Builder builder = new Builder(union.length * 2);
+        Cursor mine = new Cursor(this);
+        Cursor theirs = new Cursor(other);
+        double previousTime = 0;
+        double previousA = 0;
+        double previousB = 0;
+        for (int i = 0; i < union.length; i++) {
+            double time = union[i];
+            double a = mine.evaluate(time);
+            double b = theirs.evaluate(time);
+            if (i > 0) {
+                double differencePrevious = previousA - previousB;
+                double difference = a - b;
+                if (differencePrevious * difference < 0) {
+                    double fraction = differencePrevious / (differencePrevious - difference);
+                    builder.add(previousTime + (time - previousTime) * fraction,
+                            previousA + (a - previousA) * fraction);
+                }
+            }
+            builder.add(time, Math.min(a, b));
+            previousTime = time;
+            previousA = a;
+            previousB = b;
+        }
+        return builder.build();
+    }
+
+    // True if this function is lower than the other one somewhere (beyond rounding noise).
+    // Both are linear between the union of their breakpoints, so checking those suffices.
+    public boolean isBelowSomewhere(PiecewiseLinearFunction other) {
+        if (getMinimum() >= other.getMaximum()) {
+            return false;
+        }
+        Cursor mine = new Cursor(this);
+        Cursor theirs = new Cursor(other);
+        for (double time : unionOfTimes(other)) {
+            if (mine.evaluate(time) < theirs.evaluate(time) - EPSILON) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private double[] unionOfTimes(PiecewiseLinearFunction other) {
+        double[] union = new double[times.length + other.times.length];
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < times.length || j < other.times.length) {
+            double next;
+            if (j == other.times.length || (i < times.length && times[i] <= other.times[j])) {
+                next = times[i++];
+            } else {
+                next = other.times[j++];
+            }
+            if (count == 0 || next > union[count - 1]) {
+                union[count++] = next;
+            }
+        }
+        return Arrays.copyOf(union, count);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("PiecewiseLinearFunction{");
+        for (int i = 0; i < times.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(String.format("%.1f->%.2f", times[i], values[i]));
+        }
+        return sb.append('}').toString();
+    }
+
+    // Evaluates a function at nondecreasing times by walking its breakpoints, so a sweep
+    // over n times costs O(n + breakpoints) instead of a binary search per time
+    private static final class Cursor {
+        private final PiecewiseLinearFunction function;
+        private int segment;
+        private double dayOffset;
+
+        Cursor(PiecewiseLinearFunction function) {
+            this.function = function;
+        }
+
+        double evaluate(double time) {
+            double[] times = function.times;
+            if (time <= 0) {
+                return function.values[0];
+            }
+            if (time >= DAY) {
+                return function.values[times.length - 1];
+            }
+            while (segment + 2 < times.length && times[segment + 1] < time) {
+                segment++;
+            }
+            return interpolate(time);
+        }
+
+        // For a daily repeating function; the times may run past midnight but must not decrease
+        double evaluatePeriodic(double time) {
+            double[] times = function.times;
+            while (time - dayOffset >= DAY) {
+                dayOffset += DAY;
+                segment = 0;
+            }
+            double local = time - dayOffset;
+            while (segment + 2 < times.length && times[segment + 1] < local) {
+                segment++;
+            }
+            return interpolate(local);
+        }
+
+        private double interpolate(double time) {
+            double[] times = function.times;
+            double[] values = function.values;
+            double fraction = (time - times[segment]) / (times[segment + 1] - times[segment]);
+            return values[segment] + (values[segment + 1] - values[segment]) * fraction;
+        }
+    }
+
+    // Collects breakpoints in increasing time order, dropping duplicates and points that
+    // lie on the line through their neighbors
+    private static final class Builder {
+        double[] times;
+        double[] values;
+        int size;
+
+        Builder(int capacity) {
+            times = new double[Math.max(capacity, 2)];
+            values = new double[Math.max(capacity, 2)];
+        }
+
+        void add(double time, double value) {
+            if (size > 0 && time <= times[size - 1] + EPSILON) {
+                // Same instant (or rounding noise): keep the smaller value
+                values[size - 1] = Math.min(values[size - 1], value);
+                return;
+            }
+            if (size >= 2 && isCollinear(times[size - 2], values[size - 2], times[size - 1], values[size - 1], time, value)) {
+                times[size - 1] = time;
+                values[size - 1] = value;
+                return;
+            }
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            times[size] = time;
+            values[size] = value;
+            size++;
+        }
+
+        private static boolean isCollinear(double t0, double v0, double t1, double v1, double t2, double v2) {
+            double expected = v0 + (v2 - v0) * (t1 - t0) / (t2 - t0);
+            return Math.abs(expected - v1) <= EPSILON * Math.max(1.0, Math.abs(v1));
+        }
+
+        PiecewiseLinearFunction build() {
+            return new PiecewiseLinearFunction(Arrays.copyOf(times, size), Arrays.copyOf(values, size));
+        }
+    }
+}
@@ -0,0 +1,179 @@
+// Profile queries: travel time from a source as a function of the departure time over
+// the whole day, computed in one label-correcting pass. Each node carries a piecewise-linear
+// function instead of a single distance; a label is re-queued whenever a relaxation lowers
+// it for some departure time. Edge functions follow CompactGraph.getTravelTimeAt, so
+// evaluating a profile at minute t matches Pathfinder.findPathDepartingAt(t).
+public class ProfileSearch {
+    private final CompactGraph graph;
+
+    // Edge functions built on first use; a traffic update gives a new version and a fresh cache
+    private PiecewiseLinearFunction[] edgeFunctions;
+    private long trafficVersion = -1;
+
+    private int settledNodes;
+
+    public ProfileSearch(CompactGraph graph) {
+        this.graph = graph;
+    }
+
+    // Travel time profile from source to target, with the best departure window
+    public DepartureProfile profile(int source, int target) {
+        PiecewiseLinearFunction[] labels = run(source, target);
+        if (labels[target] == null) {
+            return null;
+        }
+        return new DepartureProfile(labels[target]);
+    }
+
+    // Travel time profiles from source to every node (null where unreachable)
+    public PiecewiseLinearFunction[] profileToAll(int source) {
+        return run(source, -1);
+    }
+
+    // Number of label scans (a node can be scanned more than once) in the last query
+    public int getSettledNodes() {
+        return settledNodes;
+    }
+
+    private PiecewiseLinearFunction[] run(int source, int target) {
+        refreshEdgeFunctions();
+        int nodeCount = graph.getNodeCount();
+        PiecewiseLinearFunction[] labels = new PiecewiseLinearFunction[nodeCount];
+        IndexedMinHeap heap = new IndexedMinHeap();
+        heap.ensureCapacity(nodeCount);
+        labels[source] = PiecewiseLinearFunction.constant(0.0);
+        heap.insertOrDecrease(source, 0.0);
+        settledNodes = 0;
+
+        while (!heap.isEmpty()) {
+            // Keys are label minima: once the smallest one reaches the target's worst travel
+            // time, no remaining label can improve the target at any departure time
+            if (target >= 0 && labels[target] != null && heap.peekKey() >= labels[target].getMaximum()) {
+                break;
+            }
+            int u = heap.poll();
+            settledNodes++;
+            PiecewiseLinearFunction label = labels[u];
+            for (int e = graph.firstEdge(u), last = graph.endEdge(u); e < last; e++) {
+                int v = graph.getTarget(e);
+                PiecewiseLinearFunction candidate = label.link(edgeFunction(e));
+                PiecewiseLinearFunction current = labels[v];
+                if (current == null) {
+                    labels[v] = candidate;
+                } else if (candidate.isBelowSomewhere(current)) {
+                    labels[v] = current.min(candidate);
+                } else {
+                    continue;
+                }
+                // Merging never raises a label, so its minimum (the key) can only decrease
+                heap.insertOrDecrease(v, labels[v].getMinimum());
+            }
+        }
+        return labels;
+    }
+
+    private void refreshEdgeFunctions() {
+        long version = graph.getTrafficVersion();
+        if (edgeFunctions == null || version != trafficVersion) {
+            edgeFunctions = new PiecewiseLinearFunction[graph.getEdgeCount()];
+            trafficVersion = version;
+        }
+    }
+
+    private PiecewiseLinearFunction edgeFunction(int edge) {
+        PiecewiseLinearFunction function = edgeFunctions[edge];
+        if (function == null) {
+            function = PiecewiseLinearFunction.forEdge(graph, edge);
+            edgeFunctions[edge] = function;
+        }
+        return function;
+    }
+
+    // Travel time profile for one source-target pair and the departure window that achieves
+    // the smallest travel time
+    public static class DepartureProfile {
+        private final PiecewiseLinearFunction travelTimes;
+        private final double bestTravelTime;
+        private final double windowStart;
+        private final double windowEnd;
+
+        DepartureProfile(PiecewiseLinearFunction travelTimes) {
+            this.travelTimes = travelTimes;
+            this.bestTravelTime = travelTimes.getMinimum();
+            double[] window = getDepartureWindow(0.0);
+            this.windowStart = window[0];
+            this.windowEnd = window[1];
+        }
+
+        public PiecewiseLinearFunction getTravelTimes() {
+            return travelTimes;
+        }
+
+        public double getBestTravelTime() {
+            return bestTravelTime;
+        }
+
+        // Earliest minute of the day at which the best travel time is achieved
+        public double getWindowStart() {
+            return windowStart;
+        }
+
+        // Last minute of the (first) interval over which the best travel time is achieved
+        public double getWindowEnd() {
+            return windowEnd;
+        }
+
+        // Earliest interval of departure times whose travel time is within slackMinutes of the
+        // best one, as {start, end} in minutes of the day
+        public double[] getDepartureWindow(double slackMinutes) {
+            double limit = bestTravelTime + slackMinutes + 1e-9;
+            int count = travelTimes.getBreakpointCount();
+            int best = 0;
+            while (travelTimes.getBreakpointValue(best) > bestTravelTime + 1e-9) {
+                best++;
+            }
+            // Walk outwards from the best breakpoint while breakpoints stay under the limit,
+            // then cut the first segment that crosses it at the exact crossing time
+            int left = best;
+            while (left > 0 && travelTimes.getBreakpointValue(left - 1) <= limit) {
+                left--;
+            }
+            int right = best;
+            while (right + 1 < count && travelTimes.getBreakpointValue(right + 1) <= limit) {
+                right++;
+            }
+            double start = travelTimes.getBreakpointTime(left);
+            if (left > 0) {
+                start = crossing(left - 1, left, limit);
+            }
+            double end = travelTimes.getBreakpointTime(right);
+            if (right + 1 < count) {
+                end = crossing(right, right + 1, limit);
+            }
+            return new double[] { start, end };
+        }
+
+        private double crossing(int i, int j, double limit) {
+            double ti = travelTimes.getBreakpointTime(i);
+            double tj = travelTimes.getBreakpointTime(j);
+            double vi = travelTimes.getBreakpointValue(i);
+            double vj = travelTimes.getBreakpointValue(j);
+            if (vi == vj) {
+                return ti;
+            }
+            return ti + (tj - ti) * Math.max(0.0, Math.min(1.0, (limit - vi) / (vj - vi)));
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Best departure: %s-%s, travel time %.2f minutes (range over the day %.2f-%.2f)",
+                    formatMinute(windowStart), formatMinute(windowEnd), bestTravelTime,
+                    bestTravelTime, travelTimes.getMaximum());
+        }
+
+        private static String formatMinute(double minute) {
+            int rounded = (int) Math.round(minute);
+            return String.format("%02d:%02d", (rounded / 60) % 24, rounded % 60);
+        }
+    }
+}
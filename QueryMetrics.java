@@ -0,0 +1,272 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+// Query counters of a Pathfinder (Pathfinder.setMetrics): searches, route cache hits and
+// rejected queries, the work each search did (settled nodes, relaxed edges, heap operations),
+// where its time went (search loop, route reconstruction, result creation) and a latency
+// histogram of every answered fixed-hour or departure-time query. Searches count their work
+// in per-thread state, so recording costs a few adder increments per query. Readable through
+// the getters, JMX (registerMBean) or a periodic text dump (startReporting); any number of
+// Pathfinders and threads may share one instance.
+public class QueryMetrics implements QueryMetricsMBean, AutoCloseable {
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder rejectedQueries = new LongAdder();
+    private final LongAdder unreachableQueries = new LongAdder();
+    private final LongAdder settledNodes = new LongAdder();
+    private final LongAdder relaxedEdges = new LongAdder();
+    private final LongAdder heapInsertions = new LongAdder();
+    private final LongAdder heapDecreases = new LongAdder();
+    private final LongAdder heapPolls = new LongAdder();
+    private final LongAdder searchNanos = new LongAdder();
+    private final LongAdder reconstructionNanos = new LongAdder();
+    private final LongAdder instructionNanos = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    private ScheduledExecutorService reporter;
+    private ObjectName registeredName;
+
+    // A search that ran from started to finished; backward is the other side's state of a
+    // bidirectional search, or null
+    void recordSearch(long started, long finished, PathResult result, SearchState forward, SearchState backward) {
+        searches.increment();
+        settledNodes.add(result.getSettledNodes());
+        IndexedMinHeap heap = forward.getHeap();
+        long relaxed = forward.getRelaxedEdges();
+        long insertions = heap.getInsertions();
+        long decreases = heap.getDecreases();
+        long polls = heap.getPolls();
+        if (backward != null) {
+            relaxed += backward.getRelaxedEdges();
+            insertions += backward.getHeap().getInsertions();
+            decreases += backward.getHeap().getDecreases();
+            polls += backward.getHeap().getPolls();
+        }
+        relaxedEdges.add(relaxed);
+        heapInsertions.add(insertions);
+        heapDecreases.add(decreases);
+        heapPolls.add(polls);
+
+        long searchDone = forward.getSearchDoneNanos();
+        long routeDone = forward.getRouteDoneNanos();
+        if (!result.hasRoute()) {
+            unreachableQueries.increment();
+            searchNanos.add(finished - started);
+        } else {
+            searchNanos.add(searchDone - started);
+            reconstructionNanos.add(routeDone - searchDone);
+            instructionNanos.add(finished - routeDone);
+        }
+        latency.record(finished - started);
+    }
+
+    void recordCacheHit(long started, long finished) {
+        cacheHits.increment();
+        latency.record(finished - started);
+    }
+
+    // Queries refused before searching (unknown node, hour or minute out of range)
+    void recordRejected() {
+        rejectedQueries.increment();
+    }
+
+    @Override
+    public long getSearches() {
+        return searches.sum();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public long getRejectedQueries() {
+        return rejectedQueries.sum();
+    }
+
+    // Searches that found no route
+    @Override
+    public long getUnreachableQueries() {
+        return unreachableQueries.sum();
+    }
+
+    @Override
+    public double getSettledNodesPerSearch() {
+        return perSearch(settledNodes);
+    }
+
+    // Edges scanned from settled nodes (both sides of a bidirectional search)
+    @Override
+    public double getRelaxedEdgesPerSearch() {
+        return perSearch(relaxedEdges);
+    }
+
+    @Override
+    public double getHeapInsertionsPerSearch() {
+        return perSearch(heapInsertions);
+    }
+
+    @Override
+    public double getHeapDecreasesPerSearch() {
+        return perSearch(heapDecreases);
+    }
+
+    @Override
+    public double getHeapPollsPerSearch() {
+        return perSearch(heapPolls);
+    }
+
+    // The search loop, including the whole search when no route was found
+    @Override
+    public double getMeanSearchMicros() {
+        return perSearch(searchNanos) / 1e3;
+    }
+
+    // Walking the predecessors back into the route's edges (searches with a route)
+    @Override
+    public double getMeanReconstructionMicros() {
+        return perRoute(reconstructionNanos) / 1e3;
+    }
+
+    // Creating the result and caching it; the path and instructions are built later, only
+    // when asked for (searches with a route)
+    @Override
+    public double getMeanInstructionMicros() {
+        return perRoute(instructionNanos) / 1e3;
+    }
+
+    // Latency percentiles cover searches and cache hits, from the call to its result
+    @Override
+    public double getLatencyP50Micros() {
+        return getLatencyMicros(50);
+    }
+
+    @Override
+    public double getLatencyP90Micros() {
+        return getLatencyMicros(90);
+    }
+
+    @Override
+    public double getLatencyP99Micros() {
+        return getLatencyMicros(99);
+    }
+
+    @Override
+    public double getLatencyP999Micros() {
+        return getLatencyMicros(99.9);
+    }
+
+    @Override
+    public double getMaxLatencyMicros() {
+        return latency.getMax() / 1e3;
+    }
+
+    // Latency that the given percentage (0-100) of queries did not exceed, within 1%
+    public double getLatencyMicros(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100.");
+        }
+        return latency.getValueAtPercentile(percentile) / 1e3;
+    }
+
+    // Starts over, e.g. at the beginning of each reporting interval. Queries recorded
+    // meanwhile may be partly counted.
+    @Override
+    public void reset() {
+        for (LongAdder adder : new LongAdder[] { searches, cacheHits, rejectedQueries, unreachableQueries,
+                settledNodes, relaxedEdges, heapInsertions, heapDecreases, heapPolls, searchNanos,
+                reconstructionNanos, instructionNanos }) {
+            adder.reset();
+        }
+        latency.reset();
+    }
+
+    private double perSearch(LongAdder total) {
+        long count = searches.sum();
+        return count == 0 ? 0.0 : (double) total.sum() / count;
+    }
+
+    private double perRoute(LongAdder total) {
+        long count = searches.sum() - unreachableQueries.sum();
+        return count <= 0 ? 0.0 : (double) total.sum() / count;
+    }
+
+    // Registers these metrics with the platform MBean server as
+    // trafficrouting:type=QueryMetrics,name=<name>
+    public synchronized ObjectName registerMBean(String name) throws JMException {
+        if (registeredName != null) {
+            throw new IllegalStateException("Query metrics are already registered as " + registeredName + ".");
+        }
+        ObjectName objectName = new ObjectName("trafficrouting:type=QueryMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        registeredName = objectName;
+        return objectName;
+    }
+
+    public synchronized void unregisterMBean() throws JMException {
+        if (registeredName != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+            registeredName = null;
+        }
+    }
+
+    // Prints format() to out every period on a daemon thread, replacing any earlier schedule;
+    // with reset set, each dump covers only the queries since the previous one
+    public synchronized void startReporting(long period, TimeUnit unit, PrintStream out, boolean reset) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("Reporting period must be positive.");
+        }
+        stopReporting();
+        reporter = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "query-metrics-report");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> {
+            out.println(format());
+            if (reset) {
+                reset();
+            }
+        }, period, period, unit);
+    }
+
+    public synchronized void stopReporting() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+    }
+
+    // Stops reporting and unregisters the MBean
+    @Override
+    public void close() throws JMException {
+        stopReporting();
+        unregisterMBean();
+    }
+
+    // Multi-line text dump of every metric
+    public String format() {
+        return String.format("Queries: %d searches, %d cache hits, %d rejected, %d unreachable%n"
+                        + "Per search: %.1f settled nodes, %.1f relaxed edges, heap %.1f inserts / %.1f decreases / %.1f polls%n"
+                        + "Mean phase times: search %.1f us, reconstruction %.1f us, result %.1f us%n"
+                        + "Latency: p50 %.1f us, p90 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us",
+                getSearches(), getCacheHits(), getRejectedQueries(), getUnreachableQueries(),
+                getSettledNodesPerSearch(), getRelaxedEdgesPerSearch(), getHeapInsertionsPerSearch(),
+                getHeapDecreasesPerSearch(), getHeapPollsPerSearch(), getMeanSearchMicros(),
+                getMeanReconstructionMicros(), getMeanInstructionMicros(), getLatencyP50Micros(),
+                getLatencyP90Micros(), getLatencyP99Micros(), getLatencyP999Micros(), getMaxLatencyMicros());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("QueryMetrics{searches=%d, cache hits=%d, rejected=%d, p50=%.1f us, p99=%.1f us}",
+                getSearches(), getCacheHits(), getRejectedQueries(), getLatencyP50Micros(), getLatencyP99Micros());
+    }
+}
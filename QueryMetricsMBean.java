@@ -0,0 +1,39 @@
+// JMX view of a QueryMetrics (see QueryMetrics.registerMBean). Times are in microseconds;
+// per-search values are means over the searches recorded since the last reset.
+public interface QueryMetricsMBean {
+    long getSearches();
+
+    long getCacheHits();
+
+    long getRejectedQueries();
+
+    long getUnreachableQueries();
+
+    double getSettledNodesPerSearch();
+
+    double getRelaxedEdgesPerSearch();
+
+    double getHeapInsertionsPerSearch();
+
+    double getHeapDecreasesPerSearch();
+
+    double getHeapPollsPerSearch();
+
+    double getMeanSearchMicros();
+
+    double getMeanReconstructionMicros();
+
+    double getMeanInstructionMicros();
+
+    double getLatencyP50Micros();
+
+    double getLatencyP90Micros();
+
+    double getLatencyP99Micros();
+
+    double getLatencyP999Micros();
+
+    double getMaxLatencyMicros();
+
+    void reset();
+}
@@ -0,0 +1,705 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Bounded cache of fixed-hour route results keyed by (start, end, hour of day), for
+// workloads that repeat the same trips (commutes). Attach it with Pathfinder.setRouteCache;
+// lookups are lock-free and any number of query threads may share one cache.
+//
+// Eviction follows W-TinyLFU: new routes enter a small LRU window, and a route leaving the
+// window only displaces the least recently used route of the main area (a segmented LRU that
+// protects routes requested more than once) if it was requested more often recently. Request
+// counts are estimated by a count-min sketch whose counters are halved periodically, so
+// one-off trips cannot flush popular commutes. Entries also expire a fixed time after they
+// were computed.
+//
+// Entries are invalidated per traffic change (see TrafficListener), and only when the change
+// can affect them. A change at another hour never does; a change to an edge of the route does.
+// Elsewhere only a factor drop can make a competing route faster, and such a route must take
+// less than D, the cached travel time. With c the graph's lower bound on travel time per unit
+// of straight-line distance (the A* bound), a route through lowered edges takes at least c
+// times the straight-line distances from the start to the first, between consecutive ones
+// and from the last to the end, plus their new travel times. Each entry keeps the drops near
+// enough to its trip to matter and is only invalidated once some chain of them could beat D,
+// so drops far from the trip keep it cached. Unreachable pairs stay unreachable.
+public class RouteCache implements TrafficListener {
+    // Queue an entry is linked into; NONE once it has been removed
+    private static final byte NONE = 0;
+    private static final byte WINDOW = 1;
+    private static final byte PROBATION = 2;
+    private static final byte PROTECTED = 3;
+    private static final int MAX_RECENT_CHANGES = 64;
+    // Factor drops recorded per entry before it is invalidated rather than checked further
+    private static final int MAX_DROPS = 16;
+
+    private final long timeToLiveNanos;
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    // Eviction order, guarded by policyLock: three LRU lists, each a ring through a sentinel
+    // with the most recently used entry first
+    private final ReentrantLock policyLock = new ReentrantLock();
+    private final Entry window = new Entry();
+    private final Entry probation = new Entry();
+    private final Entry protectedRoutes = new Entry();
+    private final int maxWindow;
+    private final int maxMain;
+    private final int maxProtected;
+    private int windowSize;
+    private int probationSize;
+    private int protectedSize;
+    private final FrequencySketch sketch;
+
+    // Road network the entries were computed on, and a traffic version all of them are valid
+    // for (-1 while a change is being processed)
+    private volatile CompactGraph network;
+    private volatile long checkedVersion = -1;
+    // The latest changes, oldest first and each following on from the previous one, so that
+    // routes searched on an earlier version can still be cached; guarded by the monitor
+    private final ArrayDeque<Changes> recentChanges = new ArrayDeque<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public RouteCache(int maximumSize, long timeToLive, TimeUnit unit) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("Maximum size must be positive.");
+        }
+        if (timeToLive <= 0) {
+            throw new IllegalArgumentException("Time to live must be positive.");
+        }
+        this.timeToLiveNanos = unit.toNanos(timeToLive);
+        this.maxWindow = Math.max(1, maximumSize / 100);
+        this.maxMain = maximumSize - maxWindow;
+        this.maxProtected = (int) (maxMain * 0.8);
+        this.sketch = new FrequencySketch(maximumSize);
+        for (Entry head : new Entry[] { window, probation, protectedRoutes }) {
+            head.previous = head;
+            head.next = head;
+        }
+    }
+
+    // The cached result of the query on graph, or null
+    PathResult get(CompactGraph graph, int start, int end, int hourOfDay) {
+        checkNetwork(graph);
+        // Read before the entry: if this version's changes have been processed, so has the
+        // removal of every entry they invalidated
+        long checked = checkedVersion;
+        long version = graph.getTrafficVersion();
+        Entry entry = entries.get(new Key(start, end, hourOfDay));
+        if (entry == null || (entry.version != version && checked != version)) {
+            misses.increment();
+            return null;
+        }
+        if (System.nanoTime() - entry.expiresAt >= 0) {
+            if (remove(entry)) {
+                expirations.increment();
+            }
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        // Reordering is best effort: under contention a hit is not recorded rather than waited for
+        if (policyLock.tryLock()) {
+            try {
+                onAccess(entry);
+            } finally {
+                policyLock.unlock();
+            }
+        }
+        return entry.result;
+    }
+
+    // Caches a result searched on graph; returns the copy that is handed out on later hits
+    PathResult put(CompactGraph graph, int start, int end, int hourOfDay, PathResult result) {
+        checkNetwork(graph);
+        long version = graph.getTrafficVersion();
+        CompactGraph shared = network;
+        if (shared == null || !graph.hasSameNetwork(shared)) {
+            shared = graph; // The network was replaced meanwhile; the entry is cleared with it
+        }
+        Entry entry = new Entry(new Key(start, end, hourOfDay), graph, shared, result, version,
+                System.nanoTime() + timeToLiveNanos);
+        policyLock.lock();
+        try {
+            sketch.increment(entry.key.hashCode());
+            Entry replaced = entries.put(entry.key, entry);
+            if (replaced != null) {
+                unlink(replaced);
+            }
+            link(WINDOW, entry);
+            evict();
+        } finally {
+            policyLock.unlock();
+        }
+        // Traffic changes processed since the search started may have missed this entry
+        if (checkedVersion != version) {
+            synchronized (this) {
+                if (!catchUp(entry)) {
+                    remove(entry);
+                }
+            }
+        }
+        return entry.result;
+    }
+
+    // Checks an entry against the changes processed after its version; false if one
+    // invalidates it or they are no longer all recorded. Later versions are checked by the
+    // changes still to come. Called holding the monitor.
+    private boolean catchUp(Entry entry) {
+        long checked = checkedVersion;
+        if (entry.version >= checked) {
+            return true;
+        }
+        boolean found = false;
+        for (Changes changes : recentChanges) {
+            found |= changes.since == entry.version;
+            if (found && entry.isInvalidatedBy(changes)) {
+                invalidations.increment();
+                return false;
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public synchronized void trafficChanged(CompactGraph graph, TrafficUpdate previous) {
+        CompactGraph current = network;
+        if (current == null || !graph.hasSameNetwork(current)) {
+            return; // The next query on this network starts over (see checkNetwork)
+        }
+        long since = checkedVersion;
+        checkedVersion = -1;
+        Changes changes = new Changes(graph, previous, since);
+        if (recentChanges.size() == MAX_RECENT_CHANGES) {
+            recentChanges.removeFirst();
+        }
+        recentChanges.addLast(changes);
+        if (changes.size() > 0) {
+            for (Entry entry : entries.values()) {
+                if (entry.isInvalidatedBy(changes) && remove(entry)) {
+                    invalidations.increment();
+                }
+            }
+        }
+        checkedVersion = graph.getTrafficVersion();
+    }
+
+    public synchronized void clear() {
+        recentChanges.clear();
+        policyLock.lock();
+        try {
+            entries.clear();
+            for (Entry head : new Entry[] { window, probation, protectedRoutes }) {
+                for (Entry entry = head.next; entry != head; entry = entry.next) {
+                    entry.queue = NONE;
+                }
+                head.previous = head;
+                head.next = head;
+            }
+            windowSize = 0;
+            probationSize = 0;
+            protectedSize = 0;
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public Statistics getStatistics() {
+        return new Statistics(entries.size(), hits.sum(), misses.sum(), evictions.sum(), expirations.sum(),
+                invalidations.sum());
+    }
+
+    // Entries are only valid for the network they were computed on; a new one (e.g. after
+    // Graph topology changes) empties the cache
+    private void checkNetwork(CompactGraph graph) {
+        CompactGraph current = network;
+        if (current != null && graph.hasSameNetwork(current)) {
+            return;
+        }
+        synchronized (this) {
+            if (network == null || !graph.hasSameNetwork(network)) {
+                clear();
+                network = graph;
+                checkedVersion = graph.getTrafficVersion();
+            }
+        }
+    }
+
+    private boolean remove(Entry entry) {
+        if (!entries.remove(entry.key, entry)) {
+            return false;
+        }
+        policyLock.lock();
+        try {
+            unlink(entry);
+        } finally {
+            policyLock.unlock();
+        }
+        return true;
+    }
+
+    // --- Eviction policy (policyLock held) ---
+
+    private void onAccess(Entry entry) {
+        if (entry.queue == NONE) {
+            return;
+        }
+        sketch.increment(entry.key.hashCode());
+        byte queue = entry.queue;
+        unlink(entry);
+        if (queue == WINDOW) {
+            link(WINDOW, entry);
+        } else {
+            // A second request promotes a probation entry; the protected area's least recently
+            // used entries go back on probation
+            link(PROTECTED, entry);
+            while (protectedSize > maxProtected) {
+                Entry demoted = protectedRoutes.previous;
+                unlink(demoted);
+                link(PROBATION, demoted);
+            }
+        }
+    }
+
+    // Moves entries from the window into the main area while it has room; then each one
+    // leaving the window competes with the main area's next victim
+    private void evict() {
+        while (windowSize > maxWindow) {
+            Entry candidate = window.previous;
+            unlink(candidate);
+            if (probationSize + protectedSize < maxMain) {
+                link(PROBATION, candidate);
+                continue;
+            }
+            Entry victim = probationSize > 0 ? probation.previous : protectedSize > 0 ? protectedRoutes.previous : null;
+            if (victim != null && sketch.frequency(candidate.key.hashCode()) > sketch.frequency(victim.key.hashCode())) {
+                evict(victim);
+                link(PROBATION, candidate);
+            } else {
+                evict(candidate);
+            }
+        }
+    }
+
+    private void evict(Entry entry) {
+        unlink(entry);
+        if (entries.remove(entry.key, entry)) {
+            evictions.increment();
+        }
+    }
+
+    private void link(byte queue, Entry entry) {
+        Entry head;
+        if (queue == WINDOW) {
+            head = window;
+            windowSize++;
+        } else if (queue == PROBATION) {
+            head = probation;
+            probationSize++;
+        } else {
+            head = protectedRoutes;
+            protectedSize++;
+        }
+        entry.queue = queue;
+        entry.previous = head;
+        entry.next = head.next;
+        head.next.previous = entry;
+        head.next = entry;
+    }
+
+    private void unlink(Entry entry) {
+        if (entry.queue == NONE) {
+            return;
+        }
+        if (entry.queue == WINDOW) {
+            windowSize--;
+        } else if (entry.queue == PROBATION) {
+            probationSize--;
+        } else {
+            protectedSize--;
+        }
+        entry.previous.next = entry.next;
+        entry.next.previous = entry.previous;
+        entry.previous = null;
+        entry.next = null;
+        entry.queue = NONE;
+    }
+
+    private static final class Key {
+        final int start;
+        final int end;
+        final int hourOfDay;
+        private final int hash;
+
+        Key(int start, int end, int hourOfDay) {
+            this.start = start;
+            this.end = end;
+            this.hourOfDay = hourOfDay;
+            long packed = ((long) start << 32) | (end & 0xFFFFFFFFL);
+            long mixed = (packed * 0x9E3779B97F4A7C15L + hourOfDay) * 0xBF58476D1CE4E5B9L;
+            this.hash = (int) (mixed >>> 32);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return start == key.start && end == key.end && hourOfDay == key.hourOfDay;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Entry {
+        final Key key;
+        final PathResult result;
+        final long version;
+        final long expiresAt;
+
+        // What a traffic change is checked against: the route's CSR edges (sorted; every
+        // parallel edge between consecutive nodes), its travel time (0 if unreachable, which
+        // nothing can change), the end points, and the A* bound of the graph it was searched
+        // on, which every edge not lowered since still respects
+        final int[] routeEdges;
+        final double travelTime;
+        final double minCostPerUnitDistance;
+        final double startX;
+        final double startY;
+        final double endX;
+        final double endY;
+        // Factor drops at this hour since the entry was cached that a faster route could use,
+        // as tail x, tail y, head x, head y and new travel time; guarded by the cache's monitor
+        double[] drops;
+        int dropCount;
+
+        Entry previous;
+        Entry next;
+        byte queue;
+
+        // Sentinel
+        Entry() {
+            this.key = null;
+            this.result = null;
+            this.version = 0;
+            this.expiresAt = 0;
+            this.routeEdges = null;
+            this.travelTime = 0;
+            this.minCostPerUnitDistance = 0;
+            this.startX = 0;
+            this.startY = 0;
+            this.endX = 0;
+            this.endY = 0;
+        }
+
+        Entry(Key key, CompactGraph graph, CompactGraph network, PathResult result, long version, long expiresAt) {
+            this.key = key;
+            // Hits share the result. A route of the query engines is rebound to the cache's graph
+            // of the same network (names and topology are shared by all traffic versions), so it
+            // does not keep the version it was found on reachable and still builds its path and
+            // instructions only when asked; other results get unmodifiable copies of their lists
+            int[] edges = result.getEdges();
+            this.result = edges != null
+                    ? new PathResult(network, key.start, edges, edges.length, result.getTotalTime(), result.getSettledNodes())
+                    : new PathResult(List.copyOf(result.getPath()), result.getTotalTime(),
+                            List.copyOf(result.getInstructions()), result.getSettledNodes());
+            this.version = version;
+            this.expiresAt = expiresAt;
+            this.routeEdges = routeEdges(graph, result);
+            this.travelTime = !result.hasRoute() ? 0.0 : result.getTotalTime();
+            this.minCostPerUnitDistance = graph.getMinCostPerUnitDistance();
+            this.startX = graph.getX(key.start);
+            this.startY = graph.getY(key.start);
+            this.endX = graph.getX(key.end);
+            this.endY = graph.getY(key.end);
+        }
+
+        private static int[] routeEdges(CompactGraph graph, PathResult result) {
+            if (result.getEdges() != null) {
+                int[] edges = result.getEdges().clone();
+                Arrays.sort(edges);
+                return edges;
+            }
+            List<String> path = result.getPath();
+            int[] edges = new int[Math.max(path.size() - 1, 0)];
+            int count = 0;
+            for (int i = 0; i + 1 < path.size(); i++) {
+                int u = graph.indexOf(path.get(i));
+                int v = graph.indexOf(path.get(i + 1));
+                for (int e = graph.firstEdge(u); e < graph.endEdge(u); e++) {
+                    if (graph.getTarget(e) == v) {
+                        if (count == edges.length) {
+                            edges = Arrays.copyOf(edges, count * 2);
+                        }
+                        edges[count++] = e;
+                    }
+                }
+            }
+            edges = Arrays.copyOf(edges, count);
+            Arrays.sort(edges);
+            return edges;
+        }
+
+        boolean isInvalidatedBy(Changes changes) {
+            int hour = key.hourOfDay;
+            for (int i = changes.firstOfHour[hour]; i < changes.firstOfHour[hour + 1]; i++) {
+                if (Arrays.binarySearch(routeEdges, changes.edges[i]) >= 0) {
+                    return true;
+                }
+                if (changes.lowered[i] && addDrop(changes.tailX[i], changes.tailY[i], changes.headX[i],
+                        changes.headY[i], changes.travelTimes[i])) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // Records a lowered edge a faster route could use; true if some chain of the recorded
+        // ones could now form a route faster than travelTime (or there are too many to check)
+        private boolean addDrop(double tailX, double tailY, double headX, double headY, double travelTimeAfter) {
+            // Straight-line distance times the bound is a lower bound on the travel time between
+            // two points, so a route through this edge takes at least the sum of these
+            double startSide = minCostPerUnitDistance * Math.hypot(tailX - startX, tailY - startY) + travelTimeAfter;
+            double endSide = travelTimeAfter + minCostPerUnitDistance * Math.hypot(endX - headX, endY - headY);
+            if (startSide >= travelTime || endSide >= travelTime) {
+                return false;
+            }
+            if (dropCount == MAX_DROPS) {
+                return true;
+            }
+            if (drops == null) {
+                drops = new double[MAX_DROPS * 5];
+            }
+            int offset = dropCount++ * 5;
+            drops[offset] = tailX;
+            drops[offset + 1] = tailY;
+            drops[offset + 2] = headX;
+            drops[offset + 3] = headY;
+            drops[offset + 4] = travelTimeAfter;
+            return fastestChain() < travelTime;
+        }
+
+        // Lower bound on a route through one or more recorded drops: Dijkstra over the drops,
+        // with straight-line bounds between the start, the drops and the end
+        private double fastestChain() {
+            double[] arrival = new double[dropCount];
+            boolean[] settled = new boolean[dropCount];
+            for (int i = 0; i < dropCount; i++) {
+                int offset = i * 5;
+                arrival[i] = minCostPerUnitDistance * Math.hypot(drops[offset] - startX, drops[offset + 1] - startY)
+                        + drops[offset + 4];
+            }
+            double best = Double.POSITIVE_INFINITY;
+            for (int round = 0; round < dropCount; round++) {
+                int u = -1;
+                for (int i = 0; i < dropCount; i++) {
+                    if (!settled[i] && (u < 0 || arrival[i] < arrival[u])) {
+                        u = i;
+                    }
+                }
+                if (arrival[u] >= best) {
+                    break;
+                }
+                settled[u] = true;
+                double headX = drops[u * 5 + 2];
+                double headY = drops[u * 5 + 3];
+                best = Math.min(best, arrival[u] + minCostPerUnitDistance * Math.hypot(endX - headX, endY - headY));
+                for (int i = 0; i < dropCount; i++) {
+                    int offset = i * 5;
+                    double via = arrival[u] + minCostPerUnitDistance
+                            * Math.hypot(drops[offset] - headX, drops[offset + 1] - headY) + drops[offset + 4];
+                    if (!settled[i] && via < arrival[i]) {
+                        arrival[i] = via;
+                    }
+                }
+            }
+            return best;
+        }
+    }
+
+    // The factor changes of one update, grouped by hour (those of hour h at positions
+    // firstOfHour[h] .. firstOfHour[h + 1] - 1), with their CSR edges, new travel times and
+    // end points, applied to traffic version since
+    private static final class Changes {
+        final long since;
+        final int[] firstOfHour = new int[CompactGraph.HOURS_PER_DAY + 1];
+        final int[] edges;
+        final boolean[] lowered;
+        final double[] travelTimes;
+        final double[] tailX;
+        final double[] tailY;
+        final double[] headX;
+        final double[] headY;
+
+        Changes(CompactGraph graph, TrafficUpdate previous, long since) {
+            this.since = since;
+            int count = 0;
+            for (int i = 0; i < previous.size(); i++) {
+                if (factorOf(graph, previous, i) != previous.getFactor(i)) {
+                    firstOfHour[previous.getHourOfDay(i) + 1]++;
+                    count++;
+                }
+            }
+            for (int hour = 0; hour < CompactGraph.HOURS_PER_DAY; hour++) {
+                firstOfHour[hour + 1] += firstOfHour[hour];
+            }
+            this.edges = new int[count];
+            this.lowered = new boolean[count];
+            this.travelTimes = new double[count];
+            this.tailX = new double[count];
+            this.tailY = new double[count];
+            this.headX = new double[count];
+            this.headY = new double[count];
+            int[] next = Arrays.copyOf(firstOfHour, CompactGraph.HOURS_PER_DAY);
+            for (int i = 0; i < previous.size(); i++) {
+                double factor = factorOf(graph, previous, i);
+                if (factor == previous.getFactor(i)) {
+                    continue;
+                }
+                int hour = previous.getHourOfDay(i);
+                int slot = next[hour]++;
+                int edge = graph.positionOf(previous.getEdgeId(i));
+                int tail = graph.tailOf(edge);
+                int head = graph.getTarget(edge);
+                edges[slot] = edge;
+                lowered[slot] = factor < previous.getFactor(i);
+                travelTimes[slot] = graph.getTravelTime(edge, hour);
+                tailX[slot] = graph.getX(tail);
+                tailY[slot] = graph.getY(tail);
+                headX[slot] = graph.getX(head);
+                headY[slot] = graph.getY(head);
+            }
+        }
+
+        private static double factorOf(CompactGraph graph, TrafficUpdate previous, int i) {
+            return graph.getTrafficFactor(graph.positionOf(previous.getEdgeId(i)), previous.getHourOfDay(i));
+        }
+
+        int size() {
+            return edges.length;
+        }
+    }
+
+    // Count-min sketch of recent request counts: four counters per key (capped at 15), the
+    // estimate is the smallest. All counters are halved after every 10 * maximumSize
+    // increments so that old popularity fades.
+    private static final class FrequencySketch {
+        private static final int[] SEEDS = { 0x97CB3127, 0xB492B66F, 0x9AE16A3B, 0x85EBCA6B };
+
+        private final byte[] counters;
+        private final int mask;
+        private final long sampleSize;
+        private long additions;
+
+        FrequencySketch(int maximumSize) {
+            int length = Integer.highestOneBit(Math.min(maximumSize, 1 << 24) * 4 - 1) << 1;
+            this.counters = new byte[length];
+            this.mask = length - 1;
+            this.sampleSize = 10L * maximumSize;
+        }
+
+        void increment(int hash) {
+            boolean added = false;
+            for (int seed : SEEDS) {
+                int index = index(hash, seed);
+                if (counters[index] < 15) {
+                    counters[index]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions == sampleSize) {
+                for (int i = 0; i < counters.length; i++) {
+                    counters[i] >>= 1;
+                }
+                additions /= 2;
+            }
+        }
+
+        int frequency(int hash) {
+            int frequency = 15;
+            for (int seed : SEEDS) {
+                frequency = Math.min(frequency, counters[index(hash, seed)]);
+            }
+            return frequency;
+        }
+
+        private int index(int hash, int seed) {
+            int h = (hash + seed) * seed;
+            return (h ^ (h >>> 16)) & mask;
+        }
+    }
+
+    // Counters since the cache was created
+    public static final class Statistics {
+        private final int size;
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long expirations;
+        private final long invalidations;
+
+        Statistics(int size, long hits, long misses, long evictions, long expirations, long invalidations) {
+            this.size = size;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.expirations = expirations;
+            this.invalidations = invalidations;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        // Fraction of lookups answered from the cache
+        public double getHitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0.0 : (double) hits / lookups;
+        }
+
+        // Entries dropped to stay within the maximum size (including rejected new routes)
+        public long getEvictions() {
+            return evictions;
+        }
+
+        // Entries dropped because their time to live ran out
+        public long getExpirations() {
+            return expirations;
+        }
+
+        // Entries dropped because a traffic change could affect them
+        public long getInvalidations() {
+            return invalidations;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("RouteCache{size=%d, hits=%d, misses=%d, hit rate=%.1f%%, evictions=%d, "
+                            + "expirations=%d, invalidations=%d}",
+                    size, hits, misses, getHitRate() * 100, evictions, expirations, invalidations);
+        }
+    }
+}
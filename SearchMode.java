@@ -0,0 +1,14 @@
+// Search strategy used by Pathfinder for a single query
+public enum SearchMode {
+    // Plain Dijkstra: explores uniformly in all directions
+    DIJKSTRA,
+    // A*: Dijkstra guided towards the target by a straight-line lower bound on the remaining travel time
+    ASTAR,
+    // ALT: A* with landmark/triangle-inequality lower bounds (see LandmarkIndex)
+    ALT,
+    // Bidirectional Dijkstra: forward search from the start and backward search from the end
+    // until they meet (fixed hour only; departure-time queries fall back to DIJKSTRA)
+    BIDIRECTIONAL,
+    // BIDIRECTIONAL with the forward and backward searches on separate threads
+    BIDIRECTIONAL_PARALLEL
+}
@@ -0,0 +1,106 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+// Reusable per-thread scratch space for a single-source search over a CompactGraph.
+// Distances and predecessors are only valid for nodes stamped with the current
+// generation, so starting a new search is O(1) instead of O(V).
+public class SearchState {
+    // Settled stamps are read by the opposite thread of a parallel bidirectional search
+    private static final VarHandle SETTLED = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private double[] distances = new double[0];
+    private int[] predecessors = new int[0];
+    private int[] stamps = new int[0];
+    private int[] settledStamps = new int[0];
+    private int generation;
+    private final IndexedMinHeap heap = new IndexedMinHeap();
+    // Work and phase end times of the current search, reported by QueryMetrics
+    private long relaxedEdges;
+    private long searchDoneNanos;
+    private long routeDoneNanos;
+
+    // Prepares the state for a new search over a graph with nodeCount nodes
+    public void reset(int nodeCount) {
+        if (stamps.length < nodeCount) {
+            distances = Arrays.copyOf(distances, nodeCount);
+            predecessors = Arrays.copyOf(predecessors, nodeCount);
+            stamps = Arrays.copyOf(stamps, nodeCount);
+            settledStamps = Arrays.copyOf(settledStamps, nodeCount);
+        }
+        heap.ensureCapacity(nodeCount);
+        heap.clear();
+        relaxedEdges = 0;
+        searchDoneNanos = 0;
+        routeDoneNanos = 0;
+        generation++;
+        if (generation == 0) {
+            // Stamp counter wrapped around: old stamps could collide, so wipe them once
+            Arrays.fill(stamps, 0);
+            Arrays.fill(settledStamps, 0);
+            generation = 1;
+        }
+    }
+
+    public IndexedMinHeap getHeap() {
+        return heap;
+    }
+
+    public boolean isReached(int node) {
+        return stamps[node] == generation;
+    }
+
+    // Tentative (or, once settled, final) distance; infinity for unreached nodes
+    public double getDistance(int node) {
+        return stamps[node] == generation ? distances[node] : Double.POSITIVE_INFINITY;
+    }
+
+    // Predecessor record on the current best path (a node or an edge, depending on the
+    // search), or -1 for the source/unreached nodes
+    public int getPredecessor(int node) {
+        return stamps[node] == generation ? predecessors[node] : -1;
+    }
+
+    // Marks the node's distance and predecessor as final. The write is volatile, so another
+    // thread that sees isSettled(node) also sees them.
+    public void markSettled(int node) {
+        SETTLED.setVolatile(settledStamps, node, generation);
+    }
+
+    public boolean isSettled(int node) {
+        return (int) SETTLED.getVolatile(settledStamps, node) == generation;
+    }
+
+    public void update(int node, double distance, int predecessor) {
+        stamps[node] = generation;
+        distances[node] = distance;
+        predecessors[node] = predecessor;
+    }
+
+    // Edges scanned from settled nodes
+    public void countRelaxed(int edges) {
+        relaxedEdges += edges;
+    }
+
+    public long getRelaxedEdges() {
+        return relaxedEdges;
+    }
+
+    // Called when the search loop ends, and when the route (before its instructions) is built
+    public void markSearchDone() {
+        searchDoneNanos = System.nanoTime();
+    }
+
+    public void markRouteDone() {
+        routeDoneNanos = System.nanoTime();
+    }
+
+    // System.nanoTime() of those points, or 0 if not reached
+    public long getSearchDoneNanos() {
+        return searchDoneNanos;
+    }
+
+    public long getRouteDoneNanos() {
+        return routeDoneNanos;
+    }
+}
@@ -0,0 +1,202 @@
+import java.util.Arrays;
+import java.util.Collections;
+
+// Travel times from one source to every node at a fixed hour, with each node's last edge on
+// a shortest route to it (DeltaStepping.compute). Routes to any node are read off the tree
+// without searching again. After traffic factor changes, repair brings the tree up to date
+// by searching only where distances can have changed.
+public class ShortestPathTree {
+    private static final ThreadLocal<SearchState> SEARCH_STATE = ThreadLocal.withInitial(SearchState::new);
+
+    private CompactGraph graph;
+    private final int source;
+    private final int hourOfDay;
+    private final double[] distances;
+    private final int[] predecessorEdges;
+
+    ShortestPathTree(CompactGraph graph, int source, int hourOfDay, double[] distances, int[] predecessorEdges) {
+        this.graph = graph;
+        this.source = source;
+        this.hourOfDay = hourOfDay;
+        this.distances = distances;
+        this.predecessorEdges = predecessorEdges;
+    }
+
+    public CompactGraph getGraph() {
+        return graph;
+    }
+
+    public int getSource() {
+        return source;
+    }
+
+    public int getHourOfDay() {
+        return hourOfDay;
+    }
+
+    // Travel time in minutes from the source, infinity if the node cannot be reached
+    public double getDistance(int node) {
+        return distances[node];
+    }
+
+    public boolean isReachable(int node) {
+        return distances[node] != Double.POSITIVE_INFINITY;
+    }
+
+    // CSR edge into the node on a shortest route, or -1 for the source and unreachable nodes
+    public int getPredecessorEdge(int node) {
+        return predecessorEdges[node];
+    }
+
+    // Travel times of all nodes, indexed by node
+    public double[] getDistances() {
+        return distances.clone();
+    }
+
+    // Number of nodes the source can reach, itself included
+    public int getReachedCount() {
+        int count = 0;
+        for (double distance : distances) {
+            if (distance != Double.POSITIVE_INFINITY) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Shortest route from the source to the target, as Pathfinder.findPath would return it
+    // (empty if the target cannot be reached)
+    public PathResult getPath(int target) {
+        if (target < 0 || target >= distances.length) {
+            throw new IllegalArgumentException("Node index " + target + " is out of range.");
+        }
+        if (!isReachable(target)) {
+            return new PathResult(Collections.emptyList(), 0.0, Collections.emptyList());
+        }
+        int[] edges = new int[16];
+        int count = 0;
+        for (int node = target, edge; (edge = predecessorEdges[node]) != -1; node = graph.tailOf(edge)) {
+            if (count == edges.length) {
+                edges = Arrays.copyOf(edges, count * 2);
+            }
+            edges[count++] = edge;
+        }
+        for (int i = 0, j = count - 1; i < j; i++, j--) {
+            int swap = edges[i];
+            edges[i] = edges[j];
+            edges[j] = swap;
+        }
+        return new PathResult(graph, source, edges, count, distances[target], 0);
+    }
+
+    // Updates the tree in place for a later traffic version of the same network, given the
+    // changed edges (a published TrafficUpdate, or the previous factors a TrafficListener
+    // receives); entries for other hours are ignored. Returns the number of nodes whose
+    // distance was recomputed, which grows with the change rather than with the graph.
+    //
+    // Ramalingam-Reps style: a tree edge that got slower invalidates the subtree below it,
+    // whose nodes are seeded from their best incoming edge outside it; the head of an edge
+    // that now gives a shorter route is seeded with it. One Dijkstra search from the seeds
+    // then follows improvements only, so it stops where the old distances are still right.
+    // Not safe while other threads read the tree.
+    public int repair(CompactGraph updated, TrafficUpdate changes) {
+        if (!updated.hasSameNetwork(graph)) {
+            throw new IllegalArgumentException("Graph is not a traffic version of the tree's road network.");
+        }
+        graph = updated;
+        SearchState state = SEARCH_STATE.get();
+        state.reset(distances.length);
+        IndexedMinHeap heap = state.getHeap();
+
+        // Subtrees below slower tree edges, collected breadth-first; state.isReached marks them
+        int[] subtree = new int[16];
+        int count = 0;
+        for (int i = 0; i < changes.size(); i++) {
+            if (changes.getHourOfDay(i) != hourOfDay) {
+                continue;
+            }
+            int edge = graph.positionOf(changes.getEdgeId(i));
+            int head = graph.getTarget(edge);
+            if (predecessorEdges[head] != edge || state.isReached(head)
+                    || distances[graph.tailOf(edge)] + graph.getTravelTime(edge, hourOfDay) <= distances[head]) {
+                continue;
+            }
+            state.update(head, Double.POSITIVE_INFINITY, -1);
+            subtree = grow(subtree, count + 1);
+            subtree[count++] = head;
+            for (int next = count - 1; next < count; next++) {
+                int u = subtree[next];
+                for (int e = graph.firstEdge(u), last = graph.endEdge(u); e < last; e++) {
+                    int v = graph.getTarget(e);
+                    if (predecessorEdges[v] == e && !state.isReached(v)) {
+                        state.update(v, Double.POSITIVE_INFINITY, -1);
+                        subtree = grow(subtree, count + 1);
+                        subtree[count++] = v;
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            distances[subtree[i]] = Double.POSITIVE_INFINITY;
+            predecessorEdges[subtree[i]] = -1;
+        }
+
+        // Seeds: each invalidated node from its best incoming edge with a known distance...
+        for (int i = 0; i < count; i++) {
+            int v = subtree[i];
+            for (int slot = graph.firstInEdge(v), last = graph.endInEdge(v); slot < last; slot++) {
+                int edge = graph.getInEdge(slot);
+                double distance = distances[graph.getSource(slot)] + graph.getTravelTime(edge, hourOfDay);
+                if (distance < distances[v]) {
+                    distances[v] = distance;
+                    predecessorEdges[v] = edge;
+                }
+            }
+            if (distances[v] != Double.POSITIVE_INFINITY) {
+                heap.insertOrDecrease(v, distances[v]);
+            }
+        }
+        // ...and the head of every changed edge that now gives a shorter route
+        for (int i = 0; i < changes.size(); i++) {
+            if (changes.getHourOfDay(i) == hourOfDay) {
+                int edge = graph.positionOf(changes.getEdgeId(i));
+                relax(heap, edge, distances[graph.tailOf(edge)]);
+            }
+        }
+
+        int searched = 0;
+        while (!heap.isEmpty()) {
+            int u = heap.poll();
+            searched++;
+            for (int e = graph.firstEdge(u), last = graph.endEdge(u); e < last; e++) {
+                relax(heap, e, distances[u]);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            if (distances[subtree[i]] == Double.POSITIVE_INFINITY) {
+                searched++; // Cut off by the change
+            }
+        }
+        return searched;
+    }
+
+    private void relax(IndexedMinHeap heap, int edge, double tailDistance) {
+        int v = graph.getTarget(edge);
+        double distance = tailDistance + graph.getTravelTime(edge, hourOfDay);
+        if (distance < distances[v]) {
+            distances[v] = distance;
+            predecessorEdges[v] = edge;
+            heap.insertOrDecrease(v, distance);
+        }
+    }
+
+    private static int[] grow(int[] array, int needed) {
+        return needed <= array.length ? array : Arrays.copyOf(array, Math.max(needed, array.length * 2));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ShortestPathTree{source=%d, hour=%d, %d of %d nodes reached}", source, hourOfDay,
+                getReachedCount(), distances.length);
+    }
+}
@@ -0,0 +1,428 @@
+import java.util.Arrays;
+
+// Packed spatial index over a CompactGraph's node coordinates and edge segments, for snapping
+// coordinates (in the graph's x/y plane) to the road network. Nodes and edges each go into a
+// static R-tree: items are sorted along a Hilbert curve through their box centers and packed
+// NODE_SIZE to a leaf, then leaves NODE_SIZE to a parent and so on up to one root, so the
+// whole tree is a few flat arrays and nearby items share pages. Nearest queries walk it best
+// first (smallest box distance first) and stop once the nearest item seen is no farther
+// than every box still queued, touching a few dozen boxes on networks of any size. That holds while
+// edges are short next to the network's extent, as road segments between junctions are; a
+// network of long edges crossing all of it leaves every box overlapping every query point.
+//
+// Geometry only depends on the road network, not its traffic, so one index serves every
+// traffic version of it (CompactGraph.hasSameNetwork).
+public class SpatialIndex {
+    private static final int NODE_SIZE = 16;
+
+    // Best-first queues are reused per thread so queries do not allocate
+    private static final ThreadLocal<NearestQueue> QUEUE = ThreadLocal.withInitial(NearestQueue::new);
+
+    private final CompactGraph graph;
+    // Start node of every CSR edge, for projecting onto its segment
+    private final int[] tails;
+    private final PackedRTree nodeTree;
+    private final PackedRTree edgeTree;
+    private final long preprocessingMillis;
+
+    // Where a point was projected onto its nearest edge: fraction runs from 0 at the edge's
+    // tail to 1 at its head, (x, y) is the projected point and distance its distance from the
+    // query point
+    public static final class EdgeSnap {
+        private final int edge;
+        private final int tail;
+        private final int head;
+        private final double fraction;
+        private final double x;
+        private final double y;
+        private final double distance;
+
+        EdgeSnap(int edge, int tail, int head, double fraction, double x, double y, double distance) {
+            this.edge = edge;
+            this.tail = tail;
+            this.head = head;
+            this.fraction = fraction;
+            this.x = x;
+            this.y = y;
+            this.distance = distance;
+        }
+
+        public int getEdge() {
+            return edge;
+        }
+
+        public int getTail() {
+            return tail;
+        }
+
+        public int getHead() {
+            return head;
+        }
+
+        public double getFraction() {
+            return fraction;
+        }
+
+        public double getX() {
+            return x;
+        }
+
+        public double getY() {
+            return y;
+        }
+
+        public double getDistance() {
+            return distance;
+        }
+
+        // The end of the edge nearer to the projected point
+        public int getNearerNode() {
+            return fraction <= 0.5 ? tail : head;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("EdgeSnap{edge=%d, %d -> %d at %.3f, distance=%.2f}", edge, tail, head, fraction, distance);
+        }
+    }
+
+    private SpatialIndex(CompactGraph graph, int[] tails, PackedRTree nodeTree, PackedRTree edgeTree, long preprocessingMillis) {
+        this.graph = graph;
+        this.tails = tails;
+        this.nodeTree = nodeTree;
+        this.edgeTree = edgeTree;
+        this.preprocessingMillis = preprocessingMillis;
+    }
+
+    public static SpatialIndex build(CompactGraph graph) {
+        long startTime = System.nanoTime();
+        int nodeCount = graph.getNodeCount();
+        double[] nodeBoxes = new double[4 * nodeCount];
+        for (int v = 0; v < nodeCount; v++) {
+            double x = graph.getX(v);
+            double y = graph.getY(v);
+            nodeBoxes[4 * v] = x;
+            nodeBoxes[4 * v + 1] = y;
+            nodeBoxes[4 * v + 2] = x;
+            nodeBoxes[4 * v + 3] = y;
+        }
+
+        int edgeCount = graph.getEdgeCount();
+        int[] tails = new int[edgeCount];
+        double[] edgeBoxes = new double[4 * edgeCount];
+        boolean[] falling = new boolean[edgeCount];
+        for (int u = 0; u < nodeCount; u++) {
+            for (int e = graph.firstEdge(u); e < graph.endEdge(u); e++) {
+                int v = graph.getTarget(e);
+                tails[e] = u;
+                edgeBoxes[4 * e] = Math.min(graph.getX(u), graph.getX(v));
+                edgeBoxes[4 * e + 1] = Math.min(graph.getY(u), graph.getY(v));
+                edgeBoxes[4 * e + 2] = Math.max(graph.getX(u), graph.getX(v));
+                edgeBoxes[4 * e + 3] = Math.max(graph.getY(u), graph.getY(v));
+                falling[e] = (graph.getX(v) - graph.getX(u)) * (graph.getY(v) - graph.getY(u)) < 0;
+            }
+        }
+        return new SpatialIndex(graph, tails, new PackedRTree(nodeBoxes, null, nodeCount),
+                new PackedRTree(edgeBoxes, falling, edgeCount),
+                (System.nanoTime() - startTime) / 1_000_000);
+    }
+
+    public CompactGraph getGraph() {
+        return graph;
+    }
+
+    public long getPreprocessingMillis() {
+        return preprocessingMillis;
+    }
+
+    // Node nearest to (x, y), or -1 if the graph has no nodes; ties go to the lower index
+    public int nearestNode(double x, double y) {
+        return nodeTree.nearest(x, y);
+    }
+
+    // Edge whose segment passes nearest to (x, y), projected onto it, or null if the graph has
+    // no edges. Both directions of a two-way road share a segment, so either may be returned.
+    public EdgeSnap nearestEdge(double x, double y) {
+        int edge = edgeTree.nearest(x, y);
+        if (edge < 0) {
+            return null;
+        }
+        int tail = tails[edge];
+        int head = graph.getTarget(edge);
+        double fraction = projection(edge, x, y);
+        double snappedX = graph.getX(tail) + fraction * (graph.getX(head) - graph.getX(tail));
+        double snappedY = graph.getY(tail) + fraction * (graph.getY(head) - graph.getY(tail));
+        return new EdgeSnap(edge, tail, head, fraction, snappedX, snappedY, Math.hypot(snappedX - x, snappedY - y));
+    }
+
+    // Node a route from or to (x, y) should use: the nearer end of the nearest edge, so that a
+    // point beside a road snaps onto that road rather than onto a closer node of another one
+    // (e.g. the dead end of a parallel street). The nearest node if there are no edges, -1 if
+    // there are no nodes either.
+    public int snap(double x, double y) {
+        EdgeSnap snapped = nearestEdge(x, y);
+        return snapped != null ? snapped.getNearerNode() : nearestNode(x, y);
+    }
+
+    // Position (0 to 1) of the point on the edge's segment nearest to (x, y)
+    private double projection(int edge, double x, double y) {
+        int tail = tails[edge];
+        int head = graph.getTarget(edge);
+        double ax = graph.getX(tail);
+        double ay = graph.getY(tail);
+        double dx = graph.getX(head) - ax;
+        double dy = graph.getY(head) - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        if (lengthSquared == 0) {
+            return 0.0;
+        }
+        return Math.max(0.0, Math.min(1.0, ((x - ax) * dx + (y - ay) * dy) / lengthSquared));
+    }
+
+    // Static R-tree over straight segments (points being segments of length 0), packed in
+    // Hilbert order. Entries are laid out level by level, leaves (one per item) first and the
+    // root last; an entry's box is at boxes[4 * entry .. 4 * entry + 4) as minX, minY, maxX,
+    // maxY. A leaf's segment is the diagonal of its box, so searches measure items from the
+    // tree's own arrays instead of chasing each item's coordinates through the graph.
+    private static final class PackedRTree {
+        private final int itemCount;
+        private final double[] boxes;
+        // Leaf entries: their item; other entries: their first child entry
+        private final int[] refs;
+        // levelEnds[l] is one past the last entry of level l (0 = leaves)
+        private final int[] levelEnds;
+        // Leaf entries whose segment runs from (minX, maxY) to (maxX, minY) rather than from
+        // (minX, minY) to (maxX, maxY); null if all items are points
+        private final boolean[] falling;
+
+        // Item i's box is itemBoxes[4 * i .. 4 * i + 4) and its segment is the box's falling
+        // diagonal if itemFalling[i] is set (itemFalling may be null), its rising one otherwise
+        PackedRTree(double[] itemBoxes, boolean[] itemFalling, int itemCount) {
+            this.itemCount = itemCount;
+            this.falling = itemFalling != null ? new boolean[itemCount] : null;
+            int entries = itemCount;
+            int levels = 1;
+            for (int n = itemCount; n > 1; levels++) {
+                n = (n + NODE_SIZE - 1) / NODE_SIZE;
+                entries += n;
+            }
+            boxes = new double[4 * entries];
+            refs = new int[entries];
+            levelEnds = new int[levels];
+            if (itemCount == 0) {
+                return;
+            }
+
+            double minX = Double.POSITIVE_INFINITY;
+            double minY = Double.POSITIVE_INFINITY;
+            double maxX = Double.NEGATIVE_INFINITY;
+            double maxY = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < itemCount; i++) {
+                minX = Math.min(minX, itemBoxes[4 * i]);
+                minY = Math.min(minY, itemBoxes[4 * i + 1]);
+                maxX = Math.max(maxX, itemBoxes[4 * i + 2]);
+                maxY = Math.max(maxY, itemBoxes[4 * i + 3]);
+            }
+            // Sort items by the Hilbert value of their box center (high bits), then by index
+            double scaleX = maxX > minX ? 65535 / (maxX - minX) : 0.0;
+            double scaleY = maxY > minY ? 65535 / (maxY - minY) : 0.0;
+            long[] order = new long[itemCount];
+            for (int i = 0; i < itemCount; i++) {
+                int hx = (int) ((itemBoxes[4 * i] + itemBoxes[4 * i + 2]) / 2 * scaleX - minX * scaleX);
+                int hy = (int) ((itemBoxes[4 * i + 1] + itemBoxes[4 * i + 3]) / 2 * scaleY - minY * scaleY);
+                order[i] = (hilbert(hx, hy) << 31) | i;
+            }
+            Arrays.sort(order);
+            for (int position = 0; position < itemCount; position++) {
+                int item = (int) (order[position] & Integer.MAX_VALUE);
+                System.arraycopy(itemBoxes, 4 * item, boxes, 4 * position, 4);
+                refs[position] = item;
+                if (falling != null) {
+                    falling[position] = itemFalling[item];
+                }
+            }
+
+            // Each parent covers the next NODE_SIZE entries of the level below
+            levelEnds[0] = itemCount;
+            int levelStart = 0;
+            for (int level = 1; level < levels; level++) {
+                int childEnd = levelEnds[level - 1];
+                int entry = childEnd;
+                for (int child = levelStart; child < childEnd; child += NODE_SIZE, entry++) {
+                    double boxMinX = Double.POSITIVE_INFINITY;
+                    double boxMinY = Double.POSITIVE_INFINITY;
+                    double boxMaxX = Double.NEGATIVE_INFINITY;
+                    double boxMaxY = Double.NEGATIVE_INFINITY;
+                    for (int c = child, end = Math.min(child + NODE_SIZE, childEnd); c < end; c++) {
+                        boxMinX = Math.min(boxMinX, boxes[4 * c]);
+                        boxMinY = Math.min(boxMinY, boxes[4 * c + 1]);
+                        boxMaxX = Math.max(boxMaxX, boxes[4 * c + 2]);
+                        boxMaxY = Math.max(boxMaxY, boxes[4 * c + 3]);
+                    }
+                    boxes[4 * entry] = boxMinX;
+                    boxes[4 * entry + 1] = boxMinY;
+                    boxes[4 * entry + 2] = boxMaxX;
+                    boxes[4 * entry + 3] = boxMaxY;
+                    refs[entry] = child;
+                }
+                levelStart = childEnd;
+                levelEnds[level] = entry;
+            }
+        }
+
+        // Item nearest to (x, y) (the lower index on ties), or -1
+        // if there are none. Boxes are queued by their distance from the point, which nothing
+        // inside them can beat, so the search stops once the nearest item found so far is no
+        // farther than every queued box; boxes farther than it are not queued at all.
+        int nearest(double x, double y) {
+            if (itemCount == 0) {
+                return -1;
+            }
+            if (itemCount == 1) {
+                return refs[0];
+            }
+            NearestQueue queue = QUEUE.get();
+            queue.clear();
+            int best = -1;
+            double bestDistance = Double.POSITIVE_INFINITY;
+            int entry = refs.length - 1;
+            while (true) {
+                int first = refs[entry];
+                int end = Math.min(first + NODE_SIZE, levelEndOf(first));
+                for (int child = first; child < end; child++) {
+                    if (child < itemCount) {
+                        int item = refs[child];
+                        double d = segmentDistanceSquared(child, x, y);
+                        if (d < bestDistance || (d == bestDistance && item < best)) {
+                            best = item;
+                            bestDistance = d;
+                        }
+                    } else {
+                        double d = boxDistanceSquared(child, x, y);
+                        if (d <= bestDistance) {
+                            queue.add(d, child);
+                        }
+                    }
+                }
+                if (queue.isEmpty() || queue.peekKey() > bestDistance) {
+                    return best;
+                }
+                entry = queue.poll();
+            }
+        }
+
+        private int levelEndOf(int entry) {
+            int level = 0;
+            while (levelEnds[level] <= entry) {
+                level++;
+            }
+            return levelEnds[level];
+        }
+
+        private double segmentDistanceSquared(int leaf, double x, double y) {
+            double ax = boxes[4 * leaf];
+            double bx = boxes[4 * leaf + 2];
+            boolean down = falling != null && falling[leaf];
+            double ay = down ? boxes[4 * leaf + 3] : boxes[4 * leaf + 1];
+            double by = down ? boxes[4 * leaf + 1] : boxes[4 * leaf + 3];
+            double dx = bx - ax;
+            double dy = by - ay;
+            double lengthSquared = dx * dx + dy * dy;
+            double t = lengthSquared == 0 ? 0.0 : Math.max(0.0, Math.min(1.0, ((x - ax) * dx + (y - ay) * dy) / lengthSquared));
+            double px = ax + t * dx - x;
+            double py = ay + t * dy - y;
+            return px * px + py * py;
+        }
+
+        private double boxDistanceSquared(int entry, double x, double y) {
+            double dx = Math.max(0.0, Math.max(boxes[4 * entry] - x, x - boxes[4 * entry + 2]));
+            double dy = Math.max(0.0, Math.max(boxes[4 * entry + 1] - y, y - boxes[4 * entry + 3]));
+            return dx * dx + dy * dy;
+        }
+
+        // Position of (x, y) along a Hilbert curve through a 65536 x 65536 grid
+        private static long hilbert(int x, int y) {
+            long d = 0;
+            for (int s = 1 << 15; s > 0; s >>= 1) {
+                int rx = (x & s) != 0 ? 1 : 0;
+                int ry = (y & s) != 0 ? 1 : 0;
+                d += (long) s * s * ((3 * rx) ^ ry);
+                // Rotate the quadrant so the curve stays continuous
+                if (ry == 0) {
+                    if (rx == 1) {
+                        x = s - 1 - x;
+                        y = s - 1 - y;
+                    }
+                    int t = x;
+                    x = y;
+                    y = t;
+                }
+            }
+            return d;
+        }
+    }
+
+    // Binary min-heap of (squared distance, tree entry) pairs
+    private static final class NearestQueue {
+        private double[] keys = new double[64];
+        private int[] values = new int[64];
+        private int size;
+
+        void clear() {
+            size = 0;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        double peekKey() {
+            return keys[0];
+        }
+
+        void add(double key, int value) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (keys[parent] <= key) {
+                    break;
+                }
+                keys[i] = keys[parent];
+                values[i] = values[parent];
+                i = parent;
+            }
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        // Removes and returns the entry with the smallest key
+        int poll() {
+            int top = values[0];
+            double key = keys[--size];
+            int value = values[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && keys[child + 1] < keys[child]) {
+                    child++;
+                }
+                if (keys[child] >= key) {
+                    break;
+                }
+                keys[i] = keys[child];
+                values[i] = values[child];
+                i = child;
+            }
+            keys[i] = key;
+            values[i] = value;
+            return top;
+        }
+    }
+}
@@ -0,0 +1,615 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Streaming ingestion of live traffic factors into TrafficSnapshots.
+// A reader thread parses a text stream with one update per line:
+//     edgeId,hour,factor
+// edgeId is the edge's position in Graph.getAllEdges(); hour is an hour of day (0-23) or a
+// Unix timestamp in seconds, which is mapped to its hour of day in the feed's time zone.
+// Fields may also be separated by spaces or tabs. Blank lines and lines starting with '#'
+// are skipped; malformed lines are counted and dropped.
+// Parsed updates are handed over in fixed-size batches to an apply thread, which once per
+// apply interval merges every waiting batch (a later update of the same edge and hour
+// replaces an earlier one) and publishes the result as a single snapshot. Batches come
+// from a fixed pool, which provides backpressure: when applying falls behind, the reader
+// waits for a free batch and stops reading, which for a socket also throttles the sender.
+public class TrafficFeed implements AutoCloseable {
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+    // Local hours are constant within these UTC intervals (every zone offset is a multiple)
+    private static final int TIME_ZONE_GRANULARITY_SECONDS = 15 * 60;
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+    };
+
+    private final TrafficSnapshots snapshots;
+    private final int edgeCount;
+
+    // Configuration, fixed once the feed is started
+    private int batchSize = 8192;
+    private int maxPendingBatches = 32;
+    private long applyIntervalNanos = TimeUnit.MILLISECONDS.toNanos(100);
+    private ZoneId zone = ZoneId.systemDefault();
+
+    // Batches cycle between the reader (free -> filled) and the apply thread (filled -> free)
+    private BlockingQueue<Batch> free;
+    private BlockingQueue<Batch> filled;
+    private Thread reader;
+    private Thread applier;
+    private ServerSocket server;
+    private volatile InputStream input; // Closed by close() to unblock a waiting read
+    private final CountDownLatch completed = new CountDownLatch(1);
+    private volatile boolean inputDone;
+    private volatile boolean closed;
+    // A read error of the input, or what stopped the apply thread from publishing
+    private volatile Throwable failure;
+
+    // Reader thread state
+    private Batch current;
+    private int position;
+    private long cachedTimeBucket = Long.MIN_VALUE;
+    private int cachedHour;
+
+    // Apply thread state: merged updates of one tick and the index of each (edge, hour)
+    // in them, by open addressing on edgeId * 24 + hour + 1 (0 marks an empty slot). The
+    // key is a long: as an int it overflows on networks of more than about 89 million edges
+    private TrafficUpdate merged;
+    private long[] slotKeys;
+    private int[] slotIndex;
+    private int slotShift;
+
+    // Statistics
+    private final LongAdder updatesRead = new LongAdder();
+    private final LongAdder rejectedLines = new LongAdder();
+    private final LongAdder backpressureNanos = new LongAdder();
+    private volatile long updatesApplied;
+    private volatile long publishCount;
+    private volatile long totalApplyNanos;
+    private volatile long maxApplyNanos;
+    private volatile long maxLatencyNanos;
+    private volatile long startNanos;
+    private volatile long finishNanos;
+
+    // A parsed batch and when the reader handed it over
+    private static final class Batch {
+        final TrafficUpdate updates;
+        long sealedNanos;
+
+        Batch(int size) {
+            this.updates = new TrafficUpdate(size);
+        }
+    }
+
+    // Input for the reader thread
+    private interface Source {
+        void run() throws IOException, InterruptedException;
+    }
+
+    public TrafficFeed(TrafficSnapshots snapshots) {
+        this.snapshots = snapshots;
+        this.edgeCount = snapshots.current().getEdgeCount();
+    }
+
+    // Updates per batch handed from the reader to the apply thread
+    public void setBatchSize(int batchSize) {
+        checkNotStarted();
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1.");
+        }
+        this.batchSize = batchSize;
+    }
+
+    // Batches that may wait for the apply thread before the reader stops reading
+    public void setMaxPendingBatches(int maxPendingBatches) {
+        checkNotStarted();
+        if (maxPendingBatches < 1) {
+            throw new IllegalArgumentException("At least one pending batch is required.");
+        }
+        this.maxPendingBatches = maxPendingBatches;
+    }
+
+    // Time between published snapshots while updates keep arriving
+    public void setApplyInterval(long millis) {
+        checkNotStarted();
+        if (millis < 1) {
+            throw new IllegalArgumentException("Apply interval must be at least 1 ms.");
+        }
+        this.applyIntervalNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    // Time zone for converting timestamps to hours of day (default: the system zone)
+    public void setZone(ZoneId zone) {
+        checkNotStarted();
+        this.zone = zone;
+    }
+
+    // Reads updates from the stream until it ends (see awaitCompletion)
+    public void start(InputStream in) {
+        startThreads(() -> {
+            try (InputStream input = in) {
+                read(input);
+            }
+        });
+    }
+
+    public void start(Path file) throws IOException {
+        start(Files.newInputStream(file));
+    }
+
+    // Accepts connections on the loopback interface, one at a time, and reads updates from
+    // each until it closes, until the feed is closed. Port 0 picks a free port; returns the port.
+    public int listen(int port) throws IOException {
+        checkNotStarted();
+        server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        startThreads(() -> {
+            while (!closed) {
+                try (Socket socket = server.accept()) {
+                    read(socket.getInputStream());
+                } catch (IOException e) {
+                    if (!closed) {
+                        System.err.println("Error: Traffic feed connection failed: " + e.getMessage());
+                    }
+                }
+            }
+        });
+        return server.getLocalPort();
+    }
+
+    // Waits until the input has ended and everything read from it is published. Returns
+    // false on timeout; rethrows a read error of the input, or the exception publishing
+    // failed with (for example one thrown by a TrafficListener), which also ends the feed.
+    public boolean awaitCompletion(long timeout, TimeUnit unit) throws IOException, InterruptedException {
+        boolean done = completed.await(timeout, unit);
+        Throwable cause = failure;
+        if (cause instanceof IOException) {
+            throw (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return done;
+    }
+
+    // Stops reading, publishes what was already read and waits for the threads to finish
+    @Override
+    public void close() {
+        stopReading();
+        if (reader != null) {
+            try {
+                reader.join();
+                LockSupport.unpark(applier);
+                applier.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Makes the reader thread stop, also while it waits for input or for a free batch
+    private void stopReading() {
+        closed = true;
+        if (server != null) {
+            try {
+                server.close();
+            } catch (IOException e) {
+                System.err.println("Error: Could not close traffic feed socket: " + e.getMessage());
+            }
+        }
+        InputStream in = input;
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException e) {
+                System.err.println("Error: Could not close traffic feed input: " + e.getMessage());
+            }
+        }
+        if (reader != null) {
+            reader.interrupt();
+        }
+    }
+
+    public Statistics getStatistics() {
+        long end = finishNanos != 0 ? finishNanos : System.nanoTime();
+        return new Statistics(updatesRead.sum(), rejectedLines.sum(), updatesApplied, publishCount,
+                startNanos == 0 ? 0 : end - startNanos, totalApplyNanos, maxApplyNanos, maxLatencyNanos,
+                backpressureNanos.sum());
+    }
+
+    private void checkNotStarted() {
+        if (reader != null) {
+            throw new IllegalStateException("Traffic feed is already running.");
+        }
+    }
+
+    private void startThreads(Source source) {
+        checkNotStarted();
+        free = new ArrayBlockingQueue<>(maxPendingBatches);
+        filled = new ArrayBlockingQueue<>(maxPendingBatches);
+        for (int i = 0; i < maxPendingBatches; i++) {
+            free.add(new Batch(batchSize));
+        }
+        long mergedCapacity = (long) batchSize * maxPendingBatches;
+        merged = new TrafficUpdate((int) Math.min(mergedCapacity, 1 << 20));
+        int slotBits = Math.max(4, 64 - Long.numberOfLeadingZeros(mergedCapacity * 2 - 1));
+        slotKeys = new long[1 << slotBits];
+        slotIndex = new int[1 << slotBits];
+        slotShift = 64 - slotBits;
+        startNanos = System.nanoTime();
+
+        applier = new Thread(this::applyLoop, "traffic-feed-apply");
+        reader = new Thread(() -> {
+            try {
+                source.run();
+            } catch (InterruptedException e) {
+                // Closed while waiting for a free batch
+            } catch (IOException e) {
+                if (!closed) {
+                    failure = e;
+                    System.err.println("Error: Traffic feed input failed: " + e.getMessage());
+                }
+            } finally {
+                handOff();
+                inputDone = true;
+                LockSupport.unpark(applier);
+            }
+        }, "traffic-feed-reader");
+        applier.setDaemon(true);
+        reader.setDaemon(true);
+        applier.start();
+        reader.start();
+    }
+
+    // --- Reader thread ---
+
+    private void read(InputStream in) throws IOException, InterruptedException {
+        input = in;
+        if (closed) {
+            return;
+        }
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        int start = 0;
+        int end = 0;
+        boolean skipping = false; // Inside a line longer than the buffer
+        while (!closed) {
+            if (start == end) {
+                start = 0;
+                end = 0;
+            } else if (end == buffer.length) {
+                if (start == 0) {
+                    if (!skipping) {
+                        rejectedLines.increment();
+                        skipping = true;
+                    }
+                    end = 0;
+                } else {
+                    System.arraycopy(buffer, start, buffer, 0, end - start);
+                    end -= start;
+                    start = 0;
+                }
+            }
+            // About to wait for more input: hand over what was parsed instead of holding it
+            if (in.available() == 0) {
+                handOff();
+            }
+            int count = in.read(buffer, end, buffer.length - end);
+            if (count < 0) {
+                break;
+            }
+            int scan = end;
+            end += count;
+            for (int i = scan; i < end; i++) {
+                if (buffer[i] == '\n') {
+                    if (skipping) {
+                        skipping = false;
+                    } else {
+                        parseLine(buffer, start, i);
+                    }
+                    start = i + 1;
+                }
+            }
+        }
+        if (start < end && !skipping) {
+            parseLine(buffer, start, end);
+        }
+    }
+
+    private void parseLine(byte[] line, int from, int to) throws InterruptedException {
+        while (to > from && isBlank(line[to - 1])) {
+            to--;
+        }
+        while (from < to && isBlank(line[from])) {
+            from++;
+        }
+        if (from == to || line[from] == '#') {
+            return;
+        }
+        position = from;
+        long edgeId = parseInteger(line, to);
+        long time = skipSeparator(line, to) ? parseInteger(line, to) : -1;
+        double factor = skipSeparator(line, to) ? parseFactor(line, to) : Double.NaN;
+        if (edgeId < 0 || edgeId >= edgeCount || time < 0 || !(factor >= 0)
+                || position != to) {
+            rejectedLines.increment();
+            return;
+        }
+        int hour = time < CompactGraph.HOURS_PER_DAY ? (int) time : hourOf(time);
+        if (current == null) {
+            current = takeBatch();
+        }
+        current.updates.set((int) edgeId, hour, factor);
+        if (current.updates.size() == batchSize) {
+            handOff();
+        }
+    }
+
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    // Digits only; -1 if there are none or too many
+    private long parseInteger(byte[] line, int to) {
+        long value = 0;
+        int digits = 0;
+        while (position < to && line[position] >= '0' && line[position] <= '9') {
+            value = value * 10 + (line[position++] - '0');
+            digits++;
+        }
+        return digits == 0 || digits > 18 ? -1 : value;
+    }
+
+    // A comma with optional blanks around it, or a run of blanks
+    private boolean skipSeparator(byte[] line, int to) {
+        int start = position;
+        while (position < to && isBlank(line[position])) {
+            position++;
+        }
+        if (position < to && line[position] == ',') {
+            position++;
+            while (position < to && isBlank(line[position])) {
+                position++;
+            }
+        }
+        return position > start && position < to;
+    }
+
+    // Plain decimals of up to 15 digits are converted exactly (digits / 10^scale is
+    // correctly rounded, as Double.parseDouble would); anything else goes through it
+    private double parseFactor(byte[] line, int to) {
+        int start = position;
+        long digitsValue = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean point = false;
+        while (position < to) {
+            byte b = line[position];
+            if (b >= '0' && b <= '9') {
+                if (digits < 18) {
+                    digitsValue = digitsValue * 10 + (b - '0');
+                }
+                digits++;
+                if (point) {
+                    scale++;
+                }
+            } else if (b == '.' && !point) {
+                point = true;
+            } else {
+                break;
+            }
+            position++;
+        }
+        if (digits > 0 && digits <= 15 && (position == to || isBlank(line[position]) || line[position] == ',')) {
+            return digitsValue / POWERS_OF_TEN[scale];
+        }
+        while (position < to && !isBlank(line[position]) && line[position] != ',') {
+            position++;
+        }
+        try {
+            return Double.parseDouble(new String(line, start, position - start, StandardCharsets.ISO_8859_1));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private int hourOf(long epochSeconds) {
+        long bucket = Math.floorDiv(epochSeconds, TIME_ZONE_GRANULARITY_SECONDS);
+        if (bucket != cachedTimeBucket) {
+            cachedHour = Instant.ofEpochSecond(bucket * TIME_ZONE_GRANULARITY_SECONDS).atZone(zone).getHour();
+            cachedTimeBucket = bucket;
+        }
+        return cachedHour;
+    }
+
+    private Batch takeBatch() throws InterruptedException {
+        Batch batch = free.poll();
+        if (batch == null) {
+            long waitStart = System.nanoTime();
+            batch = free.take();
+            backpressureNanos.add(System.nanoTime() - waitStart);
+        }
+        return batch;
+    }
+
+    private void handOff() {
+        if (current == null || current.updates.isEmpty()) {
+            return;
+        }
+        updatesRead.add(current.updates.size());
+        current.sealedNanos = System.nanoTime();
+        filled.add(current); // Never full: only maxPendingBatches batches exist
+        current = null;
+    }
+
+    // --- Apply thread ---
+
+    private void applyLoop() {
+        try {
+            long nextTick = System.nanoTime();
+            while (true) {
+                nextTick += applyIntervalNanos;
+                long wait;
+                while ((wait = nextTick - System.nanoTime()) > 0 && !inputDone) {
+                    LockSupport.parkNanos(this, wait);
+                }
+                boolean finished = inputDone; // Read first: the reader hands off before setting it
+                applyPending();
+                if (finished && filled.isEmpty()) {
+                    break;
+                }
+                nextTick = Math.max(nextTick, System.nanoTime());
+            }
+        } catch (RuntimeException | Error e) {
+            // Nothing is published any more: fail the feed rather than leave the reader
+            // waiting for batches and awaitCompletion for the end
+            failure = e;
+            System.err.println("Error: Traffic feed could not publish updates: " + e);
+            stopReading();
+        } finally {
+            finishNanos = System.nanoTime();
+            completed.countDown();
+        }
+    }
+
+    private void applyPending() {
+        Batch batch = filled.poll();
+        if (batch == null) {
+            return;
+        }
+        long oldestSealed = batch.sealedNanos;
+        merged.clear();
+        Arrays.fill(slotKeys, 0);
+        // At most one pool's worth per tick: the reader refills freed batches meanwhile, and
+        // the merge table is sized for maxPendingBatches of them
+        for (int taken = 1; batch != null; taken++) {
+            TrafficUpdate updates = batch.updates;
+            for (int i = 0; i < updates.size(); i++) {
+                merge(updates.getEdgeId(i), updates.getHourOfDay(i), updates.getFactor(i));
+            }
+            updates.clear();
+            free.add(batch); // The reader may refill it while this tick is published
+            batch = taken < maxPendingBatches ? filled.poll() : null;
+        }
+
+        long applyStart = System.nanoTime();
+        snapshots.publish(merged);
+        long applyEnd = System.nanoTime();
+        long applyNanos = applyEnd - applyStart;
+        updatesApplied += merged.size();
+        publishCount++;
+        totalApplyNanos += applyNanos;
+        maxApplyNanos = Math.max(maxApplyNanos, applyNanos);
+        maxLatencyNanos = Math.max(maxLatencyNanos, applyEnd - oldestSealed);
+    }
+
+    private void merge(int edgeId, int hourOfDay, double factor) {
+        long key = (long) edgeId * CompactGraph.HOURS_PER_DAY + hourOfDay + 1;
+        int mask = slotKeys.length - 1;
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> slotShift);
+        while (true) {
+            long existing = slotKeys[slot];
+            if (existing == 0) {
+                slotKeys[slot] = key;
+                slotIndex[slot] = merged.size();
+                merged.set(edgeId, hourOfDay, factor);
+                return;
+            }
+            if (existing == key) {
+                merged.replaceFactor(slotIndex[slot], factor);
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    // Counters of a running or finished feed
+    public static final class Statistics {
+        private final long updatesRead;
+        private final long rejectedLines;
+        private final long updatesApplied;
+        private final long publishCount;
+        private final long elapsedNanos;
+        private final long totalApplyNanos;
+        private final long maxApplyNanos;
+        private final long maxLatencyNanos;
+        private final long backpressureNanos;
+
+        Statistics(long updatesRead, long rejectedLines, long updatesApplied, long publishCount, long elapsedNanos,
+                   long totalApplyNanos, long maxApplyNanos, long maxLatencyNanos, long backpressureNanos) {
+            this.updatesRead = updatesRead;
+            this.rejectedLines = rejectedLines;
+            this.updatesApplied = updatesApplied;
+            this.publishCount = publishCount;
+            this.elapsedNanos = elapsedNanos;
+            this.totalApplyNanos = totalApplyNanos;
+            this.maxApplyNanos = maxApplyNanos;
+            this.maxLatencyNanos = maxLatencyNanos;
+            this.backpressureNanos = backpressureNanos;
+        }
+
+        // Valid updates parsed from the input
+        public long getUpdatesRead() {
+            return updatesRead;
+        }
+
+        public long getRejectedLines() {
+            return rejectedLines;
+        }
+
+        // Updates published after merging repeated (edge, hour) pairs within a tick
+        public long getUpdatesApplied() {
+            return updatesApplied;
+        }
+
+        public long getPublishCount() {
+            return publishCount;
+        }
+
+        // Updates read per second since the feed started (until it finished)
+        public double getUpdatesPerSecond() {
+            return elapsedNanos == 0 ? 0.0 : updatesRead * 1e9 / elapsedNanos;
+        }
+
+        // Time to build and publish one snapshot
+        public double getAverageApplyMillis() {
+            return publishCount == 0 ? 0.0 : totalApplyNanos / 1e6 / publishCount;
+        }
+
+        public double getMaxApplyMillis() {
+            return maxApplyNanos / 1e6;
+        }
+
+        // Longest time from an update being handed to the apply thread to its publication
+        public double getMaxLatencyMillis() {
+            return maxLatencyNanos / 1e6;
+        }
+
+        // Total time the reader waited for the apply thread
+        public double getBackpressureMillis() {
+            return backpressureNanos / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("TrafficFeed{read=%d, rejected=%d, applied=%d, publishes=%d, %.0f updates/s, "
+                            + "apply avg=%.2f ms max=%.2f ms, latency max=%.2f ms, backpressure=%.1f ms}",
+                    updatesRead, rejectedLines, updatesApplied, publishCount, getUpdatesPerSecond(),
+                    getAverageApplyMillis(), getMaxApplyMillis(), getMaxLatencyMillis(), getBackpressureMillis());
+        }
+    }
+}
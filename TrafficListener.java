@@ -0,0 +1,9 @@
+// Receives the traffic factor changes of a compiled Graph (Graph.addTrafficListener) or of
+// published snapshots (TrafficSnapshots.addTrafficListener), e.g. to invalidate results
+// derived from travel times such as RouteCache entries.
+public interface TrafficListener {
+    // graph is the traffic version with the changes applied; previous lists every changed
+    // edge (its position in Graph.getAllEdges()) and hour with the factor it had before.
+    // Called on the updating thread once queries can see the new version.
+    void trafficChanged(CompactGraph graph, TrafficUpdate previous);
+}
@@ -0,0 +1,374 @@
+import java.util.Arrays;
+
+// Interned 24-hour traffic-factor profiles. Factors are quantized to 16-bit fixed point
+// (steps of FACTOR_STEP, so three-decimal values such as 1.8 are kept exactly), which makes
+// equal-looking profiles bitwise equal and lets a whole network share a few thousand of
+// them: an edge stores one profile ID instead of 24 doubles, and every free-flow edge uses
+// profile FREE_FLOW. The largest code, CLOSED, stands for an infinite factor (a closed
+// road); finite factors above MAX_FACTOR are stored as MAX_FACTOR.
+//
+// Profiles are stored by column, one per hour plus one each for the smallest factor, from
+// which CompactGraph derives lower bounds, and the largest drop from one hour to the next
+// (wrapping at midnight), from which it derives FIFO flags; private profiles (see below) do
+// not keep the drop. Columns are cut into pages of PAGE_SIZE values. Once a version has been
+// handed the pages (see freeze), the table copies a page before writing to it, so published
+// versions never see a profile change, and a batch of changes in a few hours copies only
+// those hours' pages.
+//
+// A profile only one edge uses turns private when that edge changes: it leaves the interning
+// table and is then updated in place, so a stream of one-off factors neither hashes nor
+// leaves unused profiles behind. A new table (see CompactGraph.rebuildProfiles) interns them
+// again. A line of CompactGraph versions shares one table, which never reuses a profile ID.
+// Not thread-safe.
+final class TrafficProfiles {
+    static final int HOURS = CompactGraph.HOURS_PER_DAY;
+    static final double FACTOR_STEP = 0.001;
+    // Code of an infinite factor, and the largest finite factor below it
+    static final char CLOSED = Character.MAX_VALUE;
+    static final double MAX_FACTOR = (CLOSED - 1) * FACTOR_STEP;
+
+    // Columns: the factors for hours 0 to 23, then these
+    static final int MIN_FACTOR = HOURS;
+    static final int MAX_DROP = HOURS + 1;
+    private static final int PRIVATE = HOURS + 2; // 1.0 for a private profile
+    static final int COLUMNS = HOURS + 3;
+
+    // Values per column page, as many bytes as a page of CompactGraph's profile IDs
+    private static final int PAGE_SHIFT = 9;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    // Profile ID of the all-1.0 profile, present in every table
+    static final int FREE_FLOW = 0;
+
+    // Column c of profile p is columns[c][p >>> PAGE_SHIFT][p & PAGE_MASK] (see get);
+    // ownedPages[c] marks the pages no version has been handed, which may be written in place
+    private double[][][] columns;
+    private boolean[][] ownedPages;
+    // Content hash of each interned profile (see hash), kept so that lookups and rehashing
+    // rarely touch the factors of other profiles
+    private long[] hashes;
+    // Number of edges of the owning graph's latest version that use each profile
+    private int[] users;
+    private int count;
+    private int unused;
+
+    // Open addressing table of interned profile IDs + 1 (0 marks a free slot), keyed by content
+    private int[] slots;
+    private final double[] scratch = new double[HOURS];
+
+    TrafficProfiles() {
+        this(64);
+    }
+
+    // Table with room for the given number of profiles before it has to grow
+    TrafficProfiles(int capacity) {
+        capacity = Math.max(capacity, 64);
+        this.columns = new double[COLUMNS][(capacity + PAGE_MASK) >>> PAGE_SHIFT][];
+        this.ownedPages = new boolean[COLUMNS][columns[0].length];
+        this.hashes = new long[capacity];
+        this.users = new int[capacity];
+        this.slots = new int[Integer.highestOneBit(capacity - 1) << 2];
+        Arrays.fill(scratch, 1.0);
+        intern(scratch, 0);
+    }
+
+    private TrafficProfiles(TrafficProfiles other) {
+        this.columns = new double[COLUMNS][][];
+        this.ownedPages = new boolean[COLUMNS][];
+        for (int column = 0; column < COLUMNS; column++) {
+            columns[column] = other.columns[column].clone();
+            ownedPages[column] = new boolean[columns[column].length];
+            Arrays.fill(other.ownedPages[column], false);
+        }
+        this.hashes = other.hashes.clone();
+        this.users = other.users.clone();
+        this.count = other.count;
+        this.unused = other.unused;
+        this.slots = other.slots.clone();
+    }
+
+    // Independent table with the same profiles and IDs
+    TrafficProfiles copy() {
+        return new TrafficProfiles(this);
+    }
+
+    // Rejects factors that have no meaning (negative or NaN)
+    static void checkFactor(double factor) {
+        if (factor < 0) {
+            throw new IllegalArgumentException("Traffic factor cannot be negative.");
+        }
+        if (Double.isNaN(factor)) {
+            throw new IllegalArgumentException("Traffic factor must be a number.");
+        }
+    }
+
+    static char encode(double factor) {
+        if (factor == Double.POSITIVE_INFINITY) {
+            return CLOSED;
+        }
+        return (char) Math.round(Math.min(factor, MAX_FACTOR) / FACTOR_STEP);
+    }
+
+    static double decode(char code) {
+        return code == CLOSED ? Double.POSITIVE_INFINITY : code / 1000.0;
+    }
+
+    // The stored value for a factor: the nearest multiple of FACTOR_STEP
+    static double quantize(double factor) {
+        return decode(encode(factor));
+    }
+
+    // A profile's value in one column (an hour, MIN_FACTOR or MAX_DROP) of the given pages
+    static double get(double[][][] columns, int column, int profile) {
+        return columns[column][profile >>> PAGE_SHIFT][profile & PAGE_MASK];
+    }
+
+    static boolean isPrivate(double[][][] columns, int profile) {
+        return get(columns, PRIVATE, profile) != 0.0;
+    }
+
+    // Column pages as they are now, for the version that changes the table; the table may
+    // still write to them
+    double[][][] getColumns() {
+        return columns;
+    }
+
+    // Column pages for a version that is handed out: from now on the table copies a page
+    // before writing to it and works on its own page arrays, so these never change
+    double[][][] freeze() {
+        double[][][] frozen = columns;
+        columns = new double[COLUMNS][][];
+        for (int column = 0; column < COLUMNS; column++) {
+            columns[column] = frozen[column].clone();
+            Arrays.fill(ownedPages[column], false);
+        }
+        return frozen;
+    }
+
+    int size() {
+        return count;
+    }
+
+    // Number of profiles no edge uses any more
+    int unusedCount() {
+        return unused;
+    }
+
+    // ID of the profile with the quantized codes at codes[offset .. offset + HOURS), added if new
+    int intern(char[] codes, int offset) {
+        for (int hour = 0; hour < HOURS; hour++) {
+            scratch[hour] = decode(codes[offset + hour]);
+        }
+        return intern(scratch, 0);
+    }
+
+    // ID of the profile with the factors of the given profile of other column pages, added if new
+    int intern(double[][][] source, int profile) {
+        for (int hour = 0; hour < HOURS; hour++) {
+            scratch[hour] = get(source, hour, profile);
+        }
+        return intern(scratch, 0);
+    }
+
+    // ID of the interned profile with the factors at profile[offset .. offset + HOURS), added
+    // if new; the factors must already be quantized
+    int intern(double[] profile, int offset) {
+        long hash = 0;
+        for (int hour = 0; hour < HOURS; hour++) {
+            hash += hash(profile[offset + hour], hour);
+        }
+        int mask = slots.length - 1;
+        for (int slot = home(hash, mask); ; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (id < 0) {
+                id = allocate();
+                for (int hour = 0; hour < HOURS; hour++) {
+                    set(hour, id, profile[offset + hour]);
+                }
+                setBounds(id);
+                insert(id, hash, slot);
+                return id;
+            }
+            if (hashes[id] == hash && equals(id, profile, offset)) {
+                return id;
+            }
+        }
+    }
+
+    private boolean equals(int id, double[] profile, int offset) {
+        for (int hour = 0; hour < HOURS; hour++) {
+            if (get(columns, hour, id) != profile[offset + hour]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Adds an interned profile of other column pages, given its hash, without looking for an
+    // equal one: for building a table from profiles known to be distinct
+    int append(double[][][] source, int profile, long hash) {
+        int mask = slots.length - 1;
+        int slot = home(hash, mask);
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        int id = allocate();
+        for (int column = 0; column <= MAX_DROP; column++) {
+            set(column, id, get(source, column, profile));
+        }
+        insert(id, hash, slot);
+        return id;
+    }
+
+    long getHash(int profile) {
+        return hashes[profile];
+    }
+
+    // Sets one hour's (quantized) factor for the single edge that changes, which uses the
+    // given profile, and returns the profile it uses afterwards. Its private profile is
+    // changed in place; a shared one stays with its other users and the edge gets a private copy.
+    int update(int profile, int hourOfDay, double factor) {
+        if (!isPrivate(columns, profile)) {
+            if (users[profile] == 1 && profile != FREE_FLOW) {
+                removeSlot(profile);
+            } else {
+                int copy = allocate();
+                for (int column = 0; column <= MIN_FACTOR; column++) {
+                    set(column, copy, get(columns, column, profile));
+                }
+                removeUser(profile);
+                users[copy] = 1;
+                profile = copy;
+            }
+            set(PRIVATE, profile, 1.0);
+        }
+
+        double previous = get(columns, hourOfDay, profile);
+        set(hourOfDay, profile, factor);
+        double min = get(columns, MIN_FACTOR, profile);
+        if (factor < min) {
+            set(MIN_FACTOR, profile, factor);
+        } else if (previous == min && factor != min) {
+            // The old minimum was raised; the new one is the smallest of the 24
+            min = Double.POSITIVE_INFINITY;
+            for (int hour = 0; hour < HOURS; hour++) {
+                min = Math.min(min, get(columns, hour, profile));
+            }
+            set(MIN_FACTOR, profile, min);
+        }
+        return profile;
+    }
+
+    void addUser(int profile) {
+        if (users[profile]++ == 0 && profile != FREE_FLOW) {
+            unused--;
+        }
+    }
+
+    void removeUser(int profile) {
+        if (--users[profile] == 0 && profile != FREE_FLOW) {
+            unused++;
+        }
+    }
+
+    // A new profile, neither used nor interned, with all columns 0
+    private int allocate() {
+        if (count == users.length) {
+            hashes = Arrays.copyOf(hashes, count * 2);
+            users = Arrays.copyOf(users, count * 2);
+        }
+        int id = count++;
+        int page = id >>> PAGE_SHIFT;
+        for (int column = 0; column < COLUMNS; column++) {
+            if (page == columns[column].length) {
+                columns[column] = Arrays.copyOf(columns[column], page * 2);
+                ownedPages[column] = Arrays.copyOf(ownedPages[column], page * 2);
+            }
+            if (columns[column][page] == null) {
+                columns[column][page] = new double[PAGE_SIZE];
+                ownedPages[column][page] = true;
+            }
+        }
+        return id;
+    }
+
+    // Writes one value, copying its page first if a version has been handed it
+    private void set(int column, int profile, double value) {
+        int page = profile >>> PAGE_SHIFT;
+        if (!ownedPages[column][page]) {
+            columns[column][page] = columns[column][page].clone();
+            ownedPages[column][page] = true;
+        }
+        columns[column][page][profile & PAGE_MASK] = value;
+    }
+
+    private void setBounds(int profile) {
+        double min = Double.POSITIVE_INFINITY;
+        double maxDrop = Double.NEGATIVE_INFINITY;
+        double first = get(columns, 0, profile);
+        double factor = first;
+        for (int hour = 1; hour <= HOURS; hour++) {
+            double next = hour == HOURS ? first : get(columns, hour, profile);
+            min = Math.min(min, factor);
+            maxDrop = Math.max(maxDrop, factor == next ? 0.0 : factor - next); // No NaN for two closed hours
+            factor = next;
+        }
+        set(MIN_FACTOR, profile, min);
+        set(MAX_DROP, profile, maxDrop);
+    }
+
+    private void insert(int id, long hash, int slot) {
+        hashes[id] = hash;
+        if (id != FREE_FLOW) {
+            unused++;
+        }
+        slots[slot] = id + 1;
+        if (count * 2 > slots.length) {
+            rehash();
+        }
+    }
+
+    // Takes an interned profile out of the table, moving later entries of its probe run back
+    // so that each stays reachable from its home slot
+    private void removeSlot(int id) {
+        int mask = slots.length - 1;
+        int slot = home(hashes[id], mask);
+        while (slots[slot] != id + 1) {
+            slot = (slot + 1) & mask;
+        }
+        for (int next = (slot + 1) & mask; slots[next] != 0; next = (next + 1) & mask) {
+            // An entry may fill the gap unless its home slot lies after the gap
+            if (((next - home(hashes[slots[next] - 1], mask)) & mask) >= ((next - slot) & mask)) {
+                slots[slot] = slots[next];
+                slot = next;
+            }
+        }
+        slots[slot] = 0;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int id = 0; id < count; id++) {
+            if (!isPrivate(columns, id)) {
+                int slot = home(hashes[id], mask);
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = id + 1;
+            }
+        }
+    }
+
+    private static int home(long hash, int mask) {
+        return (int) (hash >>> 32) & mask;
+    }
+
+    // A profile's hash is the sum of these over its hours
+    private static long hash(double factor, int hourOfDay) {
+        long hash = (Double.doubleToLongBits(factor) + hourOfDay) * 0x9E3779B97F4A7C15L;
+        hash = (hash ^ (hash >>> 32)) * 0xFF51AFD7ED558CCDL;
+        return hash ^ (hash >>> 29);
+    }
+}
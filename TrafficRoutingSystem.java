@@ -1,3 +1,5 @@
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Scanner; // Required for reading user input
 
 // Main class to demonstrate the usage via command-line
@@ -70,6 +72,27 @@ public class TrafficRoutingSystem {
             pineRdCD.setTrafficFactor(18, 2.2); // 6 PM: 120% increase
         }
 
+        // --- Optional Live Traffic ---
+        // "--traffic-file <path>" or "--traffic-port <port>" streams "edgeId,hour,factor" lines
+        // (edge IDs in the order roads were added above) into the graph while queries run
+        TrafficFeed feed = null;
+        if (args.length == 2 && (args[0].equals("--traffic-file") || args[0].equals("--traffic-port"))) {
+            TrafficSnapshots snapshots = new TrafficSnapshots(graph);
+            feed = new TrafficFeed(snapshots);
+            try {
+                if (args[0].equals("--traffic-file")) {
+                    feed.start(Paths.get(args[1]));
+                } else {
+                    System.out.println("Listening for traffic updates on localhost:" + feed.listen(Integer.parseInt(args[1])));
+                }
+                pathfinder = new Pathfinder(snapshots);
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Error: Could not start traffic feed: " + e.getMessage());
+                feed.close();
+                feed = null;
+            }
+        }
+
         Scanner scanner = new Scanner(System.in);
 
         System.out.println("--- Real-time Traffic Routing System (Command-Line) ---");
@@ -108,8 +131,14 @@ public class TrafficRoutingSystem {
             // Find and display path
             PathResult result = pathfinder.findPath(startNodeId, endNodeId, hourOfDay);
             System.out.println(result);
+            if (feed != null) {
+                System.out.println(feed.getStatistics());
+            }
         }
 
+        if (feed != null) {
+            feed.close();
+        }
         scanner.close();
         System.out.println("Exiting Traffic Routing System. Goodbye!");
     }
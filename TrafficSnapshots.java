@@ -0,0 +1,84 @@
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Snapshot-isolated traffic state for serving queries while factors change.
+// Readers take the current snapshot with a single volatile read and keep it for the whole
+// query, so a route never mixes two traffic versions and the query path takes no locks.
+// A writer publishes a TrafficUpdate as a new snapshot: the previous one is copied on write
+// page by page (see CompactGraph), sharing the road network and every unchanged page, and
+// then swapped in. Old snapshots are reclaimed by the garbage collector as soon as the last
+// query using them finishes, so the extra memory is bounded by the pages changed while
+// queries were still in flight on older versions.
+public class TrafficSnapshots {
+    private final Graph graph;
+    private volatile CompactGraph current;
+    private volatile long publishedUpdates;
+    private final List<TrafficListener> listeners = new CopyOnWriteArrayList<>();
+
+    // Starts serving the graph's current traffic factors. Later Edge.setTrafficFactor calls
+    // only change the Graph's own copy; updates for queries go through publish.
+    public TrafficSnapshots(Graph graph) {
+        this.graph = graph;
+        this.current = graph.compile().snapshot();
+    }
+
+    // Starts serving a graph without a Graph behind it, e.g. one from CompactGraph.load
+    public TrafficSnapshots(CompactGraph graph) {
+        this.graph = null;
+        this.current = graph.snapshot();
+    }
+
+    // The Graph the snapshots were compiled from, or null if they started from a CompactGraph
+    public Graph getGraph() {
+        return graph;
+    }
+
+    // The latest published snapshot (lock-free)
+    public CompactGraph current() {
+        return current;
+    }
+
+    // Applies the batch to the latest snapshot and publishes the result. Writers are
+    // serialized; readers keep seeing the previous snapshot until the swap. Returns the
+    // new snapshot, or the current one if the batch is empty.
+    public synchronized CompactGraph publish(TrafficUpdate batch) {
+        if (batch.isEmpty()) {
+            return current;
+        }
+        CompactGraph previous = current;
+        CompactGraph next = previous.withTrafficFactors(batch);
+        current = next;
+        publishedUpdates += batch.size();
+        if (!listeners.isEmpty()) {
+            TrafficUpdate previousFactors = new TrafficUpdate(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                int edgeId = batch.getEdgeId(i);
+                int hour = batch.getHourOfDay(i);
+                previousFactors.set(edgeId, hour, previous.getTrafficFactor(previous.positionOf(edgeId), hour));
+            }
+            for (TrafficListener listener : listeners) {
+                listener.trafficChanged(next, previousFactors);
+            }
+        }
+        return next;
+    }
+
+    // Registers a listener that publish calls with every batch after swapping it in
+    public void addTrafficListener(TrafficListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeTrafficListener(TrafficListener listener) {
+        listeners.remove(listener);
+    }
+
+    // Traffic version of the latest snapshot
+    public long getVersion() {
+        return current.getTrafficVersion();
+    }
+
+    // Total number of factor changes published so far
+    public long getPublishedUpdates() {
+        return publishedUpdates;
+    }
+}
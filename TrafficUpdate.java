@@ -0,0 +1,80 @@
+import java.util.Arrays;
+
+// A batch of traffic factor changes, published together as one new snapshot by
+// TrafficSnapshots.publish. Entries are applied in the order they were added, so a later
+// entry for the same edge and hour wins. Stored as primitive arrays; reusable after clear().
+public class TrafficUpdate {
+    private int[] edgeIds;
+    private int[] hours;
+    private double[] factors;
+    private int size;
+
+    public TrafficUpdate() {
+        this(16);
+    }
+
+    public TrafficUpdate(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 1);
+        this.edgeIds = new int[capacity];
+        this.hours = new int[capacity];
+        this.factors = new double[capacity];
+    }
+
+    // Sets the factor of the edge (its position in Graph.getAllEdges()) for one hour
+    public TrafficUpdate set(int edgeId, int hourOfDay, double factor) {
+        if (edgeId < 0) {
+            throw new IllegalArgumentException("Edge ID cannot be negative.");
+        }
+        if (hourOfDay < 0 || hourOfDay > 23) {
+            throw new IllegalArgumentException("Hour of day must be between 0 and 23.");
+        }
+        TrafficProfiles.checkFactor(factor);
+        if (size == edgeIds.length) {
+            edgeIds = Arrays.copyOf(edgeIds, size * 2);
+            hours = Arrays.copyOf(hours, size * 2);
+            factors = Arrays.copyOf(factors, size * 2);
+        }
+        edgeIds[size] = edgeId;
+        hours[size] = hourOfDay;
+        factors[size] = factor;
+        size++;
+        return this;
+    }
+
+    // Same as set(int, int, double) for an edge of the graph being served
+    public TrafficUpdate set(Edge edge, int hourOfDay, double factor) {
+        if (edge.getId() < 0) {
+            throw new IllegalArgumentException("Edge " + edge + " does not belong to a graph.");
+        }
+        return set(edge.getId(), hourOfDay, factor);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int getEdgeId(int index) {
+        return edgeIds[index];
+    }
+
+    public int getHourOfDay(int index) {
+        return hours[index];
+    }
+
+    public double getFactor(int index) {
+        return factors[index];
+    }
+
+    // Overwrites the factor of an existing entry (used when coalescing repeated updates)
+    void replaceFactor(int index, double factor) {
+        factors[index] = factor;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+}
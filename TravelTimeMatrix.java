@@ -0,0 +1,104 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+// Many-to-many travel times: one Dijkstra search per source that stops as soon as every
+// target is settled, without building paths or instructions. Sources run in parallel on
+// the common fork-join pool, each worker reusing its own search state.
+public class TravelTimeMatrix {
+    private static final ThreadLocal<SearchState> SEARCH_STATE = ThreadLocal.withInitial(SearchState::new);
+
+    private TravelTimeMatrix() {
+    }
+
+    // Travel times in minutes at the given hour, row-major: result[i * targets.size() + j] is
+    // the time from sources.get(i) to targets.get(j), or infinity if it cannot be reached
+    public static double[] compute(Graph graph, List<String> sourceIds, List<String> targetIds, int hourOfDay) {
+        return compute(graph.compile(), toIndices(graph, sourceIds), toIndices(graph, targetIds), hourOfDay);
+    }
+
+    // Same as compute(Graph, List, List, int) with nodes given by their dense index
+    public static double[] compute(CompactGraph graph, int[] sources, int[] targets, int hourOfDay) {
+        if (hourOfDay < 0 || hourOfDay >= CompactGraph.HOURS_PER_DAY) {
+            throw new IllegalArgumentException("Hour of day must be between 0 and 23.");
+        }
+        int nodeCount = graph.getNodeCount();
+        for (int node : sources) {
+            checkNode(node, nodeCount);
+        }
+
+        // Columns of each target node as a linked list (a node may be listed more than once)
+        int[] firstColumn = new int[nodeCount];
+        Arrays.fill(firstColumn, -1);
+        int[] nextColumn = new int[targets.length];
+        int distinctTargets = 0;
+        for (int column = targets.length - 1; column >= 0; column--) {
+            int node = targets[column];
+            checkNode(node, nodeCount);
+            if (firstColumn[node] == -1) {
+                distinctTargets++;
+            }
+            nextColumn[column] = firstColumn[node];
+            firstColumn[node] = column;
+        }
+
+        double[] matrix = new double[sources.length * targets.length];
+        Arrays.fill(matrix, Double.POSITIVE_INFINITY);
+        final int targetCount = distinctTargets;
+        IntStream.range(0, sources.length).parallel().forEach(row ->
+                searchRow(graph, sources[row], hourOfDay, firstColumn, nextColumn, targetCount,
+                        matrix, row * targets.length));
+        return matrix;
+    }
+
+    private static void searchRow(CompactGraph graph, int source, int hourOfDay, int[] firstColumn, int[] nextColumn,
+                                  int targetCount, double[] matrix, int rowOffset) {
+        if (targetCount == 0) {
+            return;
+        }
+        SearchState state = SEARCH_STATE.get();
+        state.reset(graph.getNodeCount());
+        IndexedMinHeap heap = state.getHeap();
+        state.update(source, 0.0, -1);
+        heap.insertOrDecrease(source, 0.0);
+        int remaining = targetCount;
+
+        while (!heap.isEmpty()) {
+            int u = heap.poll();
+            double distance = state.getDistance(u);
+            if (firstColumn[u] != -1) {
+                for (int column = firstColumn[u]; column != -1; column = nextColumn[column]) {
+                    matrix[rowOffset + column] = distance;
+                }
+                if (--remaining == 0) {
+                    break; // Every target is settled; the rest of the graph is irrelevant
+                }
+            }
+            for (int e = graph.firstEdge(u), last = graph.endEdge(u); e < last; e++) {
+                int v = graph.getTarget(e);
+                double newDistance = distance + graph.getTravelTime(e, hourOfDay);
+                if (newDistance < state.getDistance(v)) {
+                    state.update(v, newDistance, -1); // No predecessors: paths are never built
+                    heap.insertOrDecrease(v, newDistance);
+                }
+            }
+        }
+    }
+
+    private static int[] toIndices(Graph graph, List<String> nodeIds) {
+        int[] indices = new int[nodeIds.size()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = graph.getNodeIndex(nodeIds.get(i));
+            if (indices[i] < 0) {
+                throw new IllegalArgumentException("Node " + nodeIds.get(i) + " does not exist in the graph.");
+            }
+        }
+        return indices;
+    }
+
+    private static void checkNode(int node, int nodeCount) {
+        if (node < 0 || node >= nodeCount) {
+            throw new IllegalArgumentException("Node index " + node + " is out of range.");
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package trafficrouting.benchmarks;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import trafficrouting.AlternativeRoutes;
+import trafficrouting.CompactGraph;
+import trafficrouting.PathResult;
+
+// Up to three alternative routes (AlternativeRoutes: stretch 1.3, overlap 0.7) per query with
+// Yen's k shortest paths and with the plateau method. Queries cycle through a fixed set of
+// random node pairs and hours; the mean number of routes found is printed after each trial.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class AlternativeRoutesBenchmark {
+    private static final int QUERY_COUNT = 256;
+
+    @Param({ "GRID", "RANDOM_GEOMETRIC", "SCALE_FREE" })
+    public SyntheticNetworks.NetworkType network;
+
+    @Param({ "1000", "100000" })
+    public int nodes;
+
+    @Param({ "K_SHORTEST", "PLATEAU" })
+    public AlternativeRoutes.Method method;
+
+    private final AlternativeRoutes alternatives = new AlternativeRoutes(3, 1.3, 0.7);
+    private CompactGraph graph;
+    private int[] starts;
+    private int[] ends;
+    private int[] hours;
+    private int next;
+    private long queries;
+    private long routes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        graph = SyntheticNetworks.generate(network, nodes, 42).toGraph().compile();
+        Random random = new Random(7);
+        starts = random.ints(QUERY_COUNT, 0, graph.getNodeCount()).toArray();
+        ends = random.ints(QUERY_COUNT, 0, graph.getNodeCount()).toArray();
+        hours = random.ints(QUERY_COUNT, 0, 24).toArray();
+    }
+
+    @TearDown(Level.Trial)
+    public void report() {
+        System.out.printf("%nRoutes per query: %.2f%n", queries == 0 ? 0.0 : (double) routes / queries);
+    }
+
+    @Benchmark
+    public List<PathResult> alternatives() {
+        int i = next++ & (QUERY_COUNT - 1);
+        List<PathResult> result = alternatives.find(graph, starts[i], ends[i], hours[i], method);
+        queries++;
+        routes += result.size();
+        return result;
+    }
+}
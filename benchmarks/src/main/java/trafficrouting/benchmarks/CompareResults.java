@@ -0,0 +1,121 @@
+package trafficrouting.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Compares two JMH CSV result files (-rf csv) row by row and flags regressions.
+// Usage: java -cp benchmarks.jar trafficrouting.benchmarks.CompareResults baseline.csv current.csv [thresholdPercent]
+// Rows match on benchmark name, mode, thread count and parameters. Scores in ops/time are
+// better when higher; every other unit (time per op, bytes per op, ...) is better when lower.
+public class CompareResults {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: CompareResults <baseline.csv> <current.csv> [thresholdPercent]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10.0;
+        Map<String, Row> baseline = read(Paths.get(args[0]));
+        Map<String, Row> current = read(Paths.get(args[1]));
+
+        int regressions = 0;
+        System.out.printf("%-100s %14s %14s %9s%n", "Benchmark", "Baseline", "Current", "Change");
+        for (Map.Entry<String, Row> entry : current.entrySet()) {
+            Row now = entry.getValue();
+            Row before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("%-100s %14s %14.3f %9s  %s%n", entry.getKey(), "-", now.score, "new", now.unit);
+                continue;
+            }
+            double change = before.score == 0 ? 0.0 : (now.score - before.score) / before.score * 100.0;
+            boolean higherIsBetter = now.unit.contains("ops/");
+            double worse = higherIsBetter ? -change : change;
+            String flag = "";
+            if (worse > threshold) {
+                flag = "  REGRESSION";
+                regressions++;
+            } else if (worse < -threshold) {
+                flag = "  improved";
+            }
+            System.out.printf("%-100s %14.3f %14.3f %+8.1f%%  %s%s%n",
+                    entry.getKey(), before.score, now.score, change, now.unit, flag);
+        }
+        System.out.printf("%d regression(s) beyond %.1f%%%n", regressions, threshold);
+        System.exit(regressions > 0 ? 1 : 0);
+    }
+
+    private static final class Row {
+        final double score;
+        final String unit;
+
+        Row(double score, String unit) {
+            this.score = score;
+            this.unit = unit;
+        }
+    }
+
+    // Keyed by "benchmark mode threads param=value ..." in file order
+    private static Map<String, Row> read(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file);
+        Map<String, Row> rows = new LinkedHashMap<>();
+        if (lines.isEmpty()) {
+            return rows;
+        }
+        List<String> header = parseLine(lines.get(0));
+        int benchmark = header.indexOf("Benchmark");
+        int mode = header.indexOf("Mode");
+        int threads = header.indexOf("Threads");
+        int score = header.indexOf("Score");
+        int unit = header.indexOf("Unit");
+        for (String line : lines.subList(1, lines.size())) {
+            if (line.isBlank()) {
+                continue;
+            }
+            List<String> fields = parseLine(line);
+            StringBuilder key = new StringBuilder(fields.get(benchmark))
+                    .append(' ').append(fields.get(mode))
+                    .append(" t=").append(fields.get(threads));
+            for (int i = 0; i < header.size(); i++) {
+                if (header.get(i).startsWith("Param: ") && i < fields.size() && !fields.get(i).isEmpty()) {
+                    key.append(' ').append(header.get(i).substring(7)).append('=').append(fields.get(i));
+                }
+            }
+            String value = fields.get(score);
+            if (value.isEmpty() || value.equals("NaN")) {
+                continue;
+            }
+            rows.put(key.toString(), new Row(Double.parseDouble(value), fields.get(unit)));
+        }
+        return rows;
+    }
+
+    // Splits one CSV line, honouring double-quoted fields
+    private static List<String> parseLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == ',' && !quoted) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
@@ -0,0 +1,78 @@
+package trafficrouting.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import trafficrouting.CompactGraph;
+import trafficrouting.DeltaStepping;
+import trafficrouting.Isochrone;
+import trafficrouting.ShortestPathTree;
+
+// Full single-source shortest paths at 08:00 from random sources: DeltaStepping with
+// several thread counts and bucket widths (as multiples of DeltaStepping.defaultDelta),
+// against one sequential Dijkstra search (Isochrone.compute without a budget). dijkstra
+// ignores threads and deltaFactor; run it with a single value of each.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class DeltaSteppingBenchmark {
+    private static final int SOURCES = 16;
+
+    @Param({ "GRID", "RANDOM_GEOMETRIC", "SCALE_FREE" })
+    public SyntheticNetworks.NetworkType network;
+
+    @Param({ "1000000" })
+    public int nodes;
+
+    @Param({ "1", "2", "4", "8" })
+    public int threads;
+
+    @Param({ "0.5", "1", "4" })
+    public double deltaFactor;
+
+    private CompactGraph graph;
+    private DeltaStepping deltaStepping;
+    private double delta;
+    private int[] sources;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        graph = SyntheticNetworks.generate(network, nodes, 42).toGraph().compile();
+        deltaStepping = new DeltaStepping(threads);
+        delta = DeltaStepping.defaultDelta(graph, 8) * deltaFactor;
+        sources = new Random(7).ints(SOURCES, 0, graph.getNodeCount()).toArray();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        deltaStepping.close();
+    }
+
+    @Benchmark
+    public ShortestPathTree deltaStepping() {
+        return deltaStepping.compute(graph, sources[next++ % SOURCES], 8, delta);
+    }
+
+    @Benchmark
+    public Isochrone dijkstra() {
+        return Isochrone.compute(graph, sources[next++ % SOURCES], Double.POSITIVE_INFINITY, 8);
+    }
+}
@@ -0,0 +1,108 @@
+package trafficrouting.benchmarks;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import trafficrouting.Edge;
+import trafficrouting.Graph;
+import trafficrouting.PathResult;
+import trafficrouting.Pathfinder;
+import trafficrouting.SearchMode;
+
+// Graph.getDirectedEdge, indexed by node pair, against the linear scan over every edge it
+// replaced, looking up existing edges picked at random; the default 250k-node grid has about
+// 1M directed edges. route times bidirectional queries on the same graph, whose path
+// reconstruction uses the relaxing edges recorded by the search instead of any lookup.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class EdgeLookupBenchmark {
+    private static final int LOOKUP_COUNT = 1024;
+
+    @Param({ "GRID" })
+    public SyntheticNetworks.NetworkType network;
+
+    @Param({ "250000" })
+    public int nodes;
+
+    private Graph graph;
+    private List<Edge> edges;
+    private Pathfinder pathfinder;
+    private String[] startNodeIds;
+    private String[] endNodeIds;
+    private int[] starts;
+    private int[] ends;
+    private int[] hours;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        graph = SyntheticNetworks.generate(network, nodes, 42).toGraph();
+        edges = graph.getAllEdges();
+        int nodeCount = graph.getNodeList().size();
+        Random random = new Random(7);
+        startNodeIds = new String[LOOKUP_COUNT];
+        endNodeIds = new String[LOOKUP_COUNT];
+        starts = new int[LOOKUP_COUNT];
+        ends = new int[LOOKUP_COUNT];
+        hours = new int[LOOKUP_COUNT];
+        for (int i = 0; i < LOOKUP_COUNT; i++) {
+            Edge edge = edges.get(random.nextInt(edges.size()));
+            startNodeIds[i] = edge.getStartNodeId();
+            endNodeIds[i] = edge.getEndNodeId();
+            starts[i] = random.nextInt(nodeCount);
+            ends[i] = random.nextInt(nodeCount);
+            hours[i] = random.nextInt(24);
+        }
+        // Compile the CSR form outside the measurement
+        pathfinder = new Pathfinder(graph);
+        graph.compile();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Edge indexed() {
+        int i = next++ & (LOOKUP_COUNT - 1);
+        return graph.getDirectedEdge(startNodeIds[i], endNodeIds[i]);
+    }
+
+    @Benchmark
+    public Edge linearScan() {
+        int i = next++ & (LOOKUP_COUNT - 1);
+        return linearScan(startNodeIds[i], endNodeIds[i]);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public PathResult route() {
+        int i = next++ & (LOOKUP_COUNT - 1);
+        return pathfinder.findPath(starts[i], ends[i], hours[i], SearchMode.BIDIRECTIONAL);
+    }
+
+    // The lookup Graph.getDirectedEdge used before the index: a scan over every edge
+    private Edge linearScan(String startNodeId, String endNodeId) {
+        for (Edge edge : edges) {
+            if (edge.getStartNodeId().equals(startNodeId) && edge.getEndNodeId().equals(endNodeId)) {
+                return edge;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,93 @@
+package trafficrouting.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import trafficrouting.CompactGraph;
+import trafficrouting.Graph;
+
+// Graph construction cost: loading a generated network through Graph.addNode/addEdge,
+// compiling it into its CSR form, and loading that form from a CompactGraph.save file
+// (memory-mapped, see CompactGraph.load). Each invocation builds a whole graph, so this uses
+// single-shot timing with several iterations instead of a time-based loop.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class GraphBuildBenchmark {
+    @Param({ "GRID", "RANDOM_GEOMETRIC", "SCALE_FREE" })
+    public SyntheticNetworks.NetworkType network;
+
+    // 10M nodes needs a much larger heap: -p nodes=10000000 -jvmArgsAppend -Xmx48g
+    @Param({ "1000", "100000", "1000000" })
+    public int nodes;
+
+    private SyntheticNetworks.Network generated;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        generated = SyntheticNetworks.generate(network, nodes, 42);
+    }
+
+    // A freshly built graph per iteration, so compile() never hits the cached CSR form
+    @State(Scope.Thread)
+    public static class FreshGraph {
+        Graph graph;
+
+        @Setup(Level.Iteration)
+        public void build(GraphBuildBenchmark benchmark) {
+            graph = null; // Let the previous graph and its CSR form be collected first
+            graph = benchmark.generated.toGraph();
+        }
+    }
+
+    // The compiled network saved once per trial, for load
+    @State(Scope.Benchmark)
+    public static class SavedGraph {
+        Path file;
+
+        @Setup(Level.Trial)
+        public void save(GraphBuildBenchmark benchmark) throws IOException {
+            file = Files.createTempFile("network", ".csr");
+            benchmark.generated.toGraph().compile().save(file);
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() throws IOException {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Benchmark
+    public Graph build() {
+        return generated.toGraph();
+    }
+
+    @Benchmark
+    public CompactGraph compile(FreshGraph fresh) {
+        return fresh.graph.compile();
+    }
+
+    @Benchmark
+    public CompactGraph load(SavedGraph saved) throws IOException {
+        return CompactGraph.load(saved.file);
+    }
+}
@@ -0,0 +1,72 @@
+package trafficrouting.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import trafficrouting.TrafficFeed;
+import trafficrouting.TrafficSnapshots;
+
+// TrafficFeed end to end: parsing a text stream of updates, merging and publishing them as
+// snapshots, until the last one is published. The score is updates per second. Updates hit
+// random edges in the morning rush hours with random factors, so nearly every edge soon has
+// a private traffic profile and each publish copies the profile pages of the hours it touches.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class IngestionBenchmark {
+    private static final int UPDATES = 2_000_000;
+
+    @Param({ "GRID" })
+    public SyntheticNetworks.NetworkType network;
+
+    @Param({ "100000", "1000000" })
+    public int nodes;
+
+    private TrafficSnapshots snapshots;
+    private byte[] input;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        snapshots = new TrafficSnapshots(SyntheticNetworks.generate(network, nodes, 42).toGraph());
+        int edgeCount = snapshots.current().getEdgeCount();
+        Random random = new Random(3);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(UPDATES * 16);
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < UPDATES; i++) {
+            line.setLength(0);
+            line.append(random.nextInt(edgeCount)).append(',').append(7 + random.nextInt(3)).append(',')
+                    .append(1 + random.nextInt(300) / 100.0).append('\n');
+            out.write(line.toString().getBytes(StandardCharsets.US_ASCII), 0, line.length());
+        }
+        input = out.toByteArray();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(UPDATES)
+    public TrafficFeed.Statistics ingest() throws Exception {
+        TrafficFeed feed = new TrafficFeed(snapshots);
+        feed.start(new ByteArrayInputStream(input));
+        feed.awaitCompletion(10, TimeUnit.MINUTES);
+        return feed.getStatistics();
+    }
+}
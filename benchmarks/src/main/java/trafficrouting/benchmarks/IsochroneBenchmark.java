@@ -0,0 +1,72 @@
+package trafficrouting.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import trafficrouting.CompactGraph;
+import trafficrouting.Isochrone;
+
+// Batches of isochrones (Isochrone.computeAll) at 08:00 from random origins, reported as
+// isochrones per minute; synthetic edges take about a minute each. The mean number of nodes
+// reached is printed after each trial. SCALE_FREE is left out: its edges join random points
+// anywhere in the plane and take hours, so no budget here reaches past the origin.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MINUTES)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class IsochroneBenchmark {
+    private static final int BATCH_SIZE = 256;
+
+    @Param({ "GRID", "RANDOM_GEOMETRIC" })
+    public SyntheticNetworks.NetworkType network;
+
+    @Param({ "100000", "1000000" })
+    public int nodes;
+
+    @Param({ "15", "60" })
+    public double minutes;
+
+    private CompactGraph graph;
+    private int[] origins;
+    private long isochrones;
+    private long reached;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        graph = SyntheticNetworks.generate(network, nodes, 42).toGraph().compile();
+        origins = new Random(7).ints(BATCH_SIZE, 0, graph.getNodeCount()).toArray();
+    }
+
+    @TearDown(Level.Trial)
+    public void report() {
+        System.out.printf("%nNodes per isochrone: %.1f%n", isochrones == 0 ? 0.0 : (double) reached / isochrones);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public Isochrone[] batch() {
+        Isochrone[] batch = Isochrone.computeAll(graph, origins, minutes, 8);
+        for (Isochrone isochrone : batch) {
+            reached += isochrone.size();
+        }
+        isochrones += batch.length;
+        return batch;
+    }
+}
@@ -0,0 +1,58 @@
+package trafficrouting.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import trafficrouting.CompactGraph;
+import trafficrouting.TravelTimeMatrix;
+
+// Many-to-many travel-time matrices (TravelTimeMatrix) for dispatch-sized batches
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class MatrixBenchmark {
+    @Param({ "GRID", "RANDOM_GEOMETRIC", "SCALE_FREE" })
+    public SyntheticNetworks.NetworkType network;
+
+    @Param({ "100000" })
+    public int nodes;
+
+    @Param({ "50" })
+    public int sources;
+
+    @Param({ "200" })
+    public int targets;
+
+    private CompactGraph graph;
+    private int[] sourceNodes;
+    private int[] targetNodes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        graph = SyntheticNetworks.generate(network, nodes, 42).toGraph().compile();
+        Random random = new Random(11);
+        sourceNodes = random.ints(sources, 0, graph.getNodeCount()).toArray();
+        targetNodes = random.ints(targets, 0, graph.getNodeCount()).toArray();
+    }
+
+    @Benchmark
+    public double[] matrix() {
+        return TravelTimeMatrix.compute(graph, sourceNodes, targetNodes, 8);
+    }
+}
@@ -0,0 +1,101 @@
+package trafficrouting.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import trafficrouting.Graph;
+import trafficrouting.PathResult;
+import trafficrouting.Pathfinder;
+import trafficrouting.SearchMode;
+
+// Pathfinder.findPath on generated networks: per-query latency distribution (sample mode
+// reports percentiles) and throughput with one thread per core. Queries cycle through a
+// fixed set of random node pairs and hours, so every mode answers the same queries.
+// Run with -prof gc for allocation rates.
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class QueryBenchmark {
+    private static final int QUERY_COUNT = 1024;
+
+    @Param({ "GRID", "RANDOM_GEOMETRIC", "SCALE_FREE" })
+    public SyntheticNetworks.NetworkType network;
+
+    @Param({ "1000", "100000", "1000000" })
+    public int nodes;
+
+    @Param({ "DIJKSTRA", "ASTAR", "ALT", "BIDIRECTIONAL" })
+    public SearchMode mode;
+
+    private Pathfinder pathfinder;
+    private int[] starts;
+    private int[] ends;
+    private int[] hours;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Graph graph = SyntheticNetworks.generate(network, nodes, 42).toGraph();
+        pathfinder = new Pathfinder(graph);
+        int nodeCount = graph.getNodeList().size();
+        Random random = new Random(7);
+        starts = new int[QUERY_COUNT];
+        ends = new int[QUERY_COUNT];
+        hours = new int[QUERY_COUNT];
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            starts[i] = random.nextInt(nodeCount);
+            ends[i] = random.nextInt(nodeCount);
+            hours[i] = random.nextInt(24);
+        }
+        // Compile and (for ALT) preprocess outside the measurement, and before threads share it
+        graph.compile();
+        if (mode == SearchMode.ALT) {
+            pathfinder.getLandmarkIndex();
+        }
+    }
+
+    // Position in the query list, per measuring thread
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        @Setup(Level.Trial)
+        public void start() {
+            next = (int) (Thread.currentThread().getId() * 97);
+        }
+    }
+
+    private PathResult nextQuery(Cursor cursor) {
+        int i = cursor.next++ & (QUERY_COUNT - 1);
+        return pathfinder.findPath(starts[i], ends[i], hours[i], mode);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public PathResult latency(Cursor cursor) {
+        return nextQuery(cursor);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Threads(Threads.MAX)
+    public PathResult throughput(Cursor cursor) {
+        return nextQuery(cursor);
+    }
+}
@@ -0,0 +1,148 @@
+package trafficrouting.benchmarks;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import trafficrouting.CompactGraph;
+import trafficrouting.Graph;
+import trafficrouting.PathResult;
+import trafficrouting.Pathfinder;
+import trafficrouting.RouteCache;
+import trafficrouting.TrafficSnapshots;
+import trafficrouting.TrafficUpdate;
+
+// Commute-like serving: three threads query a TrafficSnapshots-backed Pathfinder with a
+// skewed (Zipf) mix of trips while a fourth publishes a batch of factor changes per feed
+// apply interval, with and without a RouteCache. Trips are drawn from a fixed set of
+// origin/destination/hour triples of which a few are requested far more often than the
+// rest. The cache statistics (hit rate, evictions, invalidations) are printed after each
+// trial.
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class RouteCacheBenchmark {
+    private static final int TRIP_COUNT = 4096;
+    private static final int QUERY_COUNT = 1 << 16;
+
+    @Param({ "GRID", "RANDOM_GEOMETRIC" })
+    public SyntheticNetworks.NetworkType network;
+
+    @Param({ "100000" })
+    public int nodes;
+
+    // 0 runs without a cache
+    @Param({ "0", "1000" })
+    public int cacheSize;
+
+    // Factor changes per published snapshot
+    @Param({ "10", "100" })
+    public int batchSize;
+
+    // Pause before each publish, as TrafficFeed publishes once per apply interval
+    @Param({ "100" })
+    public int publishIntervalMillis;
+
+    private TrafficSnapshots snapshots;
+    private Pathfinder pathfinder;
+    private int edgeCount;
+    private int[] starts;
+    private int[] ends;
+    private int[] hours;
+    private int[] queries;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Graph graph = SyntheticNetworks.generate(network, nodes, 42).toGraph();
+        snapshots = new TrafficSnapshots(graph);
+        pathfinder = new Pathfinder(snapshots);
+        if (cacheSize > 0) {
+            pathfinder.setRouteCache(new RouteCache(cacheSize, 10, TimeUnit.MINUTES));
+        }
+        edgeCount = snapshots.current().getEdgeCount();
+        int nodeCount = graph.getNodeList().size();
+        Random random = new Random(7);
+        starts = new int[TRIP_COUNT];
+        ends = new int[TRIP_COUNT];
+        hours = new int[TRIP_COUNT];
+        for (int i = 0; i < TRIP_COUNT; i++) {
+            starts[i] = random.nextInt(nodeCount);
+            ends[i] = random.nextInt(nodeCount);
+            hours[i] = 7 + random.nextInt(3);
+        }
+        // Trip k is requested with probability proportional to 1 / (k + 1)
+        double[] cumulative = new double[TRIP_COUNT];
+        double sum = 0;
+        for (int k = 0; k < TRIP_COUNT; k++) {
+            sum += 1.0 / (k + 1);
+            cumulative[k] = sum;
+        }
+        queries = new int[QUERY_COUNT];
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            int trip = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+            queries[i] = Math.min(trip < 0 ? -trip - 1 : trip, TRIP_COUNT - 1);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void printStatistics() {
+        if (pathfinder.getRouteCache() != null) {
+            System.out.println(pathfinder.getRouteCache().getStatistics());
+        }
+    }
+
+    // Per-thread query position and update batch
+    @State(Scope.Thread)
+    public static class Worker {
+        final TrafficUpdate batch = new TrafficUpdate();
+        Random random;
+        int next;
+
+        @Setup(Level.Trial)
+        public void start() {
+            random = new Random(Thread.currentThread().getId());
+            next = (int) (Thread.currentThread().getId() * 97);
+        }
+    }
+
+    @Benchmark
+    @Group("commute")
+    @GroupThreads(3)
+    public PathResult query(Worker worker) {
+        int trip = queries[worker.next++ & (QUERY_COUNT - 1)];
+        return pathfinder.findPath(starts[trip], ends[trip], hours[trip]);
+    }
+
+    // Random changes across the whole day, about half of them lowering a factor
+    @Benchmark
+    @Group("commute")
+    @GroupThreads(1)
+    public CompactGraph publish(Worker worker) throws InterruptedException {
+        Thread.sleep(publishIntervalMillis);
+        TrafficUpdate batch = worker.batch;
+        batch.clear();
+        for (int i = 0; i < batchSize; i++) {
+            batch.set(worker.random.nextInt(edgeCount), worker.random.nextInt(24), 0.5 + worker.random.nextDouble() * 2);
+        }
+        return snapshots.publish(batch);
+    }
+}
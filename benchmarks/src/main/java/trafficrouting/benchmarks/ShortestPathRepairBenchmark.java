@@ -0,0 +1,90 @@
+package trafficrouting.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import trafficrouting.CompactGraph;
+import trafficrouting.DeltaStepping;
+import trafficrouting.ShortestPathTree;
+import trafficrouting.TrafficSnapshots;
+import trafficrouting.TrafficUpdate;
+
+// Keeping a hub's shortest-path tree current while batches of random 08:00 factor changes
+// are published: ShortestPathTree.repair against computing the tree again on one thread.
+// Both include publishing the batch. The mean number of nodes recomputed per repair is
+// printed after each trial.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class ShortestPathRepairBenchmark {
+    @Param({ "GRID", "RANDOM_GEOMETRIC" })
+    public SyntheticNetworks.NetworkType network;
+
+    @Param({ "1000000" })
+    public int nodes;
+
+    @Param({ "1", "10", "100" })
+    public int changes;
+
+    private TrafficSnapshots snapshots;
+    private DeltaStepping deltaStepping;
+    private ShortestPathTree tree;
+    private final TrafficUpdate batch = new TrafficUpdate();
+    private final Random random = new Random(7);
+    private long repairs;
+    private long recomputed;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        CompactGraph graph = SyntheticNetworks.generate(network, nodes, 42).toGraph().compile();
+        snapshots = new TrafficSnapshots(graph);
+        deltaStepping = new DeltaStepping(1);
+        tree = deltaStepping.compute(graph, random.nextInt(graph.getNodeCount()), 8);
+    }
+
+    @TearDown(Level.Trial)
+    public void report() {
+        deltaStepping.close();
+        if (repairs > 0) {
+            System.out.printf("%nNodes recomputed per repair: %.1f%n", (double) recomputed / repairs);
+        }
+    }
+
+    private CompactGraph publishBatch() {
+        batch.clear();
+        int edgeCount = snapshots.current().getEdgeCount();
+        for (int i = 0; i < changes; i++) {
+            batch.set(random.nextInt(edgeCount), 8, 0.5 + random.nextDouble() * 2.0);
+        }
+        return snapshots.publish(batch);
+    }
+
+    @Benchmark
+    public ShortestPathTree repair() {
+        recomputed += tree.repair(publishBatch(), batch);
+        repairs++;
+        return tree;
+    }
+
+    @Benchmark
+    public ShortestPathTree recompute() {
+        return deltaStepping.compute(publishBatch(), tree.getSource(), 8);
+    }
+}
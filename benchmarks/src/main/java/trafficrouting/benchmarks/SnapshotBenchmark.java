@@ -0,0 +1,117 @@
+package trafficrouting.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import trafficrouting.CompactGraph;
+import trafficrouting.Graph;
+import trafficrouting.PathResult;
+import trafficrouting.Pathfinder;
+import trafficrouting.SearchMode;
+import trafficrouting.TrafficSnapshots;
+import trafficrouting.TrafficUpdate;
+
+// Concurrent serving: three threads query a TrafficSnapshots-backed Pathfinder while a
+// fourth publishes batches of random factor changes. JMH reports the query latency and the
+// publish time of the group separately, so both can be compared with QueryBenchmark.
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class SnapshotBenchmark {
+    private static final int QUERY_COUNT = 1024;
+
+    @Param({ "GRID", "RANDOM_GEOMETRIC", "SCALE_FREE" })
+    public SyntheticNetworks.NetworkType network;
+
+    @Param({ "100000" })
+    public int nodes;
+
+    @Param({ "DIJKSTRA", "ALT" })
+    public SearchMode mode;
+
+    // Factor changes per published snapshot
+    @Param({ "1000" })
+    public int batchSize;
+
+    private TrafficSnapshots snapshots;
+    private Pathfinder pathfinder;
+    private int edgeCount;
+    private int[] starts;
+    private int[] ends;
+    private int[] hours;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Graph graph = SyntheticNetworks.generate(network, nodes, 42).toGraph();
+        snapshots = new TrafficSnapshots(graph);
+        pathfinder = new Pathfinder(snapshots);
+        edgeCount = graph.getAllEdges().size();
+        int nodeCount = graph.getNodeList().size();
+        Random random = new Random(7);
+        starts = new int[QUERY_COUNT];
+        ends = new int[QUERY_COUNT];
+        hours = new int[QUERY_COUNT];
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            starts[i] = random.nextInt(nodeCount);
+            ends[i] = random.nextInt(nodeCount);
+            hours[i] = random.nextInt(24);
+        }
+        if (mode == SearchMode.ALT) {
+            pathfinder.getLandmarkIndex();
+        }
+    }
+
+    // Per-thread query position and update batch
+    @State(Scope.Thread)
+    public static class Worker {
+        final TrafficUpdate batch = new TrafficUpdate();
+        Random random;
+        int next;
+
+        @Setup(Level.Trial)
+        public void start() {
+            random = new Random(Thread.currentThread().getId());
+            next = (int) (Thread.currentThread().getId() * 97);
+        }
+    }
+
+    @Benchmark
+    @Group("serving")
+    @GroupThreads(3)
+    public PathResult query(Worker worker) {
+        int i = worker.next++ & (QUERY_COUNT - 1);
+        return pathfinder.findPath(starts[i], ends[i], hours[i], mode);
+    }
+
+    // Published factors (3.0 to 4.0) never lower an edge's smallest factor, which is 1.0
+    // for every generated road, so ALT queries never wait for recomputed landmarks
+    @Benchmark
+    @Group("serving")
+    @GroupThreads(1)
+    public CompactGraph publish(Worker worker) {
+        TrafficUpdate batch = worker.batch;
+        batch.clear();
+        for (int i = 0; i < batchSize; i++) {
+            batch.set(worker.random.nextInt(edgeCount), worker.random.nextInt(24), 3.0 + worker.random.nextDouble());
+        }
+        return snapshots.publish(batch);
+    }
+}
@@ -0,0 +1,89 @@
+package trafficrouting.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import trafficrouting.CompactGraph;
+import trafficrouting.SpatialIndex;
+
+// Snapping coordinates to generated networks (SpatialIndex): nearest node and nearest edge
+// projection for random points spread over the network's extent, plus building the index.
+// SCALE_FREE is left out: its edges join random points anywhere in the plane, so every edge
+// box covers most queries and nearest-edge searches degenerate into a scan.
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class SpatialIndexBenchmark {
+    private static final int POINT_COUNT = 1024;
+
+    @Param({ "GRID", "RANDOM_GEOMETRIC" })
+    public SyntheticNetworks.NetworkType network;
+
+    @Param({ "1000", "100000", "1000000" })
+    public int nodes;
+
+    private CompactGraph graph;
+    private SpatialIndex index;
+    private double[] xs;
+    private double[] ys;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        graph = SyntheticNetworks.generate(network, nodes, 42).toGraph().compile();
+        index = SpatialIndex.build(graph);
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int v = 0; v < graph.getNodeCount(); v++) {
+            minX = Math.min(minX, graph.getX(v));
+            minY = Math.min(minY, graph.getY(v));
+            maxX = Math.max(maxX, graph.getX(v));
+            maxY = Math.max(maxY, graph.getY(v));
+        }
+        Random random = new Random(7);
+        xs = new double[POINT_COUNT];
+        ys = new double[POINT_COUNT];
+        for (int i = 0; i < POINT_COUNT; i++) {
+            xs[i] = minX + random.nextDouble() * (maxX - minX);
+            ys[i] = minY + random.nextDouble() * (maxY - minY);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public int nearestNode() {
+        int i = next++ & (POINT_COUNT - 1);
+        return index.nearestNode(xs[i], ys[i]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public SpatialIndex.EdgeSnap nearestEdge() {
+        int i = next++ & (POINT_COUNT - 1);
+        return index.nearestEdge(xs[i], ys[i]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public SpatialIndex build() {
+        return SpatialIndex.build(graph);
+    }
+}
@@ -0,0 +1,274 @@
+package trafficrouting.benchmarks;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import trafficrouting.Edge;
+import trafficrouting.Graph;
+import trafficrouting.Node;
+
+// Deterministic synthetic road networks for benchmarks. A network is first generated as
+// primitive arrays (so graph construction can be timed on its own) and then turned into
+// a Graph. Travel times follow the straight-line distance, and a share of the roads gets
+// morning and evening rush-hour factors so that the hour of day matters.
+public final class SyntheticNetworks {
+    // Speed used to turn coordinate distance into minutes
+    private static final double UNITS_PER_MINUTE = 100.0;
+    // Share of roads with rush-hour factors
+    private static final double CONGESTED_SHARE = 0.2;
+
+    public enum NetworkType {
+        // Square grid of two-way streets
+        GRID,
+        // Uniform random points, each joined by two-way roads to its nearest neighbors
+        RANDOM_GEOMETRIC,
+        // Preferential attachment (Barabasi-Albert): a few hubs with very high degree
+        SCALE_FREE
+    }
+
+    private SyntheticNetworks() {
+    }
+
+    // A generated network before it is loaded into a Graph
+    public static final class Network {
+        final double[] x;
+        final double[] y;
+        int edgeCount;
+        int[] tails;
+        int[] heads;
+        double[] weights;
+        final long seed;
+
+        Network(int nodeCount, int edgeCapacity, long seed) {
+            this.x = new double[nodeCount];
+            this.y = new double[nodeCount];
+            this.tails = new int[edgeCapacity];
+            this.heads = new int[edgeCapacity];
+            this.weights = new double[edgeCapacity];
+            this.seed = seed;
+        }
+
+        public int getNodeCount() {
+            return x.length;
+        }
+
+        public int getEdgeCount() {
+            return edgeCount;
+        }
+
+        // Builds the Graph through its public API (addNode/addEdge/setTrafficFactor)
+        public Graph toGraph() {
+            Graph graph = new Graph();
+            for (int v = 0; v < x.length; v++) {
+                graph.addNode(new Node(nodeId(v), x[v], y[v]));
+            }
+            for (int e = 0; e < edgeCount; e++) {
+                graph.addEdge(nodeId(tails[e]), nodeId(heads[e]), weights[e], "Road " + (e >> 1));
+            }
+            Random random = new Random(seed ^ 0x5DEECE66DL);
+            for (Edge edge : graph.getAllEdges()) {
+                if (random.nextDouble() < CONGESTED_SHARE) {
+                    double peak = 1.5 + random.nextDouble() * 1.5;
+                    edge.setTrafficFactor(7, (1 + peak) / 2);
+                    edge.setTrafficFactor(8, peak);
+                    edge.setTrafficFactor(9, (1 + peak) / 2);
+                    edge.setTrafficFactor(17, peak);
+                    edge.setTrafficFactor(18, (1 + peak) / 2);
+                }
+            }
+            return graph;
+        }
+
+        private void addTwoWay(int a, int b) {
+            if (edgeCount + 2 > tails.length) {
+                int capacity = Math.max(16, tails.length * 2);
+                tails = Arrays.copyOf(tails, capacity);
+                heads = Arrays.copyOf(heads, capacity);
+                weights = Arrays.copyOf(weights, capacity);
+            }
+            double minutes = Math.max(0.1, Math.hypot(x[a] - x[b], y[a] - y[b]) / UNITS_PER_MINUTE);
+            tails[edgeCount] = a;
+            heads[edgeCount] = b;
+            weights[edgeCount++] = minutes;
+            tails[edgeCount] = b;
+            heads[edgeCount] = a;
+            weights[edgeCount++] = minutes;
+        }
+    }
+
+    public static String nodeId(int node) {
+        return "n" + node;
+    }
+
+    public static Network generate(NetworkType type, int nodeCount, long seed) {
+        switch (type) {
+            case GRID:
+                return grid(nodeCount, seed);
+            case RANDOM_GEOMETRIC:
+                return randomGeometric(nodeCount, seed);
+            case SCALE_FREE:
+                return scaleFree(nodeCount, seed);
+            default:
+                throw new IllegalArgumentException("Unknown network type: " + type);
+        }
+    }
+
+    // Grid with roughly nodeCount nodes (the side is rounded up), jittered coordinates
+    private static Network grid(int nodeCount, long seed) {
+        int side = (int) Math.ceil(Math.sqrt(nodeCount));
+        int count = side * side;
+        Random random = new Random(seed);
+        Network network = new Network(count, 4 * count, seed);
+        for (int v = 0; v < count; v++) {
+            network.x[v] = (v % side) * 100 + random.nextDouble() * 40;
+            network.y[v] = (v / side) * 100 + random.nextDouble() * 40;
+        }
+        for (int v = 0; v < count; v++) {
+            if (v % side + 1 < side) {
+                network.addTwoWay(v, v + 1);
+            }
+            if (v + side < count) {
+                network.addTwoWay(v, v + side);
+            }
+        }
+        return network;
+    }
+
+    // Each node joins its three nearest neighbors, found through a uniform bucket grid
+    private static Network randomGeometric(int nodeCount, long seed) {
+        final int neighbors = 3;
+        Random random = new Random(seed);
+        Network network = new Network(nodeCount, 2 * neighbors * nodeCount, seed);
+        int cells = Math.max(1, (int) Math.sqrt(nodeCount / 2.0));
+        double extent = Math.sqrt(nodeCount) * 100;
+        double cellSize = extent / cells;
+        for (int v = 0; v < nodeCount; v++) {
+            network.x[v] = random.nextDouble() * extent;
+            network.y[v] = random.nextDouble() * extent;
+        }
+
+        // Bucket nodes by cell (counting sort)
+        int[] cellStart = new int[cells * cells + 1];
+        int[] cellOf = new int[nodeCount];
+        for (int v = 0; v < nodeCount; v++) {
+            int cx = Math.min(cells - 1, (int) (network.x[v] / cellSize));
+            int cy = Math.min(cells - 1, (int) (network.y[v] / cellSize));
+            cellOf[v] = cy * cells + cx;
+            cellStart[cellOf[v] + 1]++;
+        }
+        for (int c = 0; c < cells * cells; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        int[] bucket = new int[nodeCount];
+        int[] fill = Arrays.copyOf(cellStart, cells * cells);
+        for (int v = 0; v < nodeCount; v++) {
+            bucket[fill[cellOf[v]]++] = v;
+        }
+
+        int[] nearest = new int[neighbors];
+        double[] nearestDistance = new double[neighbors];
+        for (int v = 0; v < nodeCount; v++) {
+            Arrays.fill(nearest, -1);
+            Arrays.fill(nearestDistance, Double.POSITIVE_INFINITY);
+            int cx = cellOf[v] % cells;
+            int cy = cellOf[v] / cells;
+            // The 3x3 block of cells around v holds about 18 nodes: enough for three neighbors
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    int nx = cx + dx;
+                    int ny = cy + dy;
+                    if (nx < 0 || ny < 0 || nx >= cells || ny >= cells) {
+                        continue;
+                    }
+                    int cell = ny * cells + nx;
+                    for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                        int w = bucket[i];
+                        if (w == v) {
+                            continue;
+                        }
+                        double distance = Math.hypot(network.x[v] - network.x[w], network.y[v] - network.y[w]);
+                        // Insertion into the small sorted nearest list
+                        int slot = neighbors;
+                        while (slot > 0 && distance < nearestDistance[slot - 1]) {
+                            slot--;
+                        }
+                        if (slot < neighbors) {
+                            System.arraycopy(nearest, slot, nearest, slot + 1, neighbors - slot - 1);
+                            System.arraycopy(nearestDistance, slot, nearestDistance, slot + 1, neighbors - slot - 1);
+                            nearest[slot] = w;
+                            nearestDistance[slot] = distance;
+                        }
+                    }
+                }
+            }
+            // Each undirected road is added once, by its lower-numbered end when both pick it
+            for (int w : nearest) {
+                if (w >= 0 && (v < w || !picks(network, cellStart, bucket, cellOf, cells, w, v, neighbors))) {
+                    network.addTwoWay(v, w);
+                }
+            }
+        }
+        return network;
+    }
+
+    // True if node w would pick v among its own nearest neighbors (same rule as above)
+    private static boolean picks(Network network, int[] cellStart, int[] bucket, int[] cellOf, int cells,
+                                 int w, int v, int neighbors) {
+        double distance = Math.hypot(network.x[v] - network.x[w], network.y[v] - network.y[w]);
+        int closer = 0;
+        int cx = cellOf[w] % cells;
+        int cy = cellOf[w] / cells;
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                int nx = cx + dx;
+                int ny = cy + dy;
+                if (nx < 0 || ny < 0 || nx >= cells || ny >= cells) {
+                    continue;
+                }
+                int cell = ny * cells + nx;
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    int u = bucket[i];
+                    if (u != w && u != v
+                            && Math.hypot(network.x[u] - network.x[w], network.y[u] - network.y[w]) < distance) {
+                        closer++;
+                    }
+                }
+            }
+        }
+        return closer < neighbors;
+    }
+
+    // Barabasi-Albert with two roads per new node; endpoints are drawn from the list of all
+    // road ends so far, which picks nodes in proportion to their degree
+    private static Network scaleFree(int nodeCount, long seed) {
+        final int roadsPerNode = 2;
+        Random random = new Random(seed);
+        Network network = new Network(nodeCount, 2 * roadsPerNode * nodeCount, seed);
+        double extent = Math.sqrt(nodeCount) * 100;
+        for (int v = 0; v < nodeCount; v++) {
+            network.x[v] = random.nextDouble() * extent;
+            network.y[v] = random.nextDouble() * extent;
+        }
+        int[] ends = new int[2 * roadsPerNode * nodeCount];
+        int endCount = 0;
+        if (nodeCount > 1) {
+            network.addTwoWay(0, 1);
+            ends[endCount++] = 0;
+            ends[endCount++] = 1;
+        }
+        for (int v = 2; v < nodeCount; v++) {
+            int first = -1;
+            for (int r = 0; r < roadsPerNode; r++) {
+                int target = ends[random.nextInt(endCount)];
+                if (target == first) {
+                    continue;
+                }
+                network.addTwoWay(v, target);
+                ends[endCount++] = v;
+                ends[endCount++] = target;
+                first = target;
+            }
+        }
+        return network;
+    }
+}